@@ -3,11 +3,14 @@ package Shop.cashiers;
 import Shop.commodities.Commodity;
 import Shop.commodities.CustomDataType;
 import Shop.exceptions.CashierNotHiredRException;
+import Shop.exceptions.CommodityNotFoundException;
 import Shop.exceptions.EmptyCartRException;
 import Shop.exceptions.InsufficientFundsException;
 import Shop.exceptions.InsufficientQuantityRException;
+import Shop.helpers.Money;
 import Shop.receipts.Receipt;
 import Shop.stores.IStoreService;
+import Shop.stores.SellingPrice;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -19,8 +22,7 @@ public class CashierServiceHelper {
 
     // sellCommodities Helpers
     public boolean validateCashier(IStoreService store, ICashierService cashier) {
-        boolean isHired = store.getCashiers().stream().anyMatch(c -> c.getId() == cashier.getId());
-        if (!isHired) {
+        if (!store.isCashierHired(cashier.getId())) {
             throw new CashierNotHiredRException(cashier.getId());
         }
         return true;
@@ -33,13 +35,12 @@ public class CashierServiceHelper {
         return true;
     }
 
-    public Commodity findCommodityById(List<Commodity> availableCommodities, int id) {
-        for (Commodity item : availableCommodities) {
-            if (item.getId() == id) {
-                return item;
-            }
+    public Commodity findCommodityById(IStoreService store, int id) throws CommodityNotFoundException {
+        Commodity commodity = store.findAvailableCommodity(id);
+        if (commodity == null) {
+            throw new CommodityNotFoundException(id);
         }
-        return null;
+        return commodity;
     }
 
     public boolean validateStockAvailability(Commodity commodity, BigDecimal requestedQuantity) {
@@ -50,25 +51,43 @@ public class CashierServiceHelper {
     }
 
     public Commodity updateAvailableStock(Commodity commodity, BigDecimal quantityPurchased) {
-        commodity.setQuantity(commodity.getQuantity().subtract(quantityPurchased));
+        if (!commodity.tryReserve(quantityPurchased)) {
+            throw new InsufficientQuantityRException(commodity.getName(), commodity.getQuantity(), quantityPurchased);
+        }
         return commodity;
     }
 
-    public CustomDataType createPurchasedItem(ICashierService cashier, Commodity commodity, BigDecimal quantity) {
-        BigDecimal multiplier = calculateMarkupMultiplier(cashier, commodity);
-        BigDecimal priceWithMarkup = commodity.getDeliveryPrice().multiply(multiplier);
-        return new CustomDataType(commodity.getId(), commodity.getName(), quantity, priceWithMarkup);
+    // Reserves the cart lines in order, if one line runs short the lines already taken are put back
+    public boolean reserveStock(Commodity[] commodities, List<CustomDataType> cartCommodities) {
+        int reserved = 0;
+        try {
+            for (CustomDataType cartItem : cartCommodities) {
+                updateAvailableStock(commodities[reserved], cartItem.getQuantity());
+                reserved++;
+            }
+        } catch (RuntimeException e) {
+            releaseStock(commodities, cartCommodities, reserved);
+            throw e;
+        }
+        return true;
     }
 
-    public CustomDataType updateSoldCommodities(IStoreService store, CustomDataType purchased) {
-        for (CustomDataType sold : store.getSoldCommodities()) {
-            if (sold.getId() == purchased.getId()) {
-                sold.setQuantity(sold.getQuantity().add(purchased.getQuantity()));
-                return sold;
+    public void releaseStock(Commodity[] commodities, List<CustomDataType> cartCommodities, int count) {
+        int line = 0;
+        for (CustomDataType cartItem : cartCommodities) {
+            if (line == count) {
+                return;
             }
+            commodities[line++].addQuantity(cartItem.getQuantity());
         }
-        store.getSoldCommodities().add(purchased);
-        return purchased;
+    }
+
+    public CustomDataType createPurchasedItem(ICashierService cashier, Commodity commodity, BigDecimal quantity) {
+        return createPurchasedItem(commodity, quantity, calculatePriceWithMarkup(cashier, commodity));
+    }
+
+    public CustomDataType createPurchasedItem(Commodity commodity, BigDecimal quantity, SellingPrice price) {
+        return new CustomDataType(commodity.getId(), commodity.getName(), quantity, price.getPriceWithMarkup());
     }
 
     public boolean validateFunds(BigDecimal money, BigDecimal totalCost) throws InsufficientFundsException {
@@ -79,14 +98,31 @@ public class CashierServiceHelper {
     }
 
     public BigDecimal calculateItemTotal(ICashierService cashier, Commodity commodity, BigDecimal quantity) {
-        BigDecimal multiplier = calculateMarkupMultiplier(cashier, commodity);
-        BigDecimal deliverPriceWithMarkup = commodity.getDeliveryPrice().multiply(multiplier);
-        return deliverPriceWithMarkup.multiply(quantity);
+        SellingPrice price = calculatePriceWithMarkup(cashier, commodity);
+        try {
+            return calculateItemTotalMoney(price, Money.of(quantity)).toBigDecimal();
+        } catch (ArithmeticException e) {
+            return calculateItemTotalExact(price, quantity);
+        }
+    }
+
+    // Fixed-point version used on the checkout path, throws ArithmeticException when the amount does not fit a long
+    public Money calculateItemTotalMoney(SellingPrice price, Money quantity) {
+        Money priceWithMarkup = price.getPriceWithMarkupMoney();
+        if (priceWithMarkup == null) {
+            throw new ArithmeticException("Price does not fit the fixed-point type.");
+        }
+        return priceWithMarkup.multiply(quantity);
+    }
+
+    // BigDecimal fallback for amounts too large for the fixed-point path
+    public BigDecimal calculateItemTotalExact(SellingPrice price, BigDecimal quantity) {
+        return price.getPriceWithMarkup().multiply(quantity);
     }
 
     public Receipt generateReceipt(IStoreService store, ICashierService cashier, List<CustomDataType> items, BigDecimal totalCost, BigDecimal change) {
-        int receiptId = store.getReceiptCount() + 1;
-        store.setReceiptCount(receiptId);
+        // Gap-free by default, from the till's own block of ids when the store opted into blocks
+        int receiptId = store.getNextReceiptId(cashier.getId());
         LocalDateTime issued = LocalDateTime.now();
         return new Receipt(receiptId, store, cashier, issued, items, totalCost, change);
     }
@@ -94,6 +130,15 @@ public class CashierServiceHelper {
     // Generic Helper
     public BigDecimal calculateMarkupMultiplier(ICashierService cashier, Commodity commodity) {
         BigDecimal markupPercentage = cashier.getStore().getMarkupPercentages().getOrDefault(commodity.getCategory(), BigDecimal.ZERO);
-        return BigDecimal.ONE.add(markupPercentage.divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+        try {
+            return Money.percentMultiplier(markupPercentage).toBigDecimal();
+        } catch (ArithmeticException e) {
+            return BigDecimal.ONE.add(markupPercentage.divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+        }
+    }
+
+    // Looked up in the store's price table, only recomputed after a delivery or pricing change
+    public SellingPrice calculatePriceWithMarkup(ICashierService cashier, Commodity commodity) {
+        return cashier.getStore().getSellingPrice(commodity);
     }
 }
\ No newline at end of file
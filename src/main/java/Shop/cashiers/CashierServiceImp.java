@@ -4,17 +4,27 @@ import Shop.commodities.Commodity;
 import Shop.commodities.CustomDataType;
 import Shop.exceptions.CommodityNotFoundException;
 import Shop.exceptions.InsufficientFundsException;
+import Shop.helpers.Money;
+import Shop.metrics.ShopMetrics;
 import Shop.receipts.Receipt;
 import Shop.stores.IStoreService;
+import Shop.stores.SellingPrice;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 public class CashierServiceImp implements ICashierService {
     public Cashier cashier;
     public CashierServiceHelper helper;
 
+    // Store and roster version at which this till was last confirmed hired
+    private record HiredToken(IStoreService store, long rosterVersion) {
+    }
+
+    private volatile HiredToken hiredToken;
+
     // Constructor
     public CashierServiceImp(Cashier cashier, CashierServiceHelper helper) {
         this.cashier = cashier;
@@ -65,37 +75,108 @@ public class CashierServiceImp implements ICashierService {
 
     @Override
     public Receipt sellCommodities(List<CustomDataType> cartCommodities, BigDecimal money) throws CommodityNotFoundException, InsufficientFundsException {
+        long startNanos = System.nanoTime();
+        try {
+            Receipt receipt = completeSale(cartCommodities, money);
+            ShopMetrics.recordCheckout(startNanos, cartCommodities.size());
+            return receipt;
+        } catch (Exception e) {
+            ShopMetrics.recordCheckoutFailure(e);
+            throw e;
+        }
+    }
+
+    private Receipt completeSale(List<CustomDataType> cartCommodities, BigDecimal money) throws CommodityNotFoundException, InsufficientFundsException {
 
         IStoreService store = cashier.getStore();
 
-        helper.validateCashier(store, this);
+        ensureHired(store);
         helper.validateCart(cartCommodities);
 
-        BigDecimal totalCost = BigDecimal.ZERO;
-        List<CustomDataType> purchasedCommodities = new ArrayList<>();
+        Commodity[] lines = new Commodity[cartCommodities.size()];
+        SellingPrice[] prices = new SellingPrice[lines.length];
 
+        // Price and check every line before any stock is touched
+        int line = 0;
         for (CustomDataType cartItem : cartCommodities) {
-            Commodity available = helper.findCommodityById(store.getAvailableCommodities(), cartItem.getId());
+            Commodity available = helper.findCommodityById(store, cartItem.getId());
 
             helper.validateStockAvailability(available, cartItem.getQuantity());
 
-            BigDecimal itemTotal = helper.calculateItemTotal(this, available, cartItem.getQuantity());
-            totalCost = totalCost.add(itemTotal);
+            prices[line] = helper.calculatePriceWithMarkup(this, available);
+            lines[line++] = available;
+        }
+
+        BigDecimal totalCost = calculateTotalCost(prices, cartCommodities);
 
-            Commodity updatedStock = helper.updateAvailableStock(available, cartItem.getQuantity());
-            CustomDataType purchasedItem = helper.createPurchasedItem(this, updatedStock, cartItem.getQuantity());
-            purchasedCommodities.add(purchasedItem);
+        helper.validateFunds(money, totalCost);
 
-            helper.updateSoldCommodities(store, purchasedItem);
+        // Shared with the other tills, a store snapshot waits until no sale is half applied
+        StampedLock checkoutLock = store.getCheckoutLock();
+        long stamp = checkoutLock.readLock();
+        try {
+            // All or nothing: either every line is reserved or the stock is left as it was
+            helper.reserveStock(lines, cartCommodities);
+
+            List<CustomDataType> purchasedCommodities = new ArrayList<>(lines.length);
+            line = 0;
+            for (CustomDataType cartItem : cartCommodities) {
+                purchasedCommodities.add(helper.createPurchasedItem(lines[line], cartItem.getQuantity(), prices[line]));
+                line++;
+            }
+
+            BigDecimal change = money.subtract(totalCost);
+            Receipt receipt = helper.generateReceipt(store, this, purchasedCommodities, totalCost, change);
+
+            // Durable before anything else sees the sale, a sale the log refuses gives its stock and id back
+            try {
+                store.logSale(receipt);
+            } catch (RuntimeException e) {
+                helper.releaseStock(lines, cartCommodities, lines.length);
+                store.getReceiptIdAllocator().giveBack(receipt.getId());
+                throw e;
+            }
+
+            line = 0;
+            for (CustomDataType purchasedItem : purchasedCommodities) {
+                store.recordSale(purchasedItem, lines[line++].getCategory());
+            }
+            store.addRevenue(totalCost);
+            store.addReceipt(receipt);
+            return receipt;
+        } finally {
+            checkoutLock.unlockRead(stamp);
         }
+    }
 
-        helper.validateFunds(money, totalCost);
+    // Only asks the roster again when it changed since this till was last confirmed hired
+    private void ensureHired(IStoreService store) {
+        HiredToken token = hiredToken;
+        long rosterVersion = store.getRosterVersion();
+        if (token != null && token.store() == store && token.rosterVersion() == rosterVersion) {
+            return;
+        }
 
-        BigDecimal change = money.subtract(totalCost);
-        store.setRevenue(store.getRevenue().add(totalCost));
+        helper.validateCashier(store, this);
+        hiredToken = new HiredToken(store, rosterVersion);
+    }
 
-        Receipt receipt = helper.generateReceipt(store, this, purchasedCommodities, totalCost, change);
-        store.getReceipts().add(receipt);
-        return receipt;
+    // Sums the cart in fixed point and converts once, falls back to BigDecimal if a line overflows a long
+    private BigDecimal calculateTotalCost(SellingPrice[] prices, List<CustomDataType> cartCommodities) {
+        try {
+            Money total = Money.ZERO;
+            int line = 0;
+            for (CustomDataType cartItem : cartCommodities) {
+                total = total.add(helper.calculateItemTotalMoney(prices[line++], Money.of(cartItem.getQuantity())));
+            }
+            return total.toBigDecimal();
+        } catch (ArithmeticException e) {
+            BigDecimal total = BigDecimal.ZERO;
+            int line = 0;
+            for (CustomDataType cartItem : cartCommodities) {
+                total = total.add(helper.calculateItemTotalExact(prices[line++], cartItem.getQuantity()));
+            }
+            return total;
+        }
     }
 }
\ No newline at end of file
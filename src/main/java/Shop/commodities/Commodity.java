@@ -10,7 +10,8 @@ public class Commodity {
 
     private BigDecimal deliveryPrice;
 
-    private BigDecimal quantity;
+    // Guarded by this commodity's monitor for writes so tills can reserve stock concurrently
+    private volatile BigDecimal quantity;
     private LocalDate expiryDate;
 
     // Constructor
@@ -27,15 +28,17 @@ public class Commodity {
     }
 
     // Copy Constructor
+    // Reads through the getters, a subclass may keep its values elsewhere
     public Commodity(Commodity other) {
-        this.id = other.id;
-        this.name = other.name;
-        this.category = other.category;
+        this.id = other.getId();
+        this.name = other.getName();
+        this.category = other.getCategory();
 
-        this.deliveryPrice = other.deliveryPrice != null ? new BigDecimal(other.deliveryPrice.toString()) : null;
+        // BigDecimal is immutable, the copy can share the values
+        this.deliveryPrice = other.getDeliveryPrice();
 
-        this.quantity = other.quantity != null ? new BigDecimal(other.quantity.toString()) : null;
-        this.expiryDate = other.expiryDate;
+        this.quantity = other.getQuantity();
+        this.expiryDate = other.getExpiryDate();
     }
 
     // Getters / Setters
@@ -71,10 +74,23 @@ public class Commodity {
         return quantity;
     }
 
-    public void setQuantity(BigDecimal quantity) {
+    public synchronized void setQuantity(BigDecimal quantity) {
         this.quantity = quantity;
     }
 
+    // Atomically takes the amount out of stock, leaves the quantity untouched if there is not enough
+    public synchronized boolean tryReserve(BigDecimal amount) {
+        if (quantity.compareTo(amount) < 0) {
+            return false;
+        }
+        quantity = quantity.subtract(amount);
+        return true;
+    }
+
+    public synchronized void addQuantity(BigDecimal amount) {
+        quantity = quantity.add(amount);
+    }
+
     public LocalDate getExpiryDate() {
         return expiryDate;
     }
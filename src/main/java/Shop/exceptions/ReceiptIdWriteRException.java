@@ -0,0 +1,7 @@
+package Shop.exceptions;
+
+public class ReceiptIdWriteRException extends RuntimeException {
+    public ReceiptIdWriteRException(String file, Throwable cause) {
+        super("Failed to write the receipt id mark " + file + ".", cause);
+    }
+}
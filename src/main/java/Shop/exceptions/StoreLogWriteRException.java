@@ -0,0 +1,7 @@
+package Shop.exceptions;
+
+public class StoreLogWriteRException extends RuntimeException {
+    public StoreLogWriteRException(String file, Throwable cause) {
+        super("Failed to write to the store log " + file + ".", cause);
+    }
+}
@@ -0,0 +1,348 @@
+package Shop.helpers;
+
+import Shop.metrics.MetricsRegistry;
+import Shop.metrics.ShopMetrics;
+import Shop.receipts.Receipt;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+// Takes receipt persistence off the checkout thread. Tills hand receipts to a bounded queue,
+// a background flusher groups them into batches and writes them to the storage.
+public class AsyncReceiptWriter implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_BATCH_SIZE = 128;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+
+    // Queued by close() behind the last receipt, the flusher stops once it reaches it
+    private static final Receipt END = new Receipt(0, null, null, null, List.of(), null, null);
+
+    private final IReceiptStorage storage;
+    private final BlockingQueue<Receipt> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Thread flusher;
+    private final LongSupplier queueDepthGauge;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+
+    // Progress of the flusher, guarded by progressLock
+    private final Object progressLock = new Object();
+    private long processedCount;
+    private long syncedCount;
+    private long failedCount;
+    private long reportedFailedCount; // failures a flush has already thrown for
+    private boolean syncRequested;
+    private IOException syncFailure;
+
+    // Submits hold it shared while they queue, close() takes it exclusively to stop them,
+    // so every receipt that gets in is queued ahead of END
+    private final StampedLock stateLock = new StampedLock();
+    private volatile boolean closed;
+
+    // Constructor
+    public AsyncReceiptWriter(IReceiptStorage storage) {
+        this(storage, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public AsyncReceiptWriter(IReceiptStorage storage, int capacity, int batchSize, long flushIntervalMillis) {
+        if (capacity <= 0 || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Capacity, batch size and flush interval must be positive.");
+        }
+
+        this.storage = storage;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        this.queueDepthGauge = queue::size;
+        MetricsRegistry.getDefault().gauge(ShopMetrics.RECEIPT_QUEUE_DEPTH, queueDepthGauge);
+
+        this.flusher = new Thread(this::runFlusher, "receipt-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Getters
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getFailedCount() {
+        synchronized (progressLock) {
+            return failedCount;
+        }
+    }
+    // -----------------
+
+    // Blocks while the queue is full, this is the backpressure on the tills
+    public void submit(Receipt receipt) throws InterruptedException {
+        long stamp = stateLock.readLockInterruptibly();
+        try {
+            ensureOpen();
+            queue.put(receipt);
+            submittedCount.incrementAndGet();
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
+    }
+
+    // Returns false if the queue stayed full for the whole timeout
+    public boolean trySubmit(Receipt receipt, long timeout, TimeUnit unit) throws InterruptedException {
+        long stamp = stateLock.readLockInterruptibly();
+        try {
+            ensureOpen();
+            if (!queue.offer(receipt, timeout, unit)) {
+                return false;
+            }
+            submittedCount.incrementAndGet();
+            return true;
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
+    }
+
+    // Waits until every receipt submitted before this call is written and synced to the storage.
+    // Throws if any receipt failed since the last flush, including ones from before this call.
+    public void flush() throws IOException, InterruptedException {
+        long target = submittedCount.get();
+
+        synchronized (progressLock) {
+            while (syncedCount < target && syncFailure == null) {
+                if (!flusher.isAlive()) {
+                    throw new IllegalStateException("Receipt flusher is not running.");
+                }
+                syncRequested = true;
+                progressLock.wait(flushIntervalMillis);
+            }
+
+            if (syncFailure != null) {
+                IOException failure = syncFailure;
+                syncFailure = null;
+                throw failure;
+            }
+            if (failedCount > reportedFailedCount) {
+                long failed = failedCount - reportedFailedCount;
+                reportedFailedCount = failedCount;
+                throw new IOException(failed + " receipts failed to write.");
+            }
+        }
+    }
+
+    // Stops accepting receipts, writes out what is queued and stops the flusher. The flusher is stopped
+    // with a sentinel, not an interrupt: an interrupt closes a FileChannel-backed storage mid-batch.
+    // Interrupting close() ends the wait for the flush, the flusher still finishes its last batch.
+    @Override
+    public void close() throws IOException {
+        // Waits out submits already queueing, the flusher keeps draining so they get in
+        long stamp = stateLock.writeLock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+
+        boolean interrupted = false;
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            interrupted = true;
+            throw new InterruptedIOException("Interrupted while flushing receipts on close.");
+        } finally {
+            interrupted |= stopFlusher();
+            MetricsRegistry.getDefault().removeGauge(ShopMetrics.RECEIPT_QUEUE_DEPTH, queueDepthGauge);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Returns true if the calling thread was interrupted while it waited
+    private boolean stopFlusher() {
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                if (queue.offer(END, flushIntervalMillis, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        return interrupted;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Receipt writer is closed.");
+        }
+    }
+
+    // Flusher
+    private void runFlusher() {
+        List<Receipt> batch = new ArrayList<>(batchSize);
+
+        while (true) {
+            try {
+                Receipt first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == END) {
+                    drainRemaining(batch);
+                    return;
+                }
+
+                if (first != null) {
+                    batch.add(first);
+                    boolean ended = fillBatch(batch);
+                    writeBatch(batch);
+                    batch.clear();
+                    if (ended) {
+                        drainRemaining(batch);
+                        return;
+                    }
+                }
+
+                syncIfRequested();
+            } catch (InterruptedException e) {
+                // Nothing interrupts the flusher on purpose, close() queues END instead
+                if (closed) {
+                    drainRemaining(batch);
+                    return;
+                }
+            }
+        }
+    }
+
+    // Keeps collecting until the batch is full, the flush interval runs out or someone waits on flush().
+    // Returns true if it reached END, which is taken out of the batch.
+    private boolean fillBatch(List<Receipt> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+        while (batch.size() < batchSize) {
+            int before = batch.size();
+            queue.drainTo(batch, batchSize - batch.size());
+            if (removeEnd(batch, before)) {
+                return true;
+            }
+            if (batch.size() >= batchSize || closed || isSyncRequested()) {
+                return false;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+
+            Receipt next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return false;
+            }
+            if (next == END) {
+                return true;
+            }
+            batch.add(next);
+        }
+        return false;
+    }
+
+    private static boolean removeEnd(List<Receipt> batch, int from) {
+        for (int i = from; i < batch.size(); i++) {
+            if (batch.get(i) == END) {
+                batch.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeBatch(List<Receipt> batch) {
+        boolean failed = false;
+        long startNanos = System.nanoTime();
+        try {
+            storage.writeBatch(batch);
+            ShopMetrics.RECEIPT_BATCH_WRITE_LATENCY_NANOS.record(System.nanoTime() - startNanos);
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            ShopMetrics.RECEIPT_WRITE_FAILURES.add(batch.size());
+            System.err.println("Failed to write " + batch.size() + " receipts: " + e.getMessage());
+        }
+
+        synchronized (progressLock) {
+            processedCount += batch.size();
+            if (failed) {
+                failedCount += batch.size();
+            }
+        }
+    }
+
+    // Writes what is left in the batch and the queue when the flusher stops
+    private void drainRemaining(List<Receipt> batch) {
+        queue.drainTo(batch);
+        removeEnd(batch, 0);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        writeBatch(batch);
+        batch.clear();
+        try {
+            storage.sync();
+        } catch (IOException e) {
+            System.err.println("Failed to sync receipts on close: " + e.getMessage());
+        }
+    }
+
+    private boolean isSyncRequested() {
+        synchronized (progressLock) {
+            return syncRequested;
+        }
+    }
+
+    private void syncIfRequested() {
+        long covered;
+        synchronized (progressLock) {
+            if (!syncRequested) {
+                return;
+            }
+            syncRequested = false;
+            covered = processedCount;
+        }
+
+        IOException failure = null;
+        try {
+            storage.sync();
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        synchronized (progressLock) {
+            if (failure != null) {
+                syncFailure = failure;
+            } else {
+                syncedCount = Math.max(syncedCount, covered);
+            }
+            progressLock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package Shop.helpers;
+
+import java.math.BigDecimal;
+
+// Layout of the binary receipt files
+//
+// Header (HEADER_BYTES):
+//   int magic, short version, short reserved (0),
+//   int recordCount, long dictionaryOffset, int dictionaryCount
+// Records, back to back:
+//   int receiptId, int storeId, int cashierId, long issuedEpochSecond (UTC),
+//   decimal totalCost, decimal change, short lineCount,
+//   lineCount x (int commodityId, int nameRef, decimal quantity, decimal price)
+// where a decimal is (long unscaled, byte scale)
+// Dictionary at dictionaryOffset:
+//   dictionaryCount x (short length, UTF-8 bytes)
+//
+// Money and quantities keep the scale they were written with, so 1.10 reads back as 1.10 and
+// not 1.100000. Commodity names are indexes into the dictionary.
+final class BinaryReceiptFormat {
+    static final int MAGIC = 0x52435054; // "RCPT"
+    static final short VERSION = 2;
+
+    static final int HEADER_BYTES = 4 + 2 + 2 + 4 + 8 + 4;
+    static final int RECORD_COUNT_OFFSET = 8;
+    static final int DICTIONARY_OFFSET_OFFSET = 12;
+    static final int DICTIONARY_COUNT_OFFSET = 20;
+
+    static final int DECIMAL_BYTES = 8 + 1;
+    static final int RECORD_FIXED_BYTES = 4 + 4 + 4 + 8 + DECIMAL_BYTES + DECIMAL_BYTES + 2;
+    static final int LINE_BYTES = 4 + 4 + DECIMAL_BYTES + DECIMAL_BYTES;
+
+    static final int RECEIPT_ID_OFFSET = 0;
+    static final int STORE_ID_OFFSET = 4;
+    static final int CASHIER_ID_OFFSET = 8;
+    static final int ISSUED_OFFSET = 12;
+    static final int TOTAL_COST_OFFSET = 20;
+    static final int CHANGE_OFFSET = 29;
+    static final int LINE_COUNT_OFFSET = 38;
+
+    static final int LINE_COMMODITY_ID_OFFSET = 0;
+    static final int LINE_NAME_REF_OFFSET = 4;
+    static final int LINE_QUANTITY_OFFSET = 8;
+    static final int LINE_PRICE_OFFSET = 17;
+
+    // The scale byte follows the unscaled long of every decimal
+    static final int SCALE_OFFSET = 8;
+
+    private BinaryReceiptFormat() {
+    }
+
+    // Values with a negative scale are widened to scale 0, anything else is stored exactly. No rounding
+    // is done, a value whose digits do not fit a long or whose scale does not fit a byte is refused.
+    static Money toDecimal(BigDecimal value, String field) {
+        Money decimal;
+        try {
+            decimal = Money.of(value);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(field + " " + value + " does not fit the binary format.", e);
+        }
+        if (decimal.getScale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException(field + " " + value + " has a scale the binary format cannot store.");
+        }
+        return decimal;
+    }
+}
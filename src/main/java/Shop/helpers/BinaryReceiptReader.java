@@ -0,0 +1,78 @@
+package Shop.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import static Shop.helpers.BinaryReceiptFormat.*;
+
+// Reads a binary receipt file through a MappedByteBuffer, see BinaryReceiptFormat for the layout
+public class BinaryReceiptReader {
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+    private final int recordsEnd;
+    private final String[] names;
+
+    // Constructor
+    public BinaryReceiptReader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary receipt file is larger than 2 GB: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary receipt file: " + file);
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported binary receipt file version: " + file);
+        }
+
+        recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+        recordsEnd = (int) buffer.getLong(DICTIONARY_OFFSET_OFFSET);
+        names = readDictionary(buffer, recordsEnd, buffer.getInt(DICTIONARY_COUNT_OFFSET));
+    }
+
+    // Getters
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getDictionarySize() {
+        return names.length;
+    }
+    // -----------------
+
+    // Walks all records with one reused view, nothing is allocated per record
+    public void forEach(Consumer<BinaryReceiptView> visitor) {
+        BinaryReceiptView view = new BinaryReceiptView(buffer, names);
+        int offset = HEADER_BYTES;
+
+        while (offset < recordsEnd) {
+            view.moveTo(offset);
+            visitor.accept(view);
+            offset += view.size();
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer buffer, int offset, int count) {
+        String[] names = new String[count];
+        int position = offset;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getShort(position) & 0xFFFF;
+            position += 2;
+
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += length;
+        }
+        return names;
+    }
+}
@@ -0,0 +1,121 @@
+package Shop.helpers;
+
+import Shop.commodities.CustomDataType;
+import Shop.receipts.ReceiptRecord;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static Shop.helpers.BinaryReceiptFormat.*;
+
+// Flyweight over one record of a mapped binary receipt file. The reader moves the same view
+// from record to record, the accessors read straight from the buffer and allocate nothing.
+public class BinaryReceiptView {
+    private final ByteBuffer buffer;
+    private final String[] names;
+    private int offset;
+
+    BinaryReceiptView(ByteBuffer buffer, String[] names) {
+        this.buffer = buffer;
+        this.names = names;
+    }
+
+    void moveTo(int offset) {
+        this.offset = offset;
+    }
+
+    int size() {
+        return RECORD_FIXED_BYTES + getLineCount() * LINE_BYTES;
+    }
+
+    // Getters
+    public int getReceiptId() {
+        return buffer.getInt(offset + RECEIPT_ID_OFFSET);
+    }
+
+    public int getStoreId() {
+        return buffer.getInt(offset + STORE_ID_OFFSET);
+    }
+
+    public int getCashierId() {
+        return buffer.getInt(offset + CASHIER_ID_OFFSET);
+    }
+
+    public long getIssuedEpochSecond() {
+        return buffer.getLong(offset + ISSUED_OFFSET);
+    }
+
+    public long getTotalCostUnscaled() {
+        return buffer.getLong(offset + TOTAL_COST_OFFSET);
+    }
+
+    public int getTotalCostScale() {
+        return buffer.get(offset + TOTAL_COST_OFFSET + SCALE_OFFSET);
+    }
+
+    public long getChangeUnscaled() {
+        return buffer.getLong(offset + CHANGE_OFFSET);
+    }
+
+    public int getChangeScale() {
+        return buffer.get(offset + CHANGE_OFFSET + SCALE_OFFSET);
+    }
+
+    public int getLineCount() {
+        return buffer.getShort(offset + LINE_COUNT_OFFSET);
+    }
+
+    public int getLineCommodityId(int line) {
+        return buffer.getInt(lineOffset(line) + LINE_COMMODITY_ID_OFFSET);
+    }
+
+    public int getLineNameRef(int line) {
+        return buffer.getInt(lineOffset(line) + LINE_NAME_REF_OFFSET);
+    }
+
+    // Names are decoded once when the file is opened, this returns the shared instance
+    public String getLineName(int line) {
+        return names[getLineNameRef(line)];
+    }
+
+    public long getLineQuantityUnscaled(int line) {
+        return buffer.getLong(lineOffset(line) + LINE_QUANTITY_OFFSET);
+    }
+
+    public int getLineQuantityScale(int line) {
+        return buffer.get(lineOffset(line) + LINE_QUANTITY_OFFSET + SCALE_OFFSET);
+    }
+
+    public long getLinePriceUnscaled(int line) {
+        return buffer.getLong(lineOffset(line) + LINE_PRICE_OFFSET);
+    }
+
+    public int getLinePriceScale(int line) {
+        return buffer.get(lineOffset(line) + LINE_PRICE_OFFSET + SCALE_OFFSET);
+    }
+    // -----------------
+
+    // Copies the current record out of the buffer, this one does allocate
+    public ReceiptRecord toRecord() {
+        int lineCount = getLineCount();
+        List<CustomDataType> lines = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            lines.add(new CustomDataType(getLineCommodityId(i), getLineName(i),
+                    BigDecimal.valueOf(getLineQuantityUnscaled(i), getLineQuantityScale(i)),
+                    BigDecimal.valueOf(getLinePriceUnscaled(i), getLinePriceScale(i))));
+        }
+
+        return new ReceiptRecord(getReceiptId(), getStoreId(), null, getCashierId(), null,
+                LocalDateTime.ofEpochSecond(getIssuedEpochSecond(), 0, ZoneOffset.UTC), lines,
+                BigDecimal.valueOf(getTotalCostUnscaled(), getTotalCostScale()),
+                BigDecimal.valueOf(getChangeUnscaled(), getChangeScale()));
+    }
+
+    private int lineOffset(int line) {
+        return offset + RECORD_FIXED_BYTES + line * LINE_BYTES;
+    }
+}
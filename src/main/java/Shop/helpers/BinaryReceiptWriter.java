@@ -0,0 +1,145 @@
+package Shop.helpers;
+
+import Shop.commodities.CustomDataType;
+import Shop.receipts.Receipt;
+import Shop.receipts.ReceiptRecord;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static Shop.helpers.BinaryReceiptFormat.*;
+
+// Writes receipts in the binary format, see BinaryReceiptFormat for the layout
+public class BinaryReceiptWriter implements AutoCloseable {
+    private final FileChannel channel;
+    private final DataOutputStream out;
+
+    private final Map<String, Integer> nameRefs = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int recordCount;
+    private long position;
+    private boolean closed;
+
+    // Constructor
+    public BinaryReceiptWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0); // reserved
+        out.writeInt(0);   // record count, patched on close
+        out.writeLong(0);  // dictionary offset, patched on close
+        out.writeInt(0);   // dictionary count, patched on close
+        position = HEADER_BYTES;
+    }
+
+    // Getters
+    public int getRecordCount() {
+        return recordCount;
+    }
+    // -----------------
+
+    public void write(Receipt receipt) throws IOException {
+        write(receipt.getId(), receipt.getStoreId(), receipt.getCashierId(), receipt.getIssuedDateTime(),
+                receipt.getPurchasedCommodities(), receipt.getTotalCost(), receipt.getChange());
+    }
+
+    public void write(ReceiptRecord record) throws IOException {
+        write(record.getId(), record.getStoreId(), record.getCashierId(), record.getIssuedDateTime(),
+                record.getPurchasedCommodities(), record.getTotalCost(), record.getChange());
+    }
+
+    private void write(int id, int storeId, int cashierId, LocalDateTime issued, List<CustomDataType> lines,
+                       BigDecimal totalCost, BigDecimal change) throws IOException {
+        if (lines.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Receipt " + id + " has too many lines for the binary format.");
+        }
+
+        // Convert everything first so a value that does not fit leaves the file untouched
+        Money total = toDecimal(totalCost, "totalCost");
+        Money changeDecimal = toDecimal(change, "change");
+        Money[] lineDecimals = new Money[lines.size() * 2];
+        for (int i = 0; i < lines.size(); i++) {
+            lineDecimals[i * 2] = toDecimal(lines.get(i).getQuantity(), "quantity");
+            lineDecimals[i * 2 + 1] = toDecimal(lines.get(i).getPrice(), "price");
+        }
+
+        out.writeInt(id);
+        out.writeInt(storeId);
+        out.writeInt(cashierId);
+        out.writeLong(issued.toEpochSecond(ZoneOffset.UTC));
+        writeDecimal(total);
+        writeDecimal(changeDecimal);
+        out.writeShort(lines.size());
+
+        for (int i = 0; i < lines.size(); i++) {
+            CustomDataType line = lines.get(i);
+            out.writeInt(line.getId());
+            out.writeInt(nameRef(line.getName()));
+            writeDecimal(lineDecimals[i * 2]);
+            writeDecimal(lineDecimals[i * 2 + 1]);
+        }
+
+        position += RECORD_FIXED_BYTES + (long) lines.size() * LINE_BYTES;
+        recordCount++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        long dictionaryOffset = position;
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Commodity name is too long for the binary format: " + name.substring(0, 32) + "...");
+            }
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES - RECORD_COUNT_OFFSET);
+        header.putInt(recordCount).putLong(dictionaryOffset).putInt(names.size()).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, RECORD_COUNT_OFFSET + header.position());
+        }
+
+        channel.force(true);
+        out.close();
+    }
+
+    private void writeDecimal(Money decimal) throws IOException {
+        out.writeLong(decimal.getUnscaled());
+        out.writeByte(decimal.getScale());
+    }
+
+    private int nameRef(String name) {
+        String key = name == null ? "" : name;
+        Integer ref = nameRefs.get(key);
+        if (ref == null) {
+            ref = names.size();
+            names.add(key);
+            nameRefs.put(key, ref);
+        }
+        return ref;
+    }
+}
@@ -0,0 +1,125 @@
+package Shop.helpers;
+
+import Shop.commodities.Commodity;
+import Shop.commodities.CommodityCategory;
+import Shop.exceptions.CommodityExpiredDateRException;
+import Shop.stores.IStoreService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams a delivery manifest, a JSON array of commodities:
+// [{"id":1,"name":"Apple","category":"EATABLE","deliveryPrice":1.10,"quantity":40,"expiryDate":"2025-06-01"}, ...]
+// Only one batch of lines is held in memory at a time. expiryDate is optional.
+public class DeliveryManifestReader {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    public interface BatchHandler {
+        void accept(List<Commodity> batch) throws IOException;
+    }
+
+    // Checks the whole manifest first, then delivers it to the store batch by batch. Returns the line count.
+    public static int deliver(File manifest, IStoreService store, int batchSize) throws IOException {
+        validate(manifest);
+        return forEachBatch(manifest, batchSize, store::addCommodities);
+    }
+
+    // Parses every line without keeping any, fails on the first malformed or already expired line
+    public static int validate(File manifest) throws IOException {
+        LocalDate today = LocalDate.now();
+        return forEachBatch(manifest, 1, batch -> {
+            Commodity line = batch.get(0);
+            if (line.getExpiryDate() != null && line.getExpiryDate().isBefore(today)) {
+                throw new CommodityExpiredDateRException(line.getName(), line.getExpiryDate());
+            }
+        });
+    }
+
+    public static int forEachBatch(File manifest, int batchSize, BatchHandler handler) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+
+        try (JsonParser parser = FACTORY.createParser(manifest)) {
+            parser.nextToken();
+            ReceiptRecordParser.expect(parser, JsonToken.START_ARRAY);
+
+            List<Commodity> batch = new ArrayList<>(batchSize);
+            int lines = 0;
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                batch.add(parseLine(parser));
+                lines++;
+
+                if (batch.size() == batchSize) {
+                    handler.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            ReceiptRecordParser.expect(parser, JsonToken.END_ARRAY);
+
+            if (!batch.isEmpty()) {
+                handler.accept(batch);
+            }
+            return lines;
+        }
+    }
+
+    private static Commodity parseLine(JsonParser parser) throws IOException {
+        Integer id = null;
+        String name = null;
+        CommodityCategory category = null;
+        BigDecimal deliveryPrice = null;
+        BigDecimal quantity = null;
+        LocalDate expiryDate = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "id" -> id = parser.getValueAsInt();
+                case "name" -> name = parser.getValueAsString();
+                case "category" -> category = parseCategory(parser);
+                case "deliveryPrice" -> deliveryPrice = ReceiptRecordParser.decimal(parser);
+                case "quantity" -> quantity = ReceiptRecordParser.decimal(parser);
+                case "expiryDate" -> expiryDate = parseDate(parser);
+                default -> parser.skipChildren();
+            }
+        }
+
+        return new Commodity(ReceiptRecordParser.required(id, "id"), ReceiptRecordParser.required(name, "name"),
+                ReceiptRecordParser.required(category, "category"), ReceiptRecordParser.required(deliveryPrice, "deliveryPrice"),
+                ReceiptRecordParser.required(quantity, "quantity"), expiryDate);
+    }
+
+    private static CommodityCategory parseCategory(JsonParser parser) throws IOException {
+        String value = parser.getValueAsString();
+        try {
+            return CommodityCategory.valueOf(value);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IOException("Unknown category \"" + value + "\" at " + parser.currentLocation());
+        }
+    }
+
+    private static LocalDate parseDate(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(parser.getValueAsString());
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new IOException("Invalid expiry date at " + parser.currentLocation());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package Shop.helpers;
+
+import Shop.receipts.Receipt;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface IReceiptStorage {
+
+    void writeBatch(List<Receipt> receipts) throws IOException;
+
+    // Makes everything written so far durable
+    void sync() throws IOException;
+}
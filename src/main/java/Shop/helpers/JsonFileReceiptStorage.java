@@ -0,0 +1,95 @@
+package Shop.helpers;
+
+import Shop.receipts.Receipt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// The receipts/receipt_S_N.json layout, one file per receipt, pretty-printed unless asked for compact
+public class JsonFileReceiptStorage implements IReceiptStorage {
+    private final File directory;
+    private final ReceiptSerializationContext.Style style;
+
+    // Written since the last sync, guarded by this
+    private List<Path> unsynced = new ArrayList<>();
+
+    // Constructor
+    public JsonFileReceiptStorage() {
+        this(ReceiptFileManager.getDefaultDirectory());
+    }
+
+    public JsonFileReceiptStorage(File directory) {
+        this(directory, ReceiptFileManager.getFileStyle());
+    }
+
+    public JsonFileReceiptStorage(File directory, ReceiptSerializationContext.Style style) {
+        this.directory = directory;
+        this.style = style;
+    }
+
+    // Getters
+    public File getDirectory() {
+        return directory;
+    }
+    // -----------------
+
+    @Override
+    public void writeBatch(List<Receipt> receipts) throws IOException {
+        if (!ReceiptFileManager.ensureDirectory(directory)) {
+            throw new IOException("Failed to create receipts directory: " + directory.getAbsolutePath());
+        }
+
+        for (Receipt receipt : receipts) {
+            Path file = ReceiptFileManager.writeReceipt(receipt, directory, style).toPath();
+            synchronized (this) {
+                unsynced.add(file);
+            }
+        }
+    }
+
+    // Forces every file written since the last sync, then the directory so the new names survive a crash too
+    @Override
+    public void sync() throws IOException {
+        List<Path> files;
+        synchronized (this) {
+            if (unsynced.isEmpty()) {
+                return;
+            }
+            files = unsynced;
+            unsynced = new ArrayList<>();
+        }
+
+        try {
+            for (Path file : files) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+            forceDirectory(directory.toPath());
+        } catch (IOException e) {
+            // Not synced, the next sync tries these files again
+            synchronized (this) {
+                unsynced.addAll(0, files);
+            }
+            throw e;
+        }
+    }
+
+    // Not every platform can open a directory as a channel, where it cannot the files' force has to do
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException | UnsupportedOperationException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+}
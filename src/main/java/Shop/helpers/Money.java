@@ -0,0 +1,148 @@
+package Shop.helpers;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Fixed-point amount: a long count of minor units with an explicit scale (1.10 is 110 at scale 2).
+// Scales follow BigDecimal's rules, so multiply adds scales and add takes the larger one, and
+// toBigDecimal gives exactly what the same BigDecimal arithmetic would. Overflow throws ArithmeticException.
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0, 0);
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long unscaled;
+    private final int scale;
+
+    // Constructor
+    private Money(long unscaled, int scale) {
+        this.unscaled = unscaled;
+        this.scale = scale;
+    }
+
+    public static Money ofUnscaled(long unscaled, int scale) {
+        return new Money(unscaled, scale);
+    }
+
+    public static Money of(BigDecimal value) {
+        if (value.scale() < 0) {
+            value = value.setScale(0, RoundingMode.UNNECESSARY);
+        }
+        return new Money(value.movePointRight(value.scale()).longValueExact(), value.scale());
+    }
+
+    // 1 + percentage / 100 rounded HALF_UP to two decimals, the same as
+    // BigDecimal.ONE.add(percentage.divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP))
+    public static Money percentMultiplier(BigDecimal percentage) {
+        Money percent = of(percentage);
+        long wholePercent = divideHalfUp(percent.unscaled, pow10(percent.scale));
+        return new Money(Math.addExact(100, wholePercent), 2);
+    }
+
+    // Getters
+    public long getUnscaled() {
+        return unscaled;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+    // -----------------
+
+    public Money add(Money other) {
+        if (scale == other.scale) {
+            return new Money(Math.addExact(unscaled, other.unscaled), scale);
+        }
+        if (scale > other.scale) {
+            return new Money(Math.addExact(unscaled, other.rescaledUnscaled(scale)), scale);
+        }
+        return new Money(Math.addExact(rescaledUnscaled(other.scale), other.unscaled), other.scale);
+    }
+
+    public Money subtract(Money other) {
+        return add(other.negate());
+    }
+
+    public Money negate() {
+        return new Money(Math.negateExact(unscaled), scale);
+    }
+
+    public Money multiply(Money other) {
+        return new Money(Math.multiplyExact(unscaled, other.unscaled), scale + other.scale);
+    }
+
+    // Rounds HALF_UP to the given scale, like BigDecimal.setScale(newScale, RoundingMode.HALF_UP)
+    public Money setScale(int newScale) {
+        if (newScale >= scale) {
+            return new Money(rescaledUnscaled(newScale), newScale);
+        }
+        return new Money(divideHalfUp(unscaled, pow10(scale - newScale)), newScale);
+    }
+
+    public int signum() {
+        return Long.signum(unscaled);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        if (scale == other.scale) {
+            return Long.compare(unscaled, other.unscaled);
+        }
+        try {
+            int common = Math.max(scale, other.scale);
+            return Long.compare(rescaledUnscaled(common), other.rescaledUnscaled(common));
+        } catch (ArithmeticException e) {
+            return toBigDecimal().compareTo(other.toBigDecimal());
+        }
+    }
+
+    // Same value and same scale, like BigDecimal.equals
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money other)) return false;
+        return unscaled == other.unscaled && scale == other.scale;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(unscaled) + scale;
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    // Arithmetic Helpers
+    private long rescaledUnscaled(int newScale) {
+        return Math.multiplyExact(unscaled, pow10(newScale - scale));
+    }
+
+    private static long pow10(int exponent) {
+        if (exponent >= POWERS_OF_TEN.length) {
+            throw new ArithmeticException("Scale difference too large: " + exponent);
+        }
+        return POWERS_OF_TEN[exponent];
+    }
+
+    private static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (Math.abs(remainder) >= divisor - Math.abs(remainder)) {
+            quotient += Long.signum(dividend);
+        }
+        return quotient;
+    }
+}
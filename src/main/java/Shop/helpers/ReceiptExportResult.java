@@ -0,0 +1,40 @@
+package Shop.helpers;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+// What an export wrote, and for every receipt it could not read, why
+public class ReceiptExportResult {
+    private final long receipts;
+    private final long lines;
+    private final List<Path> files;
+    private final Map<String, Exception> skipped;
+
+    // Constructor
+    public ReceiptExportResult(long receipts, long lines, List<Path> files, Map<String, Exception> skipped) {
+        this.receipts = receipts;
+        this.lines = lines;
+        this.files = files;
+        this.skipped = skipped;
+    }
+
+    // Getters
+    public long getReceipts() {
+        return receipts;
+    }
+
+    // Rows written, one per purchased line
+    public long getLines() {
+        return lines;
+    }
+
+    public List<Path> getFiles() {
+        return files;
+    }
+
+    public Map<String, Exception> getSkipped() {
+        return skipped;
+    }
+    // -----------------
+}
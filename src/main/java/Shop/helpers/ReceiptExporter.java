@@ -0,0 +1,472 @@
+package Shop.helpers;
+
+import Shop.commodities.CustomDataType;
+import Shop.receipts.ReceiptRecord;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+// Flattens stored receipts into one row per purchased line for analytics, as CSV or NDJSON:
+//   receipt_id, store_id, cashier_id, issued_at, commodity_id, commodity_name, quantity, price
+// The source is read once by the calling thread. Records go through bounded queues to writer threads,
+// and each partition (store or day) belongs to exactly one of them, which formats and compresses its files.
+// Memory stays bounded by the queues and by the number of files a writer keeps open at once.
+public class ReceiptExporter {
+    public enum Format {
+        CSV(".csv"),
+        NDJSON(".ndjson");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    public enum Partitioning {
+        // One file
+        NONE,
+        // receipts-store-<id>
+        STORE,
+        // receipts-<issue date>
+        DAY
+    }
+
+    // A receipt storage walked once, record by record
+    public interface RecordSource {
+        void forEach(RecordHandler handler) throws IOException;
+    }
+
+    public interface RecordHandler {
+        void accept(ReceiptRecord record) throws IOException;
+
+        // A receipt the source could not read, it is reported and the walk goes on
+        void skip(String name, Exception cause);
+    }
+
+    private static final String CSV_HEADER = "receipt_id,store_id,cashier_id,issued_at,commodity_id,commodity_name,quantity,price\n";
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_OPEN_FILES_PER_WRITER = 32;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    // Marks the end of the records for a writer thread
+    private static final ReceiptRecord END = new ReceiptRecord(0, 0, null, 0, null, null, List.of(), null, null);
+
+    private final Format format;
+    private final Partitioning partitioning;
+    private final boolean gzip;
+    private final int writerThreads;
+
+    // Constructor
+    public ReceiptExporter(Format format, Partitioning partitioning, boolean gzip) {
+        this(format, partitioning, gzip, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ReceiptExporter(Format format, Partitioning partitioning, boolean gzip, int writerThreads) {
+        if (writerThreads < 1) {
+            throw new IllegalArgumentException("An export needs at least one writer thread.");
+        }
+        this.format = format;
+        this.partitioning = partitioning;
+        this.gzip = gzip;
+        // Without partitions there is only one file, so only one writer has work
+        this.writerThreads = partitioning == Partitioning.NONE ? 1 : writerThreads;
+    }
+
+    // Sources
+    // A receipts/ directory of JSON files, listed as it is walked rather than all at once
+    public static RecordSource fromJsonDirectory(File directory) {
+        return handler -> {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.toPath(), "*.json")) {
+                for (Path file : files) {
+                    ReceiptRecord record;
+                    try {
+                        record = ReceiptRecordParser.parse(file.toFile());
+                    } catch (IOException | RuntimeException e) {
+                        handler.skip(file.getFileName().toString(), e);
+                        continue;
+                    }
+                    handler.accept(record);
+                }
+            }
+        };
+    }
+
+    public static RecordSource fromJournal(ReceiptJournal journal) {
+        return handler -> journal.forEachRecord(handler::accept);
+    }
+
+    public static RecordSource fromBinaryFile(Path file) {
+        return handler -> {
+            BinaryReceiptReader reader = ReceiptFileManager.openBinaryFile(file);
+            IOException[] failure = {null};
+            reader.forEach(view -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    handler.accept(view.toRecord());
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        };
+    }
+    // -----------------
+
+    // Writes the export into the target directory, replacing files of an earlier export with the same names
+    public ReceiptExportResult export(RecordSource source, Path targetDirectory) throws IOException {
+        Files.createDirectories(targetDirectory);
+
+        List<PartitionWriter> writers = new ArrayList<>(writerThreads);
+        List<Thread> threads = new ArrayList<>(writerThreads);
+        for (int i = 0; i < writerThreads; i++) {
+            PartitionWriter writer = new PartitionWriter(targetDirectory);
+            Thread thread = new Thread(writer, "receipt-export-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            writers.add(writer);
+            threads.add(thread);
+        }
+
+        Map<String, Exception> skipped = new ConcurrentHashMap<>();
+        IOException sourceFailure = null;
+        try {
+            source.forEach(new RecordHandler() {
+                @Override
+                public void accept(ReceiptRecord record) throws IOException {
+                    String partition = partitionOf(record);
+                    writers.get(Math.floorMod(partition.hashCode(), writers.size())).submit(record);
+                }
+
+                @Override
+                public void skip(String name, Exception cause) {
+                    skipped.put(name, cause);
+                    System.err.println("Skipping receipt " + name + " in export: " + cause.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            sourceFailure = e;
+        } finally {
+            for (PartitionWriter writer : writers) {
+                writer.finish();
+            }
+            for (Thread thread : threads) {
+                joinUninterruptibly(thread);
+            }
+        }
+
+        long receipts = 0;
+        long lines = 0;
+        List<Path> files = new ArrayList<>();
+        IOException failure = sourceFailure;
+        for (PartitionWriter writer : writers) {
+            receipts += writer.receipts.sum();
+            lines += writer.lines.sum();
+            files.addAll(writer.files);
+            if (failure == null && writer.failure != null) {
+                failure = writer.failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        Collections.sort(files);
+        return new ReceiptExportResult(receipts, lines, files, skipped);
+    }
+
+    // Partition Helpers
+    private String partitionOf(ReceiptRecord record) {
+        return switch (partitioning) {
+            case NONE -> "receipts";
+            case STORE -> "receipts-store-" + record.getStoreId();
+            case DAY -> record.getIssuedDateTime() == null
+                    ? "receipts-undated"
+                    : "receipts-" + record.getIssuedDateTime().toLocalDate();
+        };
+    }
+
+    private String fileName(String partition) {
+        return partition + format.extension + (gzip ? ".gz" : "");
+    }
+
+    // One writer thread: takes its partitions' records off its queue and appends their rows.
+    // Files are kept open in LRU order, one closed early is opened again for append. A gzip file
+    // reopened that way holds several gzip members, which gzip readers take as one stream.
+    private final class PartitionWriter implements Runnable {
+        private final Path directory;
+        private final BlockingQueue<ReceiptRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final Map<String, RowWriter> open = new LinkedHashMap<>(16, 0.75f, true);
+        private final Set<String> started = new HashSet<>();
+
+        private final LongAdder receipts = new LongAdder();
+        private final LongAdder lines = new LongAdder();
+        private final List<Path> files = new ArrayList<>();
+        private volatile IOException failure;
+
+        PartitionWriter(Path directory) {
+            this.directory = directory;
+        }
+
+        // Blocks while the queue is full, so reading never runs far ahead of writing
+        void submit(ReceiptRecord record) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            try {
+                queue.put(record);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while exporting receipts.");
+            }
+        }
+
+        void finish() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    ReceiptRecord record = queue.take();
+                    if (record == END) {
+                        break;
+                    }
+                    // After a failure the queue is still drained, so the reading thread is never left blocked
+                    if (failure == null) {
+                        write(record);
+                    }
+                }
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException("Receipt export writer was interrupted.");
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void write(ReceiptRecord record) {
+            try {
+                rowWriter(partitionOf(record)).write(record);
+                receipts.increment();
+                lines.add(record.getPurchasedCommodities().size());
+            } catch (IOException e) {
+                failure = e;
+            } catch (Throwable e) {
+                // Anything else is kept as the failure too, so the loop goes on draining instead of ending
+                failure = new IOException("Receipt export writer failed: " + e, e);
+            }
+        }
+
+        private RowWriter rowWriter(String partition) throws IOException {
+            RowWriter writer = open.get(partition);
+            if (writer != null) {
+                return writer;
+            }
+
+            if (open.size() >= MAX_OPEN_FILES_PER_WRITER) {
+                Iterator<RowWriter> eldest = open.values().iterator();
+                RowWriter closing = eldest.next();
+                eldest.remove();
+                closing.close();
+            }
+
+            Path file = directory.resolve(fileName(partition));
+            boolean first = started.add(partition);
+            writer = new RowWriter(file, first);
+            open.put(partition, writer);
+            if (first) {
+                files.add(file);
+            }
+            return writer;
+        }
+
+        private void closeAll() {
+            for (RowWriter writer : open.values()) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                } catch (Throwable e) {
+                    if (failure == null) {
+                        failure = new IOException("Receipt export writer failed: " + e, e);
+                    }
+                }
+            }
+            open.clear();
+        }
+    }
+
+    // Rows of one open file, through optional gzip and a buffer
+    private final class RowWriter {
+        private final OutputStream out;
+        private final JsonGenerator json;
+        private final StringBuilder row = new StringBuilder(128);
+
+        RowWriter(Path file, boolean truncate) throws IOException {
+            OutputStream fileOut = truncate
+                    ? Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                    : Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            out = gzip
+                    ? new BufferedOutputStream(new GZIPOutputStream(fileOut, BUFFER_BYTES), BUFFER_BYTES)
+                    : new BufferedOutputStream(fileOut, BUFFER_BYTES);
+
+            if (format == Format.NDJSON) {
+                json = ReceiptSerializationContext.getDefault().getFactory().createGenerator(out)
+                        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // Rows are separated by the newline alone, not the default space between root values
+                json.setRootValueSeparator(null);
+            } else {
+                json = null;
+                if (truncate) {
+                    out.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        void write(ReceiptRecord record) throws IOException {
+            for (CustomDataType line : record.getPurchasedCommodities()) {
+                if (json != null) {
+                    writeJsonRow(record, line);
+                } else {
+                    writeCsvRow(record, line);
+                }
+            }
+        }
+
+        private void writeCsvRow(ReceiptRecord record, CustomDataType line) throws IOException {
+            row.setLength(0);
+            row.append(record.getId()).append(',')
+                    .append(record.getStoreId()).append(',')
+                    .append(record.getCashierId()).append(',')
+                    .append(timestamp(record.getIssuedDateTime())).append(',')
+                    .append(line.getId()).append(',');
+            appendCsvText(row, line.getName());
+            row.append(',').append(plain(line.getQuantity()))
+                    .append(',').append(plain(line.getPrice()))
+                    .append('\n');
+            out.write(row.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeJsonRow(ReceiptRecord record, CustomDataType line) throws IOException {
+            json.writeStartObject();
+            json.writeNumberField("receipt_id", record.getId());
+            json.writeNumberField("store_id", record.getStoreId());
+            json.writeNumberField("cashier_id", record.getCashierId());
+            json.writeStringField("issued_at", timestamp(record.getIssuedDateTime()));
+            json.writeNumberField("commodity_id", line.getId());
+            json.writeStringField("commodity_name", line.getName());
+            writeDecimalField("quantity", line.getQuantity());
+            writeDecimalField("price", line.getPrice());
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        private void writeDecimalField(String name, BigDecimal value) throws IOException {
+            if (value == null) {
+                json.writeNullField(name);
+            } else {
+                json.writeNumberField(name, value);
+            }
+        }
+
+        void close() throws IOException {
+            if (json != null) {
+                json.close();
+            }
+            out.close();
+        }
+    }
+
+    // Row Helpers
+    private static String timestamp(LocalDateTime issued) {
+        // ISO_LOCAL_DATE_TIME always writes the seconds, toString() leaves them out when they are zero
+        return issued == null ? "" : DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(issued);
+    }
+
+    private static String plain(BigDecimal value) {
+        return value == null ? "" : value.toPlainString();
+    }
+
+    // Quoted only when it has to be, quotes inside are doubled
+    private static void appendCsvText(StringBuilder row, String text) {
+        if (text == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            row.append(text);
+            return;
+        }
+        row.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,149 +1,219 @@
 package Shop.helpers;
 
-import Shop.cashiers.ICashierService;
-import Shop.commodities.CustomDataType;
 import Shop.exceptions.fileExceptions.*;
+import Shop.metrics.ShopMetrics;
 import Shop.receipts.Receipt;
+import Shop.receipts.ReceiptRecord;
 import Shop.stores.IStoreService;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import java.io.File;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ReceiptFileManager {
 
     private static final String FOLDER_PATH = "receipts";
 
-    public static void writeToFile(Receipt receipt) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+    private static final ReceiptSerializationContext SERIALIZATION = ReceiptSerializationContext.getDefault();
+
+    // Loading blocks on file reads, so it runs on its own threads rather than the common ForkJoinPool
+    // the store registry's reports use
+    private static final int LOAD_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    // How receipt files are laid out, pretty unless switched to compact
+    private static volatile ReceiptSerializationContext.Style fileStyle = ReceiptSerializationContext.Style.PRETTY;
 
-        String fileName = "receipt_" + receipt.getId() + ".json";
+    public static void writeToFile(Receipt receipt) {
         File directory = new File(FOLDER_PATH);
 
-        if (!directory.exists() && !directory.mkdirs()) {
+        if (!ensureDirectory(directory)) {
             System.err.println("Failed to create receipts directory.");
             return;
         }
 
-        File file = new File(directory, fileName);
         try {
-            mapper.writeValue(file, receipt);
+            File file = writeReceipt(receipt, directory);
             System.out.println("Receipt written to: " + file.getAbsolutePath());
         } catch (IOException e) {
             System.err.println("Failed to write receipt: " + e.getMessage());
         }
     }
 
-    public static Set<Receipt> readReceiptsFromFiles(Set<IStoreService> stores)
-            throws ReceiptsDirectoryNotFoundException, NoReceiptFilesFoundException,
-            StoreNotFoundException, CashierNotFoundException,
-            ReceiptParseException, NoValidReceiptsException {
+    public static File writeReceipt(Receipt receipt, File directory) throws IOException {
+        return writeReceipt(receipt, directory, fileStyle);
+    }
 
-        File receiptDir = getReceiptDirectory("receipts");
-        File[] receiptFiles = getReceiptFiles(receiptDir);
+    public static File writeReceipt(Receipt receipt, File directory, ReceiptSerializationContext.Style style) throws IOException {
+        long startNanos = System.nanoTime();
+        File file = new File(directory, fileName(receipt.getStoreId(), receipt.getId()));
+        try {
+            SERIALIZATION.write(receipt, style, file.toPath());
+        } catch (IOException e) {
+            ShopMetrics.RECEIPT_WRITE_FAILURES.increment();
+            throw e;
+        }
+        ShopMetrics.RECEIPT_WRITE_LATENCY_NANOS.record(System.nanoTime() - startNanos);
+        return file;
+    }
 
-        ObjectMapper mapper = createObjectMapper();
+    // Store ids are part of the name, every store numbers its receipts from 1
+    static String fileName(int storeId, int receiptId) {
+        return "receipt_" + storeId + "_" + receiptId + ".json";
+    }
 
-        Set<Receipt> receipts = new HashSet<>();
+    public static ReceiptSerializationContext.Style getFileStyle() {
+        return fileStyle;
+    }
 
-        for (File file : receiptFiles) {
-            receipts.add(parseReceipt(file, mapper, stores));
-        }
+    public static void setFileStyle(ReceiptSerializationContext.Style style) {
+        fileStyle = style;
+    }
 
-        if (receipts.isEmpty()) {
-            throw new NoValidReceiptsException();
-        }
+    // Single-line JSON, used for journal records
+    static byte[] writeCompact(Receipt receipt) throws IOException {
+        return SERIALIZATION.toBytes(receipt, ReceiptSerializationContext.Style.COMPACT);
+    }
 
-        return receipts;
+    static boolean ensureDirectory(File directory) {
+        return directory.isDirectory() || directory.mkdirs();
     }
 
-    private static File getReceiptDirectory(String path) throws ReceiptsDirectoryNotFoundException {
-        File dir = new File(path);
-        if (!dir.exists() || !dir.isDirectory()) {
-            throw new ReceiptsDirectoryNotFoundException();
-        }
-        return dir;
+    static File getDefaultDirectory() {
+        return new File(FOLDER_PATH);
     }
 
-    private static File[] getReceiptFiles(File dir) throws NoReceiptFilesFoundException {
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
-        if (files == null || files.length == 0) {
-            throw new NoReceiptFilesFoundException();
+    public static Set<Receipt> readReceiptsFromFiles(Set<IStoreService> stores)
+            throws ReceiptsDirectoryNotFoundException, NoReceiptFilesFoundException, NoValidReceiptsException {
+
+        ReceiptLoadResult result = loadReceipts(getReceiptDirectory(FOLDER_PATH), stores);
+
+        if (result.getReceipts().isEmpty()) {
+            throw new NoValidReceiptsException();
         }
-        return files;
-    }
 
-    private static ObjectMapper createObjectMapper() {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());
-        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-        return mapper;
+        return result.getReceipts();
     }
 
-    private static Receipt parseReceipt(File file, ObjectMapper mapper, Set<IStoreService> stores) throws ReceiptParseException,
-            StoreNotFoundException, CashierNotFoundException {
+    // Parses all receipt files in parallel, a file that fails is reported and skipped
+    public static ReceiptLoadResult loadReceipts(File receiptDir, Collection<IStoreService> stores) throws NoReceiptFilesFoundException {
+        File[] receiptFiles = getReceiptFiles(receiptDir);
+        ReceiptResolver resolver = new ReceiptResolver(stores);
+
+        Set<Receipt> receipts = ConcurrentHashMap.newKeySet(receiptFiles.length);
+        Map<String, Exception> failures = new ConcurrentHashMap<>();
 
+        // Every loader takes the next file until none are left, so one slow file does not hold up a fixed share
+        int threads = Math.min(LOAD_THREADS, receiptFiles.length);
+        AtomicInteger nextFile = new AtomicInteger();
+        ExecutorService loaders = Executors.newFixedThreadPool(threads, ReceiptFileManager::newLoaderThread);
         try {
-            JsonNode node = mapper.readTree(file);
+            List<Future<?>> tasks = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                tasks.add(loaders.submit(() -> {
+                    int index;
+                    while ((index = nextFile.getAndIncrement()) < receiptFiles.length) {
+                        File file = receiptFiles[index];
+                        try {
+                            receipts.add(resolver.resolve(parseRecord(file)));
+                        } catch (ReceiptParseException | StoreNotFoundException | CashierNotFoundException e) {
+                            failures.put(file.getName(), e);
+                            System.err.println("Skipping receipt file " + file.getName() + ": " + e.getMessage());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                awaitLoader(task);
+            }
+        } finally {
+            loaders.shutdownNow();
+        }
 
-            int id = node.get("id").asInt();
-            int storeId = node.get("storeId").asInt();
-            int cashierId = node.get("cashierId").asInt();
+        return new ReceiptLoadResult(receipts, failures);
+    }
 
-            LocalDateTime issuedDateTime = LocalDateTime.parse(node.get("issuedDateTime").asText(), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+    // Binary format
+    public static int writeToBinaryFile(Collection<Receipt> receipts, Path file) throws IOException {
+        try (BinaryReceiptWriter writer = new BinaryReceiptWriter(file)) {
+            for (Receipt receipt : receipts) {
+                writer.write(receipt);
+            }
+            return writer.getRecordCount();
+        }
+    }
 
-            BigDecimal totalCost = new BigDecimal(node.get("totalCost").asText());
-            BigDecimal change = new BigDecimal(node.get("change").asText());
-            List<CustomDataType> commodities = parseCommodities(node.get("purchasedCommodities"));
+    public static BinaryReceiptReader openBinaryFile(Path file) throws IOException {
+        return new BinaryReceiptReader(file);
+    }
 
-            IStoreService store = findStoreById(stores, storeId);
-            if (store == null) {
-                throw new StoreNotFoundException(storeId);
-            }
+    // Converts a directory of receipt_S_N.json files, files that do not parse are reported and skipped
+    public static int convertJsonToBinary(File receiptDir, Path target) throws NoReceiptFilesFoundException, IOException {
+        File[] receiptFiles = getReceiptFiles(receiptDir);
 
-            ICashierService cashier = findCashierById(store.getCashiers(), cashierId);
-            if (cashier == null) {
-                throw new CashierNotFoundException(cashierId, storeId);
+        try (BinaryReceiptWriter writer = new BinaryReceiptWriter(target)) {
+            for (File file : receiptFiles) {
+                try {
+                    writer.write(parseRecord(file));
+                } catch (ReceiptParseException | IllegalArgumentException e) {
+                    System.err.println("Skipping receipt file " + file.getName() + ": " + e.getMessage());
+                }
             }
+            return writer.getRecordCount();
+        }
+    }
 
-            return new Receipt(id, store, cashier, issuedDateTime, commodities, totalCost, change);
+    private static Thread newLoaderThread(Runnable task) {
+        Thread thread = new Thread(task, "receipt-loader");
+        thread.setDaemon(true);
+        return thread;
+    }
 
-        } catch (IOException e) {
-            throw new ReceiptParseException(file.getName(), e);
+    private static void awaitLoader(Future<?> task) {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading receipt files.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("A receipt loader stopped unexpectedly.", e.getCause());
         }
     }
 
-    private static List<CustomDataType> parseCommodities(JsonNode arrayNode) {
-        List<CustomDataType> list = new ArrayList<>();
-        for (JsonNode item : arrayNode) {
-            int commodityId = item.get("id").asInt();
-            String name = item.get("name").asText();
-            BigDecimal quantity = new BigDecimal(item.get("quantity").asText());
-            BigDecimal price = new BigDecimal(item.get("price").asText());
-
-            list.add(new CustomDataType(commodityId, name, quantity, price));
+    private static File getReceiptDirectory(String path) throws ReceiptsDirectoryNotFoundException {
+        File dir = new File(path);
+        if (!dir.exists() || !dir.isDirectory()) {
+            throw new ReceiptsDirectoryNotFoundException();
         }
-        return list;
+        return dir;
     }
 
-    private static IStoreService findStoreById(Set<IStoreService> stores, int id) {
-        return stores.stream().filter(s -> s.getId() == id).findFirst().orElse(null);
+    private static File[] getReceiptFiles(File dir) throws NoReceiptFilesFoundException {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null || files.length == 0) {
+            throw new NoReceiptFilesFoundException();
+        }
+        return files;
     }
 
-    private static ICashierService findCashierById(Set<ICashierService> cashiers, int id) {
-        return cashiers.stream().filter(c -> c.getId() == id).findFirst().orElse(null);
+    private static ReceiptRecord parseRecord(File file) throws ReceiptParseException {
+        try {
+            return ReceiptRecordParser.parse(file);
+        } catch (IOException | RuntimeException e) {
+            throw new ReceiptParseException(file.getName(), e);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,512 @@
+package Shop.helpers;
+
+import Shop.exceptions.fileExceptions.CashierNotFoundException;
+import Shop.exceptions.fileExceptions.ReceiptParseException;
+import Shop.exceptions.fileExceptions.StoreNotFoundException;
+import Shop.receipts.Receipt;
+import Shop.receipts.ReceiptRecord;
+import Shop.stores.IStoreService;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Append-only receipt storage: one compact JSON record per line in rolling segment files,
+// plus a per-segment offset index (storeId, receiptId, offset) for point lookups.
+public class ReceiptJournal implements IReceiptStorage, AutoCloseable {
+    public enum FsyncPolicy {
+        EVERY_BATCH, // fsync after each writeBatch
+        INTERVAL,    // fsync at most once per fsync interval, and on sync()
+        ON_SYNC      // fsync only when sync() is called
+    }
+
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MAX_SEGMENT_AGE_MILLIS = 24L * 60 * 60 * 1000;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 1000;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String DATA_SUFFIX = ".ndjson";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_ENTRY_BYTES = Integer.BYTES * 2 + Long.BYTES;
+    private static final byte NEWLINE = '\n';
+
+    private interface RecordHandler {
+        void handle(byte[] record, long offset) throws IOException, StoreNotFoundException, CashierNotFoundException;
+    }
+
+    private static final class Segment {
+        private final long number;
+        private final File dataFile;
+        private final File indexFile;
+        private final long createdAtMillis;
+
+        private FileChannel data;
+        private FileChannel index;
+        private long size;
+
+        private Segment(File directory, long number, long createdAtMillis) {
+            this.number = number;
+            this.dataFile = new File(directory, segmentName(number) + DATA_SUFFIX);
+            this.indexFile = new File(directory, segmentName(number) + INDEX_SUFFIX);
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+
+    private final File directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long maxSegmentBytes;
+    private final long maxSegmentAgeMillis;
+    private final long fsyncIntervalMillis;
+
+    private final List<Segment> segments = new ArrayList<>();
+    // (storeId << 32 | receiptId) -> (segment number << 40 | offset)
+    private final Map<Long, Long> offsetIndex = new HashMap<>();
+    private final ReceiptSerializationContext serialization = ReceiptSerializationContext.getDefault();
+
+    private Segment active;
+    private long lastFsyncMillis;
+    private boolean dirty;
+    // Set when a failed write left bytes in the segment that could not be cut back
+    private IOException writeFailure;
+
+    // Constructor
+    public ReceiptJournal(File directory) throws IOException {
+        this(directory, FsyncPolicy.INTERVAL, DEFAULT_MAX_SEGMENT_BYTES, DEFAULT_MAX_SEGMENT_AGE_MILLIS, DEFAULT_FSYNC_INTERVAL_MILLIS);
+    }
+
+    public ReceiptJournal(File directory, FsyncPolicy fsyncPolicy, long maxSegmentBytes, long maxSegmentAgeMillis,
+                          long fsyncIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentAgeMillis = maxSegmentAgeMillis;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+
+        if (!ReceiptFileManager.ensureDirectory(directory)) {
+            throw new IOException("Failed to create journal directory: " + directory.getAbsolutePath());
+        }
+        open();
+    }
+
+    // Getters
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized int getRecordCount() {
+        return offsetIndex.size();
+    }
+    // -----------------
+
+    @Override
+    public synchronized void writeBatch(List<Receipt> receipts) throws IOException {
+        if (writeFailure != null) {
+            throw new IOException("Journal segment could not be cut back after a failed write, reopen the journal.", writeFailure);
+        }
+        reopenIfClosed();
+        rollIfNeeded();
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream(receipts.size() * 512);
+        ByteBuffer indexEntries = ByteBuffer.allocate(receipts.size() * INDEX_ENTRY_BYTES);
+        long offset = active.size;
+
+        for (Receipt receipt : receipts) {
+            byte[] record = ReceiptFileManager.writeCompact(receipt);
+
+            indexEntries.putInt(receipt.getStoreId()).putInt(receipt.getId()).putLong(offset);
+
+            records.write(record);
+            records.write(NEWLINE);
+            offset += record.length + 1;
+        }
+
+        // A write that fails partway is cut back, so the next batch starts where the index expects it
+        long indexSize = active.index.size();
+        try {
+            writeFully(active.data, ByteBuffer.wrap(records.toByteArray()));
+            indexEntries.flip();
+            writeFully(active.index, indexEntries);
+        } catch (IOException | RuntimeException e) {
+            rollBack(indexSize, e);
+            throw e;
+        }
+        active.size = offset;
+        dirty = true;
+
+        // Only index what actually made it into the segment
+        indexEntries.rewind();
+        while (indexEntries.hasRemaining()) {
+            int storeId = indexEntries.getInt();
+            int receiptId = indexEntries.getInt();
+            offsetIndex.put(key(storeId, receiptId), location(active.number, indexEntries.getLong()));
+        }
+
+        long now = System.currentTimeMillis();
+        if (fsyncPolicy == FsyncPolicy.EVERY_BATCH
+                || (fsyncPolicy == FsyncPolicy.INTERVAL && now - lastFsyncMillis >= fsyncIntervalMillis)) {
+            force();
+        }
+    }
+
+    @Override
+    public synchronized void sync() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.EVERY_BATCH) {
+            force();
+        }
+    }
+
+    public synchronized Receipt readReceipt(int storeId, int receiptId, Set<IStoreService> stores)
+            throws ReceiptParseException, StoreNotFoundException, CashierNotFoundException {
+
+        Long packed = offsetIndex.get(key(storeId, receiptId));
+        if (packed == null) {
+            return null;
+        }
+
+        Segment segment = findSegment(packed >>> 40);
+        long offset = packed & ((1L << 40) - 1);
+        try {
+            return new ReceiptResolver(stores).resolve(ReceiptRecordParser.parse(readLine(segment.dataFile, offset)));
+        } catch (IOException | RuntimeException e) {
+            throw new ReceiptParseException(segment.dataFile.getName() + "@" + offset, e);
+        }
+    }
+
+    public synchronized Set<Receipt> readReceipts(Set<IStoreService> stores)
+            throws ReceiptParseException, StoreNotFoundException, CashierNotFoundException {
+
+        ReceiptResolver resolver = new ReceiptResolver(stores);
+        Set<Receipt> receipts = new HashSet<>();
+        for (Segment segment : segments) {
+            try {
+                readRecords(segment, (record, offset) -> receipts.add(resolver.resolve(ReceiptRecordParser.parse(record))));
+            } catch (IOException | RuntimeException e) {
+                throw new ReceiptParseException(segment.dataFile.getName(), e);
+            }
+        }
+        return receipts;
+    }
+
+    public interface RecordVisitor {
+        void accept(ReceiptRecord record) throws IOException;
+    }
+
+    // Streams every record in write order as it is stored, no store or cashier has to be known. Used by exports.
+    public synchronized void forEachRecord(RecordVisitor visitor) throws IOException {
+        for (Segment segment : segments) {
+            try {
+                readRecords(segment, (record, offset) -> visitor.accept(ReceiptRecordParser.parse(record)));
+            } catch (StoreNotFoundException | CashierNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // Receipts of one store issued after the given id, in id order. Used to replay what happened
+    // after a store snapshot, only the records past that point are read and parsed.
+    public synchronized List<Receipt> readReceiptsAfter(int storeId, int afterReceiptId, Set<IStoreService> stores)
+            throws ReceiptParseException, StoreNotFoundException, CashierNotFoundException {
+
+        List<Integer> receiptIds = new ArrayList<>();
+        for (long key : offsetIndex.keySet()) {
+            int receiptId = (int) key;
+            if ((int) (key >>> 32) == storeId && receiptId > afterReceiptId) {
+                receiptIds.add(receiptId);
+            }
+        }
+        receiptIds.sort(null);
+
+        List<Receipt> receipts = new ArrayList<>(receiptIds.size());
+        for (int receiptId : receiptIds) {
+            receipts.add(readReceipt(storeId, receiptId, stores));
+        }
+        return receipts;
+    }
+
+    // Writes every journal record out in the receipts/receipt_S_N.json format
+    public synchronized int exportToJsonFiles(File targetDirectory) throws IOException {
+        if (!ReceiptFileManager.ensureDirectory(targetDirectory)) {
+            throw new IOException("Failed to create export directory: " + targetDirectory.getAbsolutePath());
+        }
+
+        int[] exported = {0};
+        for (Segment segment : segments) {
+            try {
+                readRecords(segment, (record, offset) -> {
+                    JsonNode node = serialization.readTree(record);
+                    File file = new File(targetDirectory,
+                            ReceiptFileManager.fileName(node.get("storeId").asInt(), node.get("id").asInt()));
+                    serialization.writeTree(node, ReceiptFileManager.getFileStyle(), file.toPath());
+                    exported[0]++;
+                });
+            } catch (StoreNotFoundException | CashierNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return exported[0];
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active == null) {
+            return;
+        }
+        force();
+        closeChannels(active);
+        active = null;
+    }
+
+    // Segment Helpers
+    private void open() throws IOException {
+        File[] dataFiles = directory.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(DATA_SUFFIX));
+        long[] numbers = dataFiles == null ? new long[0] : Arrays.stream(dataFiles)
+                .mapToLong(ReceiptJournal::segmentNumber)
+                .filter(number -> number > 0)
+                .sorted().toArray();
+
+        for (int i = 0; i < numbers.length; i++) {
+            File dataFile = new File(directory, segmentName(numbers[i]) + DATA_SUFFIX);
+            long createdAt = Files.readAttributes(dataFile.toPath(), BasicFileAttributes.class).creationTime().toMillis();
+            Segment segment = new Segment(directory, numbers[i], createdAt);
+            boolean last = i == numbers.length - 1;
+
+            // Closed segments trust their index, the last one may have been cut off mid-write
+            if (!last && segment.indexFile.length() % INDEX_ENTRY_BYTES == 0 && segment.indexFile.exists()) {
+                loadIndex(segment);
+                segment.size = segment.dataFile.length();
+            } else {
+                recoverSegment(segment);
+            }
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty()) {
+            startSegment(1);
+        } else {
+            active = segments.get(segments.size() - 1);
+            openChannels(active);
+        }
+    }
+
+    // Number of a segment data file, or -1 for a name that only looks like one (a copy or a backup)
+    private static long segmentNumber(File dataFile) {
+        String name = dataFile.getName();
+        String number = name.substring(SEGMENT_PREFIX.length(), name.length() - DATA_SUFFIX.length());
+        try {
+            long parsed = Long.parseLong(number);
+            if (parsed > 0 && name.equals(segmentName(parsed) + DATA_SUFFIX)) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println("Skipping " + name + " in journal " + dataFile.getParent() + ": not a segment file.");
+        return -1;
+    }
+
+    // Cuts the active segment back to where the failed batch started. An interrupt closes the channels,
+    // then they are reopened, with the interrupt held back until the files are cut.
+    private void rollBack(long indexSize, Exception failure) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            reopenIfClosed();
+            active.data.truncate(active.size);
+            active.data.position(active.size);
+            active.index.truncate(indexSize);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+            writeFailure = e;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void rollIfNeeded() throws IOException {
+        boolean full = active.size >= maxSegmentBytes;
+        boolean old = System.currentTimeMillis() - active.createdAtMillis >= maxSegmentAgeMillis;
+        if (active.size > 0 && (full || old)) {
+            force();
+            // The next segment is opened first, if that fails the current one stays active
+            Segment previous = active;
+            startSegment(previous.number + 1);
+            closeChannels(previous);
+        }
+    }
+
+    private void startSegment(long number) throws IOException {
+        Segment segment = new Segment(directory, number, System.currentTimeMillis());
+        openChannels(segment);
+        segments.add(segment);
+        active = segment;
+    }
+
+    private void openChannels(Segment segment) throws IOException {
+        FileChannel data = FileChannel.open(segment.dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileChannel index;
+        try {
+            data.position(segment.size);
+            index = FileChannel.open(segment.indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        segment.data = data;
+        segment.index = index;
+    }
+
+    private void closeChannels(Segment segment) throws IOException {
+        try {
+            if (segment.data != null) {
+                segment.data.close();
+            }
+        } finally {
+            if (segment.index != null) {
+                segment.index.close();
+            }
+            segment.data = null;
+            segment.index = null;
+        }
+    }
+
+    // An interrupt during any channel call closes the channel, the active segment is then opened again
+    private void reopenIfClosed() throws IOException {
+        if (active.data == null || active.index == null || !active.data.isOpen() || !active.index.isOpen()) {
+            closeChannels(active);
+            openChannels(active);
+        }
+    }
+
+    private void force() throws IOException {
+        if (dirty && active != null) {
+            reopenIfClosed();
+            active.data.force(false);
+            active.index.force(false);
+            dirty = false;
+        }
+        lastFsyncMillis = System.currentTimeMillis();
+    }
+
+    private Segment findSegment(long number) {
+        for (Segment segment : segments) {
+            if (segment.number == number) {
+                return segment;
+            }
+        }
+        throw new IllegalStateException("Journal segment " + number + " is missing.");
+    }
+
+    private void loadIndex(Segment segment) throws IOException {
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(segment.indexFile.toPath()));
+        while (entries.remaining() >= INDEX_ENTRY_BYTES) {
+            int storeId = entries.getInt();
+            int receiptId = entries.getInt();
+            offsetIndex.put(key(storeId, receiptId), location(segment.number, entries.getLong()));
+        }
+    }
+
+    // Rebuilds the index from the data file and drops a torn last record
+    private void recoverSegment(Segment segment) throws IOException {
+        segment.size = segment.dataFile.length();
+        ByteArrayOutputStream indexEntries = new ByteArrayOutputStream();
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        long[] validSize = {0};
+
+        try {
+            readRecords(segment, (record, offset) -> {
+                ReceiptRecord parsed = ReceiptRecordParser.parse(record);
+                int storeId = parsed.getStoreId();
+                int receiptId = parsed.getId();
+                offsetIndex.put(key(storeId, receiptId), location(segment.number, offset));
+
+                entry.clear();
+                entry.putInt(storeId).putInt(receiptId).putLong(offset);
+                indexEntries.write(entry.array());
+                validSize[0] = offset + record.length + 1;
+            });
+        } catch (StoreNotFoundException | CashierNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (FileChannel data = FileChannel.open(segment.dataFile.toPath(), StandardOpenOption.WRITE)) {
+            data.truncate(validSize[0]);
+        }
+        Files.write(segment.indexFile.toPath(), indexEntries.toByteArray());
+        segment.size = validSize[0];
+    }
+
+    // Streams the complete records of a segment, a record without its newline is not complete yet
+    private void readRecords(Segment segment, RecordHandler handler)
+            throws IOException, StoreNotFoundException, CashierNotFoundException {
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment.dataFile.toPath()), 64 * 1024)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            long position = 0;
+            long recordStart = 0;
+            int b;
+            while (position < segment.size && (b = in.read()) != -1) {
+                position++;
+                if (b == NEWLINE) {
+                    handler.handle(line.toByteArray(), recordStart);
+                    line.reset();
+                    recordStart = position;
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+    }
+
+    private static byte[] readLine(File file, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            int b;
+            while ((b = in.read()) != -1 && b != NEWLINE) {
+                line.write(b);
+            }
+            return line.toByteArray();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String segmentName(long number) {
+        return String.format(SEGMENT_PREFIX + "%06d", number);
+    }
+
+    private static long key(int storeId, int receiptId) {
+        return ((long) storeId << 32) | (receiptId & 0xFFFFFFFFL);
+    }
+
+    private static long location(long segmentNumber, long offset) {
+        return (segmentNumber << 40) | offset;
+    }
+}
@@ -0,0 +1,28 @@
+package Shop.helpers;
+
+import Shop.receipts.Receipt;
+
+import java.util.Map;
+import java.util.Set;
+
+// Receipts that loaded, and for every file that did not, why
+public class ReceiptLoadResult {
+    private final Set<Receipt> receipts;
+    private final Map<String, Exception> failures;
+
+    // Constructor
+    public ReceiptLoadResult(Set<Receipt> receipts, Map<String, Exception> failures) {
+        this.receipts = receipts;
+        this.failures = failures;
+    }
+
+    // Getters
+    public Set<Receipt> getReceipts() {
+        return receipts;
+    }
+
+    public Map<String, Exception> getFailures() {
+        return failures;
+    }
+    // -----------------
+}
@@ -0,0 +1,128 @@
+package Shop.helpers;
+
+import Shop.commodities.CustomDataType;
+import Shop.receipts.ReceiptRecord;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads receipt JSON token by token, no JsonNode tree is built
+public class ReceiptRecordParser {
+    private static final JsonFactory FACTORY = ReceiptSerializationContext.getDefault().getFactory();
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static ReceiptRecord parse(File file) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(file)) {
+            return parse(parser);
+        }
+    }
+
+    public static ReceiptRecord parse(byte[] json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            return parse(parser);
+        }
+    }
+
+    public static ReceiptRecord parse(JsonParser parser) throws IOException {
+        if (parser.currentToken() == null) {
+            parser.nextToken();
+        }
+        expect(parser, JsonToken.START_OBJECT);
+
+        Integer id = null;
+        Integer storeId = null;
+        Integer cashierId = null;
+        String storeName = null;
+        String cashierName = null;
+        LocalDateTime issuedDateTime = null;
+        List<CustomDataType> commodities = null;
+        BigDecimal totalCost = null;
+        BigDecimal change = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "id" -> id = parser.getValueAsInt();
+                case "storeId" -> storeId = parser.getValueAsInt();
+                case "storeName" -> storeName = parser.getValueAsString();
+                case "cashierId" -> cashierId = parser.getValueAsInt();
+                case "cashierName" -> cashierName = parser.getValueAsString();
+                case "issuedDateTime" -> issuedDateTime = LocalDateTime.parse(parser.getValueAsString(), DATE_TIME_FORMAT);
+                case "purchasedCommodities" -> commodities = parseCommodities(parser);
+                case "totalCost" -> totalCost = decimal(parser);
+                case "change" -> change = decimal(parser);
+                default -> parser.skipChildren();
+            }
+        }
+
+        return new ReceiptRecord(required(id, "id"), required(storeId, "storeId"), storeName,
+                required(cashierId, "cashierId"), cashierName, required(issuedDateTime, "issuedDateTime"),
+                required(commodities, "purchasedCommodities"), required(totalCost, "totalCost"), required(change, "change"));
+    }
+
+    private static List<CustomDataType> parseCommodities(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        List<CustomDataType> list = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Integer commodityId = null;
+            String name = null;
+            BigDecimal quantity = null;
+            BigDecimal price = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+
+                switch (field) {
+                    case "id" -> commodityId = parser.getValueAsInt();
+                    case "name" -> name = parser.getValueAsString();
+                    case "quantity" -> quantity = decimal(parser);
+                    case "price" -> price = decimal(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+
+            list.add(new CustomDataType(required(commodityId, "purchasedCommodities.id"), name,
+                    required(quantity, "purchasedCommodities.quantity"), required(price, "purchasedCommodities.price")));
+        }
+
+        expect(parser, JsonToken.END_ARRAY);
+        return list;
+    }
+
+    // Numbers are read from their text, so 1.10 keeps its scale
+    static BigDecimal decimal(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getDecimalValue();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return new BigDecimal(parser.getText());
+        }
+        throw new IOException("Expected a number at " + parser.currentLocation() + " but found " + token);
+    }
+
+    static void expect(JsonParser parser, JsonToken expected) throws IOException {
+        if (parser.currentToken() != expected) {
+            throw new IOException("Expected " + expected + " at " + parser.currentLocation() + " but found " + parser.currentToken());
+        }
+    }
+
+    static <T> T required(T value, String field) throws IOException {
+        if (value == null) {
+            throw new IOException("Missing field \"" + field + "\".");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,46 @@
+package Shop.helpers;
+
+import Shop.cashiers.ICashierService;
+import Shop.exceptions.fileExceptions.CashierNotFoundException;
+import Shop.exceptions.fileExceptions.StoreNotFoundException;
+import Shop.receipts.Receipt;
+import Shop.receipts.ReceiptRecord;
+import Shop.stores.IStoreService;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// Turns stored receipt records back into receipts through a store id map built once per load
+public class ReceiptResolver {
+    private final Map<Integer, IStoreService> storesById;
+
+    // Constructor
+    public ReceiptResolver(Collection<IStoreService> stores) {
+        storesById = new HashMap<>();
+
+        for (IStoreService store : stores) {
+            storesById.put(store.getId(), store);
+        }
+    }
+
+    public IStoreService findStore(int storeId) {
+        return storesById.get(storeId);
+    }
+
+    public Receipt resolve(ReceiptRecord record) throws StoreNotFoundException, CashierNotFoundException {
+        IStoreService store = storesById.get(record.getStoreId());
+        if (store == null) {
+            throw new StoreNotFoundException(record.getStoreId());
+        }
+
+        // Cashiers are looked up in the store's roster by id
+        ICashierService cashier = store.findCashier(record.getCashierId());
+        if (cashier == null) {
+            throw new CashierNotFoundException(record.getCashierId(), record.getStoreId());
+        }
+
+        return new Receipt(record.getId(), store, cashier, record.getIssuedDateTime(), record.getPurchasedCommodities(),
+                record.getTotalCost(), record.getChange());
+    }
+}
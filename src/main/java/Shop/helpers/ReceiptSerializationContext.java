@@ -0,0 +1,109 @@
+package Shop.helpers;
+
+import Shop.receipts.Receipt;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// The one place receipt JSON is configured. The mapper is built once and the writers and readers are
+// bound to their types up front, so no sale pays for mapper setup or a cold serializer lookup.
+// ObjectWriter and ObjectReader are immutable and thread-safe, every thread shares these instances.
+public final class ReceiptSerializationContext {
+    public enum Style {
+        // Indented, the receipts/ file layout
+        PRETTY,
+        // One line, for journals and anything read back by a program
+        COMPACT
+    }
+
+    private static final ReceiptSerializationContext DEFAULT = new ReceiptSerializationContext();
+
+    private final ObjectMapper mapper;
+    private final ObjectWriter prettyReceiptWriter;
+    private final ObjectWriter compactReceiptWriter;
+    private final ObjectWriter prettyTreeWriter;
+    private final ObjectWriter compactTreeWriter;
+    private final ObjectReader treeReader;
+
+    // Constructor
+    private ReceiptSerializationContext() {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        // Keep money as written (1.10 stays 1.10) instead of going through double
+        mapper.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        mapper.configure(JsonNodeFeature.STRIP_TRAILING_BIGDECIMAL_ZEROES, false);
+
+        // Callers own the channels written to, so the writers leave them open
+        compactReceiptWriter = mapper.writerFor(Receipt.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        prettyReceiptWriter = compactReceiptWriter.with(SerializationFeature.INDENT_OUTPUT);
+        compactTreeWriter = mapper.writerFor(JsonNode.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        prettyTreeWriter = compactTreeWriter.with(SerializationFeature.INDENT_OUTPUT);
+        treeReader = mapper.readerFor(JsonNode.class);
+    }
+
+    public static ReceiptSerializationContext getDefault() {
+        return DEFAULT;
+    }
+
+    // Shared by the streaming parsers, a JsonFactory is thread-safe once configured
+    public JsonFactory getFactory() {
+        return mapper.getFactory();
+    }
+
+    // Receipts
+    public byte[] toBytes(Receipt receipt, Style style) throws IOException {
+        return receiptWriter(style).writeValueAsBytes(receipt);
+    }
+
+    // Streams the receipt into the channel, the generator's buffer goes out in as few writes as it fills
+    public void write(Receipt receipt, Style style, WritableByteChannel channel) throws IOException {
+        receiptWriter(style).writeValue(Channels.newOutputStream(channel), receipt);
+    }
+
+    public void write(Receipt receipt, Style style, Path file) throws IOException {
+        try (FileChannel channel = openForWrite(file)) {
+            write(receipt, style, channel);
+        }
+    }
+    // -----------------
+
+    // Trees, for records copied from one format to another without binding them to a Receipt
+    public JsonNode readTree(byte[] json) throws IOException {
+        return treeReader.readValue(json);
+    }
+
+    public void writeTree(JsonNode node, Style style, Path file) throws IOException {
+        try (FileChannel channel = openForWrite(file)) {
+            treeWriter(style).writeValue(Channels.newOutputStream(channel), node);
+        }
+    }
+    // -----------------
+
+    private ObjectWriter receiptWriter(Style style) {
+        return style == Style.PRETTY ? prettyReceiptWriter : compactReceiptWriter;
+    }
+
+    private ObjectWriter treeWriter(Style style) {
+        return style == Style.PRETTY ? prettyTreeWriter : compactTreeWriter;
+    }
+
+    private static FileChannel openForWrite(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
@@ -0,0 +1,541 @@
+package Shop.helpers;
+
+import Shop.cashiers.Cashier;
+import Shop.cashiers.CashierServiceHelper;
+import Shop.cashiers.CashierServiceImp;
+import Shop.cashiers.ICashierService;
+import Shop.commodities.Commodity;
+import Shop.commodities.CommodityCategory;
+import Shop.commodities.CustomDataType;
+import Shop.exceptions.StoreLogWriteRException;
+import Shop.exceptions.fileExceptions.StoreNotFoundException;
+import Shop.metrics.ShopMetrics;
+import Shop.receipts.Receipt;
+import Shop.stores.IStoreMutationLog;
+import Shop.stores.IStoreService;
+import Shop.stores.StoreRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// Append-only log of store changes, shared by every store of a chain so one fsync covers all their tills.
+//
+// Records, back to back:
+//   int length, int crc32 of the body, length bytes of body
+// Body:
+//   byte type, int storeId, then
+//   DELIVERY: int count, count x (int id, name, byte category, decimal deliveryPrice, decimal quantity, long expiryEpochDay)
+//   SALE:     int receiptId, int cashierId, long issuedEpochSecond (UTC), int issuedNano,
+//             decimal totalCost, decimal change, int count, count x (int id, name, decimal quantity, decimal price)
+//   HIRE:     int cashierId, name, decimal salary
+//   FIRE:     int cashierId
+//   MARKUP:   byte category, decimal percentage
+//   EXPIRY_DISCOUNT: decimal percentage, int thresholdDays
+//   REMOVAL:  int count, count x int commodityId
+// name is a presence byte and modified UTF-8, decimal an int scale plus the unscaled value's bytes
+// behind a short length. A record that is cut short or fails its checksum ends the log.
+//
+// Group commit: a caller that finds no fsync running writes and syncs everything queued so far,
+// callers arriving meanwhile queue up and are released together by the next sync.
+public class StoreWriteAheadLog implements IStoreMutationLog, AutoCloseable {
+    private static final byte DELIVERY = 1;
+    private static final byte SALE = 2;
+    private static final byte HIRE = 3;
+    private static final byte FIRE = 4;
+    private static final byte MARKUP = 5;
+    private static final byte EXPIRY_DISCOUNT = 6;
+    private static final byte REMOVAL = 7;
+
+    private static final int RECORD_HEADER_BYTES = 4 + 4;
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+    private static final long NO_EXPIRY = Long.MIN_VALUE;
+    private static final byte NO_CATEGORY = -1;
+    private static final CommodityCategory[] CATEGORIES = CommodityCategory.values();
+
+    private interface RecordHandler {
+        void handle(DataInputStream body) throws IOException;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean syncing;
+    private IOException failure;
+    private boolean closed;
+
+    // Constructor
+    public StoreWriteAheadLog(Path file) throws IOException {
+        this.file = file;
+        long validEnd = Files.exists(file) ? readRecords(null) : 0;
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Drop a record a crash cut off, new records go right after the last complete one
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+    }
+
+    // Getters
+    public Path getFile() {
+        return file;
+    }
+    // -----------------
+
+    @Override
+    public void logDelivery(int storeId, Collection<Commodity> delivery) {
+        append(encode(DELIVERY, storeId, out -> {
+            out.writeInt(delivery.size());
+            for (Commodity commodity : delivery) {
+                out.writeInt(commodity.getId());
+                writeName(out, commodity.getName());
+                out.writeByte(commodity.getCategory() == null ? NO_CATEGORY : commodity.getCategory().ordinal());
+                writeDecimal(out, commodity.getDeliveryPrice());
+                writeDecimal(out, commodity.getQuantity());
+                out.writeLong(commodity.getExpiryDate() == null ? NO_EXPIRY : commodity.getExpiryDate().toEpochDay());
+            }
+        }));
+    }
+
+    @Override
+    public void logSale(Receipt receipt) {
+        append(encode(SALE, receipt.getStoreId(), out -> {
+            out.writeInt(receipt.getId());
+            out.writeInt(receipt.getCashierId());
+            out.writeLong(receipt.getIssuedDateTime().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(receipt.getIssuedDateTime().getNano());
+            writeDecimal(out, receipt.getTotalCost());
+            writeDecimal(out, receipt.getChange());
+
+            List<CustomDataType> lines = receipt.getPurchasedCommodities();
+            out.writeInt(lines.size());
+            for (CustomDataType line : lines) {
+                out.writeInt(line.getId());
+                writeName(out, line.getName());
+                writeDecimal(out, line.getQuantity());
+                writeDecimal(out, line.getPrice());
+            }
+        }));
+    }
+
+    @Override
+    public void logRemoval(int storeId, Collection<Integer> commodityIds) {
+        append(encode(REMOVAL, storeId, out -> {
+            out.writeInt(commodityIds.size());
+            for (int commodityId : commodityIds) {
+                out.writeInt(commodityId);
+            }
+        }));
+    }
+
+    @Override
+    public void logHire(int storeId, ICashierService cashier) {
+        append(encode(HIRE, storeId, out -> {
+            out.writeInt(cashier.getId());
+            writeName(out, cashier.getName());
+            writeDecimal(out, cashier.getSalary());
+        }));
+    }
+
+    @Override
+    public void logFire(int storeId, int cashierId) {
+        append(encode(FIRE, storeId, out -> out.writeInt(cashierId)));
+    }
+
+    @Override
+    public void logMarkupChange(int storeId, CommodityCategory category, BigDecimal percentage) {
+        append(encode(MARKUP, storeId, out -> {
+            out.writeByte(category.ordinal());
+            writeDecimal(out, percentage);
+        }));
+    }
+
+    @Override
+    public void logExpiryDiscountChange(int storeId, BigDecimal percentage, int thresholdDays) {
+        append(encode(EXPIRY_DISCOUNT, storeId, out -> {
+            writeDecimal(out, percentage);
+            out.writeInt(thresholdDays);
+        }));
+    }
+
+    // Replays the log into the registry's stores and returns the number of records applied. Run it on
+    // freshly created stores before the log is attached to them, or every replayed change is logged again.
+    // Cashiers hired in the log are hired again unless the store already has a cashier with that id.
+    public int recover(StoreRegistry stores) throws IOException {
+        for (IStoreService store : stores.getStores()) {
+            if (store.getMutationLog() != null) {
+                throw new IllegalStateException("Recover store " + store.getId() + " before attaching a mutation log to it.");
+            }
+        }
+
+        Map<Long, ICashierService> cashiers = new HashMap<>();
+        int[] applied = {0};
+
+        readRecords(body -> {
+            byte type = body.readByte();
+            int storeId = body.readInt();
+            IStoreService store = findStore(stores, storeId);
+
+            switch (type) {
+                case DELIVERY -> replayDelivery(body, store);
+                case SALE -> replaySale(body, store, cashiers);
+                case HIRE -> replayHire(body, store, cashiers);
+                case FIRE -> {
+                    int cashierId = body.readInt();
+                    if (store != null) {
+                        store.fireCashier(cashierId);
+                    }
+                }
+                case MARKUP -> {
+                    CommodityCategory category = CATEGORIES[body.readByte()];
+                    BigDecimal percentage = readDecimal(body);
+                    if (store != null) {
+                        store.setMarkupPercentage(category, percentage);
+                    }
+                }
+                case EXPIRY_DISCOUNT -> {
+                    BigDecimal percentage = readDecimal(body);
+                    int thresholdDays = body.readInt();
+                    if (store != null) {
+                        store.setExpiryDiscount(percentage, thresholdDays);
+                    }
+                }
+                case REMOVAL -> {
+                    int count = body.readInt();
+                    List<Integer> commodityIds = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        commodityIds.add(body.readInt());
+                    }
+                    if (store != null) {
+                        store.replayRemoval(commodityIds);
+                    }
+                }
+                default -> throw new IOException("Unknown store log record type " + type + " in " + file + ".");
+            }
+
+            if (store != null) {
+                applied[0]++;
+            }
+        });
+        return applied[0];
+    }
+
+    // Waits for everything logged so far to be durable, then closes the file
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            awaitDurable(currentSequence());
+        } catch (StoreLogWriteRException e) {
+            // Already reported to the callers whose records were lost
+        }
+        channel.close();
+    }
+
+    // Group Commit
+    private void append(ByteBuffer record) {
+        long sequence;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new StoreLogWriteRException(file.toString(), new IOException("The store log is closed."));
+            }
+            pending.add(record);
+            sequence = ++appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    private long currentSequence() {
+        lock.lock();
+        try {
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new StoreLogWriteRException(file.toString(), failure);
+                }
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+
+                // Nobody is syncing: take everything queued so far and sync it for all of its callers
+                syncing = true;
+                List<ByteBuffer> batch = pending;
+                pending = new ArrayList<>();
+                long batchEnd = appendedSequence;
+
+                lock.unlock();
+                IOException error = null;
+                try {
+                    writeAndSync(batch);
+                } catch (IOException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = new IOException(e);
+                } finally {
+                    lock.lock();
+                }
+
+                syncing = false;
+                if (error != null) {
+                    // What is on disk after a failed write is unknown, so the log stops taking records
+                    failure = error;
+                    System.err.println("Failed to write to the store log " + file + ": " + error.getMessage());
+                } else {
+                    durableSequence = batchEnd;
+                }
+                synced.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeAndSync(List<ByteBuffer> batch) throws IOException {
+        long startNanos = System.nanoTime();
+        ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+        channel.force(false);
+
+        ShopMetrics.STORE_LOG_SYNC_LATENCY_NANOS.record(System.nanoTime() - startNanos);
+        ShopMetrics.STORE_LOG_RECORDS_PER_SYNC.record(batch.size());
+    }
+
+    // Encoding Helpers
+    private interface BodyWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // Encoded by the calling thread, so the lock only guards the queue
+    private ByteBuffer encode(byte type, int storeId, BodyWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0); // length, patched below
+            out.writeInt(0); // crc, patched below
+            out.writeByte(type);
+            out.writeInt(storeId);
+            writer.write(out);
+        } catch (IOException e) {
+            throw new StoreLogWriteRException(file.toString(), e);
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int bodyLength = record.limit() - RECORD_HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, bodyLength);
+        record.putInt(0, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        out.writeBoolean(name != null);
+        if (name != null) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(value.scale());
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+    }
+
+    // Decoding Helpers
+    // Calls the handler for every complete record and returns the offset just past the last one
+    private long readRecords(RecordHandler handler) throws IOException {
+        long validEnd = 0;
+        byte[] header = new byte[RECORD_HEADER_BYTES];
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            while (true) {
+                if (in.readNBytes(header, 0, RECORD_HEADER_BYTES) < RECORD_HEADER_BYTES) {
+                    break;
+                }
+                ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+                int length = headerBuffer.getInt();
+                int checksum = headerBuffer.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+
+                byte[] body = in.readNBytes(length);
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if (body.length < length || (int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                if (handler != null) {
+                    try (DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body))) {
+                        handler.handle(bodyIn);
+                    } catch (EOFException e) {
+                        throw new IOException("Store log record at " + validEnd + " in " + file + " is shorter than its type.", e);
+                    }
+                }
+                validEnd += RECORD_HEADER_BYTES + length;
+            }
+        }
+
+        if (validEnd < Files.size(file)) {
+            System.err.println("Store log " + file + " ends in an incomplete record at " + validEnd + ", it is dropped.");
+        }
+        return validEnd;
+    }
+
+    private static String readName(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int scale = in.readInt();
+        byte[] unscaled = new byte[in.readUnsignedShort()];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    // Replay Helpers
+    private static IStoreService findStore(StoreRegistry stores, int storeId) {
+        try {
+            return stores.findStore(storeId);
+        } catch (StoreNotFoundException e) {
+            System.err.println("Skipping store log record: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void replayDelivery(DataInputStream body, IStoreService store) throws IOException {
+        int count = body.readInt();
+        List<Commodity> delivery = new ArrayList<>(count);
+        int maxId = 0;
+
+        for (int i = 0; i < count; i++) {
+            int id = body.readInt();
+            String name = readName(body);
+            byte category = body.readByte();
+            BigDecimal deliveryPrice = readDecimal(body);
+            BigDecimal quantity = readDecimal(body);
+            long expiryEpochDay = body.readLong();
+
+            delivery.add(new Commodity(id, name, category == NO_CATEGORY ? null : CATEGORIES[category], deliveryPrice,
+                    quantity, expiryEpochDay == NO_EXPIRY ? null : LocalDate.ofEpochDay(expiryEpochDay)));
+            maxId = Math.max(maxId, id);
+        }
+
+        if (store != null) {
+            store.replayDelivery(delivery);
+            if (maxId > store.getCommodityIdCounter()) {
+                store.setCommodityIdCounter(maxId);
+            }
+        }
+    }
+
+    private static void replayHire(DataInputStream body, IStoreService store, Map<Long, ICashierService> cashiers) throws IOException {
+        int cashierId = body.readInt();
+        String name = readName(body);
+        BigDecimal salary = readDecimal(body);
+        if (store == null) {
+            return;
+        }
+
+        ICashierService cashier = store.findCashier(cashierId);
+        if (cashier == null) {
+            cashier = new CashierServiceImp(new Cashier(name, cashierId, salary, store), new CashierServiceHelper());
+            store.hireCashier(cashier);
+        }
+        cashiers.put(cashierKey(store.getId(), cashierId), cashier);
+
+        if (cashierId > store.getCashierIdCounter()) {
+            store.setCashierIdCounter(cashierId);
+        }
+    }
+
+    // A sale can be logged just after its cashier was fired, so cashiers are found among everyone ever hired
+    private static void replaySale(DataInputStream body, IStoreService store, Map<Long, ICashierService> cashiers) throws IOException {
+        int receiptId = body.readInt();
+        int cashierId = body.readInt();
+        LocalDateTime issued = LocalDateTime.ofEpochSecond(body.readLong(), body.readInt(), ZoneOffset.UTC);
+        BigDecimal totalCost = readDecimal(body);
+        BigDecimal change = readDecimal(body);
+
+        int count = body.readInt();
+        List<CustomDataType> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(new CustomDataType(body.readInt(), readName(body), readDecimal(body), readDecimal(body)));
+        }
+        if (store == null) {
+            return;
+        }
+
+        ICashierService cashier = cashiers.get(cashierKey(store.getId(), cashierId));
+        if (cashier == null) {
+            cashier = store.findCashier(cashierId);
+        }
+        if (cashier == null) {
+            System.err.println("Skipping logged sale " + receiptId + " of store " + store.getId() + ": cashier "
+                    + cashierId + " was never hired.");
+            return;
+        }
+
+        store.replayReceipt(new Receipt(receiptId, store, cashier, issued, lines, totalCost, change));
+    }
+
+    private static long cashierKey(int storeId, int cashierId) {
+        return ((long) storeId << 32) | (cashierId & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,24 @@
+package Shop.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Monotonic count, striped so concurrent tills do not contend on one field
+public final class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    void reset() {
+        count.reset();
+    }
+}
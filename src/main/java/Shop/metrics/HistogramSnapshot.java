@@ -0,0 +1,56 @@
+package Shop.metrics;
+
+// Point-in-time copy of a Histogram
+public final class HistogramSnapshot {
+    private final long[] bucketCounts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    // Constructor
+    HistogramSnapshot(long[] bucketCounts, long count, long sum, long max) {
+        this.bucketCounts = bucketCounts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    // Getters
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+    // -----------------
+
+    // Upper bound of the bucket holding the given quantile (0.5 for the median), capped at the max seen
+    public long getPercentile(double quantile) {
+        long total = 0;
+        for (long bucketCount : bucketCounts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            seen += bucketCounts[i];
+            if (seen >= rank) {
+                return Math.min(Histogram.upperBound(i), max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,43 @@
+package Shop.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counter that also reports a per-second rate, measured between two snapshots
+public final class Meter {
+    private final LongAdder count = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    // Only touched when a snapshot is taken, never on the recording path
+    private long lastCount;
+    private long lastNanos = startNanos;
+
+    public void mark(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    synchronized double[] sampleRates() {
+        long now = System.nanoTime();
+        long current = count.sum();
+
+        double meanRate = perSecond(current, now - startNanos);
+        double recentRate = perSecond(current - lastCount, now - lastNanos);
+
+        lastCount = current;
+        lastNanos = now;
+        return new double[]{meanRate, recentRate};
+    }
+
+    synchronized void reset() {
+        count.reset();
+        lastCount = 0;
+        lastNanos = System.nanoTime();
+    }
+
+    private static double perSecond(long amount, long nanos) {
+        return nanos <= 0 ? 0 : amount * 1_000_000_000.0 / nanos;
+    }
+}
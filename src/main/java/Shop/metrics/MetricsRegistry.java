@@ -0,0 +1,70 @@
+package Shop.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+// Named metrics. Callers look a metric up once and keep the reference, so recording never
+// goes through the maps. Snapshots and text export are for dashboards, not for the tills.
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Meter> meters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public Meter meter(String name) {
+        return meters.computeIfAbsent(name, key -> new Meter());
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    // Replaces any gauge already registered under the name
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public void removeGauge(String name, LongSupplier value) {
+        gauges.remove(name, value);
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.get()));
+
+        Map<String, Long> gaugeValues = new TreeMap<>();
+        gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.getAsLong()));
+
+        Map<String, Double> rates = new TreeMap<>();
+        meters.forEach((name, meter) -> {
+            double[] sampled = meter.sampleRates();
+            counterValues.put(name + "_total", meter.get());
+            rates.put(name + "_per_second_mean", sampled[0]);
+            rates.put(name + "_per_second", sampled[1]);
+        });
+
+        Map<String, HistogramSnapshot> histogramValues = new TreeMap<>();
+        histograms.forEach((name, histogram) -> histogramValues.put(name, histogram.snapshot()));
+
+        return new MetricsSnapshot(System.currentTimeMillis(), counterValues, gaugeValues, rates, histogramValues);
+    }
+
+    // Zeroes every counter, meter and histogram, gauges stay registered
+    public void reset() {
+        counters.values().forEach(Counter::reset);
+        meters.values().forEach(Meter::reset);
+        histograms.values().forEach(Histogram::reset);
+    }
+}
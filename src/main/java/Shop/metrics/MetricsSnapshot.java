@@ -0,0 +1,70 @@
+package Shop.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+// Everything a MetricsRegistry held at one moment, values keyed by metric name
+public final class MetricsSnapshot {
+    private final long timestampMillis;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, Double> rates;
+    private final Map<String, HistogramSnapshot> histograms;
+
+    // Constructor
+    MetricsSnapshot(long timestampMillis, Map<String, Long> counters, Map<String, Long> gauges,
+                    Map<String, Double> rates, Map<String, HistogramSnapshot> histograms) {
+        this.timestampMillis = timestampMillis;
+        this.counters = Collections.unmodifiableMap(counters);
+        this.gauges = Collections.unmodifiableMap(gauges);
+        this.rates = Collections.unmodifiableMap(rates);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    // Getters
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public Map<String, Double> getRates() {
+        return rates;
+    }
+
+    public Map<String, HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+    // -----------------
+
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    // One "name value" line per figure, histograms expanded into count, sum, mean, max and percentiles
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append("# timestamp_millis ").append(timestampMillis).append('\n');
+
+        counters.forEach((name, value) -> text.append(name).append(' ').append(value).append('\n'));
+        gauges.forEach((name, value) -> text.append(name).append(' ').append(value).append('\n'));
+        rates.forEach((name, value) -> text.append(name).append(' ').append(String.format("%.3f", value)).append('\n'));
+
+        histograms.forEach((name, histogram) -> {
+            text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+            text.append(name).append("_sum ").append(histogram.getSum()).append('\n');
+            text.append(name).append("_mean ").append(String.format("%.1f", histogram.getMean())).append('\n');
+            text.append(name).append("_max ").append(histogram.getMax()).append('\n');
+            text.append(name).append("_p50 ").append(histogram.getPercentile(0.50)).append('\n');
+            text.append(name).append("_p90 ").append(histogram.getPercentile(0.90)).append('\n');
+            text.append(name).append("_p99 ").append(histogram.getPercentile(0.99)).append('\n');
+        });
+        return text.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package Shop.metrics;
+
+import Shop.exceptions.CashierNotHiredRException;
+import Shop.exceptions.CommodityExpiredDateRException;
+import Shop.exceptions.CommodityNotFoundException;
+import Shop.exceptions.EmptyCartRException;
+import Shop.exceptions.InsufficientFundsException;
+import Shop.exceptions.InsufficientQuantityRException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The metrics the shop records, registered once on the default registry
+public final class ShopMetrics {
+    private static final MetricsRegistry REGISTRY = MetricsRegistry.getDefault();
+
+    public static final Histogram CHECKOUT_LATENCY_NANOS = REGISTRY.histogram("checkout_latency_nanos");
+    public static final Histogram CHECKOUT_CART_SIZE = REGISTRY.histogram("checkout_cart_size");
+    public static final Counter CHECKOUT_COMPLETED = REGISTRY.counter("checkout_completed");
+    public static final Meter CHECKOUT_LINES = REGISTRY.meter("checkout_lines");
+
+    public static final Histogram RECEIPT_WRITE_LATENCY_NANOS = REGISTRY.histogram("receipt_write_latency_nanos");
+    public static final Histogram RECEIPT_BATCH_WRITE_LATENCY_NANOS = REGISTRY.histogram("receipt_batch_write_latency_nanos");
+    public static final Counter RECEIPT_WRITE_FAILURES = REGISTRY.counter("receipt_write_failures");
+
+    public static final Histogram STORE_LOG_SYNC_LATENCY_NANOS = REGISTRY.histogram("store_log_sync_latency_nanos");
+    public static final Histogram STORE_LOG_RECORDS_PER_SYNC = REGISTRY.histogram("store_log_records_per_sync");
+
+    public static final String RECEIPT_QUEUE_DEPTH = "receipt_queue_depth";
+
+    // Known checkout failures are registered up front so counting one is a map read
+    private static final Map<Class<?>, Counter> CHECKOUT_FAILURES = new ConcurrentHashMap<>();
+
+    static {
+        registerFailure(InsufficientQuantityRException.class);
+        registerFailure(CashierNotHiredRException.class);
+        registerFailure(InsufficientFundsException.class);
+        registerFailure(CommodityNotFoundException.class);
+        registerFailure(EmptyCartRException.class);
+        registerFailure(CommodityExpiredDateRException.class);
+    }
+
+    private ShopMetrics() {
+    }
+
+    public static void recordCheckout(long startNanos, int lines) {
+        CHECKOUT_LATENCY_NANOS.record(System.nanoTime() - startNanos);
+        CHECKOUT_CART_SIZE.record(lines);
+        CHECKOUT_LINES.mark(lines);
+        CHECKOUT_COMPLETED.increment();
+    }
+
+    public static void recordCheckoutFailure(Throwable failure) {
+        Counter counter = CHECKOUT_FAILURES.get(failure.getClass());
+        if (counter == null) {
+            counter = registerFailure(failure.getClass());
+        }
+        counter.increment();
+    }
+
+    private static Counter registerFailure(Class<?> type) {
+        return CHECKOUT_FAILURES.computeIfAbsent(type,
+                key -> REGISTRY.counter("checkout_failures_" + key.getSimpleName()));
+    }
+}
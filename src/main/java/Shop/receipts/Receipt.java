@@ -3,6 +3,7 @@ package Shop.receipts;
 import Shop.cashiers.ICashierService;
 import Shop.commodities.CustomDataType;
 import Shop.stores.IStoreService;
+import Shop.stores.ReceiptIdAllocator;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
@@ -98,6 +99,12 @@ public class Receipt {
         return store.getName();
     }
 
+    // Unique across the chain, see ReceiptIdAllocator
+    @JsonIgnore
+    public long getGlobalId() {
+        return ReceiptIdAllocator.globalId(getStoreId(), id);
+    }
+
     public int getCashierId() {
         return cashier.getId();
     }
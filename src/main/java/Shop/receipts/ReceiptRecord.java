@@ -0,0 +1,72 @@
+package Shop.receipts;
+
+import Shop.commodities.CustomDataType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// A receipt as stored on disk, with store and cashier kept as plain ids until they are resolved
+public class ReceiptRecord {
+    private final int id;
+    private final int storeId;
+    private final String storeName;
+    private final int cashierId;
+    private final String cashierName;
+    private final LocalDateTime issuedDateTime;
+    private final List<CustomDataType> purchasedCommodities;
+    private final BigDecimal totalCost;
+    private final BigDecimal change;
+
+    // Constructor
+    public ReceiptRecord(int id, int storeId, String storeName, int cashierId, String cashierName, LocalDateTime issuedDateTime,
+                         List<CustomDataType> purchasedCommodities, BigDecimal totalCost, BigDecimal change) {
+        this.id = id;
+        this.storeId = storeId;
+        this.storeName = storeName;
+        this.cashierId = cashierId;
+        this.cashierName = cashierName;
+        this.issuedDateTime = issuedDateTime;
+        this.purchasedCommodities = purchasedCommodities;
+        this.totalCost = totalCost;
+        this.change = change;
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public int getStoreId() {
+        return storeId;
+    }
+
+    public String getStoreName() {
+        return storeName;
+    }
+
+    public int getCashierId() {
+        return cashierId;
+    }
+
+    public String getCashierName() {
+        return cashierName;
+    }
+
+    public LocalDateTime getIssuedDateTime() {
+        return issuedDateTime;
+    }
+
+    public List<CustomDataType> getPurchasedCommodities() {
+        return purchasedCommodities;
+    }
+
+    public BigDecimal getTotalCost() {
+        return totalCost;
+    }
+
+    public BigDecimal getChange() {
+        return change;
+    }
+    // -----------------
+}
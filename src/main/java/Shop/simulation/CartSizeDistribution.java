@@ -0,0 +1,36 @@
+package Shop.simulation;
+
+import java.util.random.RandomGenerator;
+
+// How many lines a simulated customer puts in a cart
+public enum CartSizeDistribution {
+    // Always the configured maximum
+    FIXED {
+        @Override
+        int sample(RandomGenerator random, int min, int max, double mean) {
+            return max;
+        }
+    },
+    // Anything from min to max with equal odds
+    UNIFORM {
+        @Override
+        int sample(RandomGenerator random, int min, int max, double mean) {
+            return min + random.nextInt(max - min + 1);
+        }
+    },
+    // Mostly small baskets with a long tail, averaging about the mean before clamping to [min, max]
+    GEOMETRIC {
+        @Override
+        int sample(RandomGenerator random, int min, int max, double mean) {
+            double extra = Math.max(mean - min, 0);
+            if (extra == 0) {
+                return min;
+            }
+            double stop = 1.0 / (extra + 1);
+            int size = min + (int) Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - stop));
+            return Math.min(size, max);
+        }
+    };
+
+    abstract int sample(RandomGenerator random, int min, int max, double mean);
+}
@@ -0,0 +1,247 @@
+package Shop.simulation;
+
+import Shop.cashiers.Cashier;
+import Shop.cashiers.CashierServiceHelper;
+import Shop.cashiers.CashierServiceImp;
+import Shop.cashiers.ICashierService;
+import Shop.commodities.Commodity;
+import Shop.commodities.CommodityCategory;
+import Shop.commodities.CustomDataType;
+import Shop.stores.IStoreService;
+import Shop.stores.Store;
+import Shop.stores.StoreServiceHelper;
+import Shop.stores.StoreServiceImp;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drives a synthetic store with one virtual thread per customer, fully in memory. On a runtime without
+// virtual threads (before Java 21) the customers share a bounded pool of platform threads instead. Every customer
+// checks out a number of carts at random tills: cart sizes follow the configured distribution,
+// SKUs a Zipf skew, and a share of customers pays too little or asks for a SKU the store does not have.
+// The store is built once per simulator, run() again to continue on the same stock and receipts.
+//
+//   java Shop.simulation.CheckoutSimulator --customers=10000 --checkoutsPerCustomer=50 --zipfExponent=1.1
+public class CheckoutSimulator {
+    private static final int UNKNOWN_SKU = -1;
+    private static final int MAX_PLATFORM_THREADS = 256;
+
+    private final SimulationConfig config;
+    private final IStoreService store;
+    private final List<ICashierService> cashiers;
+    private final ZipfDistribution popularity;
+
+    // Catalogue in popularity order: index 0 is the most sold SKU
+    private final int[] skuIds;
+    private final String[] skuNames;
+    private final BigDecimal[] skuPrices;
+
+    // Constructor
+    public CheckoutSimulator(SimulationConfig config) {
+        config.validate();
+        this.config = config;
+
+        Store storeData = new Store(1, "SimulatedStore", BigDecimal.valueOf(20), BigDecimal.valueOf(35),
+                BigDecimal.valueOf(10), 3);
+        store = new StoreServiceImp(storeData, new StoreServiceHelper());
+        cashiers = hireCashiers(store, config.getCashierCount());
+
+        SplittableRandom random = new SplittableRandom(config.getSeed());
+        List<Commodity> catalogue = createCatalogue(store, config, random);
+        store.addCommodities(catalogue);
+
+        // Popularity is shuffled over the ids, so the best sellers are not simply the first ids
+        Commodity[] byPopularity = catalogue.toArray(new Commodity[0]);
+        for (int i = byPopularity.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Commodity swap = byPopularity[i];
+            byPopularity[i] = byPopularity[j];
+            byPopularity[j] = swap;
+        }
+
+        skuIds = new int[byPopularity.length];
+        skuNames = new String[byPopularity.length];
+        skuPrices = new BigDecimal[byPopularity.length];
+        for (int rank = 0; rank < byPopularity.length; rank++) {
+            Commodity stocked = store.findAvailableCommodity(byPopularity[rank].getId());
+            skuIds[rank] = stocked.getId();
+            skuNames[rank] = stocked.getName();
+            skuPrices[rank] = store.getSellingPrice(stocked).getPriceWithMarkup();
+        }
+        popularity = new ZipfDistribution(byPopularity.length, config.getZipfExponent());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        SimulationConfig config;
+        try {
+            config = SimulationConfig.fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        CheckoutSimulator simulator = new CheckoutSimulator(config);
+        System.out.print(simulator.run().toText());
+    }
+
+    public IStoreService getStore() {
+        return store;
+    }
+
+    // Starts every customer at once and returns when the last one is done
+    public SimulationReport run() throws InterruptedException {
+        Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        LongAdder linesSold = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        BigDecimal revenueBefore = store.getRevenue();
+
+        List<Future<long[]>> customers = new ArrayList<>(config.getCustomers());
+        List<long[]> latencies = new ArrayList<>(config.getCustomers());
+        long elapsedNanos;
+        ExecutorService executor = newCustomerExecutor();
+        try {
+            for (int customer = 0; customer < config.getCustomers(); customer++) {
+                SplittableRandom random = new SplittableRandom(config.getSeed() * 31 + customer);
+                customers.add(executor.submit(() -> {
+                    start.await();
+                    return shop(random, errors, linesSold);
+                }));
+            }
+
+            long startNanos = System.nanoTime();
+            start.countDown();
+            for (Future<long[]> customer : customers) {
+                latencies.add(awaitCustomer(customer));
+            }
+            elapsedNanos = System.nanoTime() - startNanos;
+        } finally {
+            // Every customer is done unless the run failed, then the rest are stopped
+            executor.shutdownNow();
+        }
+
+        // Merged and sorted once at the end, recording stays a plain array write per checkout
+        int total = 0;
+        for (long[] customerLatencies : latencies) {
+            total += customerLatencies.length;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (long[] customerLatencies : latencies) {
+            System.arraycopy(customerLatencies, 0, merged, offset, customerLatencies.length);
+            offset += customerLatencies.length;
+        }
+        Arrays.sort(merged);
+
+        Map<String, Long> errorCounts = new HashMap<>();
+        errors.forEach((name, count) -> errorCounts.put(name, count.sum()));
+
+        return new SimulationReport(config.getCustomers(), merged.length, errorCounts, elapsedNanos, merged,
+                linesSold.sum(), store.getRevenue().subtract(revenueBefore));
+    }
+
+    // One customer's visits, returns the latency of every completed checkout
+    private long[] shop(SplittableRandom random, Map<String, LongAdder> errors, LongAdder linesSold) throws InterruptedException {
+        long[] latencies = new long[config.getCheckoutsPerCustomer()];
+        int completed = 0;
+
+        for (int visit = 0; visit < config.getCheckoutsPerCustomer(); visit++) {
+            ICashierService cashier = cashiers.get(random.nextInt(cashiers.size()));
+
+            int cartSize = config.getCartSizeDistribution().sample(random, config.getMinCartSize(),
+                    config.getMaxCartSize(), config.getMeanCartSize());
+            List<CustomDataType> cart = new ArrayList<>(cartSize);
+            BigDecimal expectedTotal = BigDecimal.ZERO;
+
+            for (int line = 0; line < cartSize; line++) {
+                BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(config.getMaxUnitsPerLine()));
+
+                if (random.nextDouble() < config.getUnknownSkuRate()) {
+                    cart.add(new CustomDataType(UNKNOWN_SKU, "Unknown", quantity, null));
+                    continue;
+                }
+                int rank = popularity.sample(random);
+                cart.add(new CustomDataType(skuIds[rank], skuNames[rank], quantity, null));
+                expectedTotal = expectedTotal.add(skuPrices[rank].multiply(quantity));
+            }
+
+            BigDecimal payment = random.nextDouble() < config.getUnderpaymentRate()
+                    ? expectedTotal.divide(BigDecimal.valueOf(2), 2, RoundingMode.DOWN)
+                    : expectedTotal.setScale(0, RoundingMode.CEILING).add(BigDecimal.valueOf(random.nextInt(20)));
+
+            long startNanos = System.nanoTime();
+            try {
+                cashier.sellCommodities(cart, payment);
+                latencies[completed++] = System.nanoTime() - startNanos;
+                linesSold.add(cart.size());
+            } catch (Exception e) {
+                errors.computeIfAbsent(e.getClass().getSimpleName(), name -> new LongAdder()).increment();
+            }
+
+            if (config.getThinkTimeMillis() > 0) {
+                // Jittered around the configured mean so customers do not arrive in lockstep
+                Thread.sleep(random.nextLong(2 * config.getThinkTimeMillis() + 1));
+            }
+        }
+        return Arrays.copyOf(latencies, completed);
+    }
+
+    // Simulation Helpers
+    // Looked up at runtime so the simulator still builds and runs on Java 17
+    private ExecutorService newCustomerExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.min(config.getCustomers(), MAX_PLATFORM_THREADS));
+        }
+    }
+
+    private static long[] awaitCustomer(Future<long[]> customer) throws InterruptedException {
+        try {
+            return customer.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A simulated customer stopped unexpectedly.", e.getCause());
+        }
+    }
+
+    private static List<ICashierService> hireCashiers(IStoreService store, int count) {
+        List<ICashierService> cashiers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Cashier cashier = new Cashier("Till-" + (i + 1), store.getNextCashierId(), BigDecimal.valueOf(1500), store);
+            ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+            store.hireCashier(cashierService);
+            cashiers.add(cashierService);
+        }
+        return cashiers;
+    }
+
+    // Half eatable with an expiry date well past any run, half never expiring
+    private static List<Commodity> createCatalogue(IStoreService store, SimulationConfig config, SplittableRandom random) {
+        List<Commodity> catalogue = new ArrayList<>(config.getSkuCount());
+        LocalDate expiryDate = LocalDate.now().plusYears(1);
+
+        for (int i = 0; i < config.getSkuCount(); i++) {
+            int id = store.getNextCommodityId();
+            BigDecimal deliveryPrice = BigDecimal.valueOf(random.nextInt(10_000) + 1, 2);
+
+            catalogue.add(random.nextBoolean()
+                    ? new Commodity(id, "Eatable-" + id, CommodityCategory.EATABLE, deliveryPrice, config.getStockPerSku(), expiryDate)
+                    : new Commodity(id, "NonEatable-" + id, CommodityCategory.NONEATABLE, deliveryPrice, config.getStockPerSku(), null));
+        }
+        return catalogue;
+    }
+}
@@ -0,0 +1,213 @@
+package Shop.simulation;
+
+import java.math.BigDecimal;
+
+// Knobs of a checkout simulation. The defaults give a mid-size store at a busy hour.
+// From the command line every field is set as --name=value, e.g. --customers=5000 --zipfExponent=1.2
+public class SimulationConfig {
+    // Load
+    private int customers = 1000;
+    private int checkoutsPerCustomer = 100;
+    private long thinkTimeMillis = 0;
+    private int cashierCount = 20;
+
+    // Catalogue
+    private int skuCount = 10_000;
+    private BigDecimal stockPerSku = BigDecimal.valueOf(100_000);
+    private double zipfExponent = 1.0;
+
+    // Carts
+    private CartSizeDistribution cartSizeDistribution = CartSizeDistribution.GEOMETRIC;
+    private int minCartSize = 1;
+    private int maxCartSize = 50;
+    private double meanCartSize = 8;
+    private int maxUnitsPerLine = 3;
+
+    // Payment and mistakes
+    private double underpaymentRate = 0.02;
+    private double unknownSkuRate = 0.001;
+
+    private long seed = 42;
+
+    // Constructor
+    public SimulationConfig() {
+    }
+
+    // Reads --name=value arguments over the defaults
+    public static SimulationConfig fromArgs(String[] args) {
+        SimulationConfig config = new SimulationConfig();
+
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            config.set(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        config.validate();
+        return config;
+    }
+
+    public void validate() {
+        require(customers > 0, "customers must be positive");
+        require(checkoutsPerCustomer > 0, "checkoutsPerCustomer must be positive");
+        require(thinkTimeMillis >= 0, "thinkTimeMillis must not be negative");
+        require(cashierCount > 0, "cashierCount must be positive");
+        require(skuCount > 0, "skuCount must be positive");
+        require(stockPerSku.signum() > 0, "stockPerSku must be positive");
+        require(zipfExponent >= 0, "zipfExponent must not be negative");
+        require(minCartSize > 0 && minCartSize <= maxCartSize, "cart sizes need 0 < minCartSize <= maxCartSize");
+        require(maxUnitsPerLine > 0, "maxUnitsPerLine must be positive");
+        require(underpaymentRate >= 0 && underpaymentRate <= 1, "underpaymentRate must be in [0, 1]");
+        require(unknownSkuRate >= 0 && unknownSkuRate <= 1, "unknownSkuRate must be in [0, 1]");
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "customers" -> customers = Integer.parseInt(value);
+            case "checkoutsPerCustomer" -> checkoutsPerCustomer = Integer.parseInt(value);
+            case "thinkTimeMillis" -> thinkTimeMillis = Long.parseLong(value);
+            case "cashierCount" -> cashierCount = Integer.parseInt(value);
+            case "skuCount" -> skuCount = Integer.parseInt(value);
+            case "stockPerSku" -> stockPerSku = new BigDecimal(value);
+            case "zipfExponent" -> zipfExponent = Double.parseDouble(value);
+            case "cartSizeDistribution" -> cartSizeDistribution = CartSizeDistribution.valueOf(value.toUpperCase());
+            case "minCartSize" -> minCartSize = Integer.parseInt(value);
+            case "maxCartSize" -> maxCartSize = Integer.parseInt(value);
+            case "meanCartSize" -> meanCartSize = Double.parseDouble(value);
+            case "maxUnitsPerLine" -> maxUnitsPerLine = Integer.parseInt(value);
+            case "underpaymentRate" -> underpaymentRate = Double.parseDouble(value);
+            case "unknownSkuRate" -> unknownSkuRate = Double.parseDouble(value);
+            case "seed" -> seed = Long.parseLong(value);
+            default -> throw new IllegalArgumentException("Unknown simulation setting: " + name);
+        }
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    // Getters / Setters
+    public int getCustomers() {
+        return customers;
+    }
+
+    public void setCustomers(int customers) {
+        this.customers = customers;
+    }
+
+    public int getCheckoutsPerCustomer() {
+        return checkoutsPerCustomer;
+    }
+
+    public void setCheckoutsPerCustomer(int checkoutsPerCustomer) {
+        this.checkoutsPerCustomer = checkoutsPerCustomer;
+    }
+
+    public long getThinkTimeMillis() {
+        return thinkTimeMillis;
+    }
+
+    public void setThinkTimeMillis(long thinkTimeMillis) {
+        this.thinkTimeMillis = thinkTimeMillis;
+    }
+
+    public int getCashierCount() {
+        return cashierCount;
+    }
+
+    public void setCashierCount(int cashierCount) {
+        this.cashierCount = cashierCount;
+    }
+
+    public int getSkuCount() {
+        return skuCount;
+    }
+
+    public void setSkuCount(int skuCount) {
+        this.skuCount = skuCount;
+    }
+
+    public BigDecimal getStockPerSku() {
+        return stockPerSku;
+    }
+
+    public void setStockPerSku(BigDecimal stockPerSku) {
+        this.stockPerSku = stockPerSku;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    public void setZipfExponent(double zipfExponent) {
+        this.zipfExponent = zipfExponent;
+    }
+
+    public CartSizeDistribution getCartSizeDistribution() {
+        return cartSizeDistribution;
+    }
+
+    public void setCartSizeDistribution(CartSizeDistribution cartSizeDistribution) {
+        this.cartSizeDistribution = cartSizeDistribution;
+    }
+
+    public int getMinCartSize() {
+        return minCartSize;
+    }
+
+    public void setMinCartSize(int minCartSize) {
+        this.minCartSize = minCartSize;
+    }
+
+    public int getMaxCartSize() {
+        return maxCartSize;
+    }
+
+    public void setMaxCartSize(int maxCartSize) {
+        this.maxCartSize = maxCartSize;
+    }
+
+    public double getMeanCartSize() {
+        return meanCartSize;
+    }
+
+    public void setMeanCartSize(double meanCartSize) {
+        this.meanCartSize = meanCartSize;
+    }
+
+    public int getMaxUnitsPerLine() {
+        return maxUnitsPerLine;
+    }
+
+    public void setMaxUnitsPerLine(int maxUnitsPerLine) {
+        this.maxUnitsPerLine = maxUnitsPerLine;
+    }
+
+    public double getUnderpaymentRate() {
+        return underpaymentRate;
+    }
+
+    public void setUnderpaymentRate(double underpaymentRate) {
+        this.underpaymentRate = underpaymentRate;
+    }
+
+    public double getUnknownSkuRate() {
+        return unknownSkuRate;
+    }
+
+    public void setUnknownSkuRate(double unknownSkuRate) {
+        this.unknownSkuRate = unknownSkuRate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    // -----------------
+}
@@ -0,0 +1,117 @@
+package Shop.simulation;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Outcome of one simulation run. Latencies are those of completed checkouts, sorted, so percentiles are exact.
+public class SimulationReport {
+    private final int customers;
+    private final long completed;
+    private final Map<String, Long> errors;
+    private final long elapsedNanos;
+    private final long[] sortedLatencyNanos;
+    private final long linesSold;
+    private final BigDecimal revenue;
+
+    // Constructor
+    public SimulationReport(int customers, long completed, Map<String, Long> errors, long elapsedNanos,
+                            long[] sortedLatencyNanos, long linesSold, BigDecimal revenue) {
+        this.customers = customers;
+        this.completed = completed;
+        this.errors = Collections.unmodifiableMap(new TreeMap<>(errors));
+        this.elapsedNanos = elapsedNanos;
+        this.sortedLatencyNanos = sortedLatencyNanos;
+        this.linesSold = linesSold;
+        this.revenue = revenue;
+    }
+
+    // Getters
+    public int getCustomers() {
+        return customers;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        long failed = 0;
+        for (long count : errors.values()) {
+            failed += count;
+        }
+        return failed;
+    }
+
+    public long getAttempted() {
+        return completed + getFailed();
+    }
+
+    // Failed checkouts by exception name
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getLinesSold() {
+        return linesSold;
+    }
+
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+    // -----------------
+
+    public double getCheckoutsPerSecond() {
+        return elapsedNanos == 0 ? 0 : completed * 1e9 / elapsedNanos;
+    }
+
+    public double getLinesPerSecond() {
+        return elapsedNanos == 0 ? 0 : linesSold * 1e9 / elapsedNanos;
+    }
+
+    // Nearest-rank percentile of the completed checkouts' latency, quantile in [0, 1]
+    public long getLatencyPercentileNanos(double quantile) {
+        if (sortedLatencyNanos.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sortedLatencyNanos.length);
+        return sortedLatencyNanos[Math.min(Math.max(rank, 1), sortedLatencyNanos.length) - 1];
+    }
+
+    public long getMaxLatencyNanos() {
+        return sortedLatencyNanos.length == 0 ? 0 : sortedLatencyNanos[sortedLatencyNanos.length - 1];
+    }
+
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("customers          %d%n", customers));
+        text.append(String.format("elapsed            %.3f s%n", elapsedNanos / 1e9));
+        text.append(String.format("checkouts          %d completed, %d failed%n", completed, getFailed()));
+        text.append(String.format("throughput         %.1f checkouts/s, %.1f lines/s%n", getCheckoutsPerSecond(), getLinesPerSecond()));
+        text.append(String.format("revenue            %s%n", revenue.toPlainString()));
+        text.append(String.format("latency p50        %s%n", formatNanos(getLatencyPercentileNanos(0.50))));
+        text.append(String.format("latency p90        %s%n", formatNanos(getLatencyPercentileNanos(0.90))));
+        text.append(String.format("latency p99        %s%n", formatNanos(getLatencyPercentileNanos(0.99))));
+        text.append(String.format("latency p99.9      %s%n", formatNanos(getLatencyPercentileNanos(0.999))));
+        text.append(String.format("latency max        %s%n", formatNanos(getMaxLatencyNanos())));
+
+        long attempted = getAttempted();
+        for (Map.Entry<String, Long> error : errors.entrySet()) {
+            text.append(String.format("error %-34s %d (%.2f%%)%n", error.getKey(), error.getValue(),
+                    attempted == 0 ? 0 : error.getValue() * 100.0 / attempted));
+        }
+        return text.toString();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000_000) {
+            return String.format("%.1f us", nanos / 1e3);
+        }
+        return String.format("%.2f ms", nanos / 1e6);
+    }
+}
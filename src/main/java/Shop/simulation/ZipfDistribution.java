@@ -0,0 +1,47 @@
+package Shop.simulation;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+// Ranks 0..n-1 where rank k comes up in proportion to 1/(k+1)^exponent. An exponent of 0 is uniform,
+// around 1 is the usual retail skew where a few SKUs make most of the sales.
+// The cumulative weights are computed once, a sample is one random double and a binary search.
+public final class ZipfDistribution {
+    private final double[] cumulative;
+
+    // Constructor
+    public ZipfDistribution(int size, double exponent) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A Zipf distribution needs at least one rank.");
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent must not be negative: " + exponent);
+        }
+
+        cumulative = new double[size];
+        double total = 0;
+        for (int rank = 0; rank < size; rank++) {
+            total += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+
+    public int sample(RandomGenerator random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        // Not found gives -(insertion point) - 1, the insertion point is the rank whose range holds the value
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+
+    // Share of the samples that land on the given rank
+    public double probability(int rank) {
+        return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+}
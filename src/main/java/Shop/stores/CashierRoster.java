@@ -0,0 +1,102 @@
+package Shop.stores;
+
+import Shop.cashiers.ICashierService;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hired cashiers by id. Every hire or fire bumps the version, so a till that saw itself hired
+// at some version only has to look again once the version moves.
+public class CashierRoster {
+    private final Map<Integer, ICashierService> cashiersById;
+    private final AtomicLong version;
+    private final Set<ICashierService> view;
+
+    // Constructor
+    public CashierRoster() {
+        cashiersById = new ConcurrentHashMap<>();
+        version = new AtomicLong();
+        view = new RosterView();
+    }
+
+    // Getters
+    public long getVersion() {
+        return version.get();
+    }
+
+    public int size() {
+        return cashiersById.size();
+    }
+
+    // Read-only live view, contains() is a lookup by id
+    public Set<ICashierService> asSet() {
+        return view;
+    }
+    // -----------------
+
+    // Returns the cashier this one replaced (same id), or null
+    public ICashierService hire(ICashierService cashier) {
+        ICashierService previous = cashiersById.put(cashier.getId(), cashier);
+        if (previous != cashier) {
+            version.incrementAndGet();
+        }
+        return previous;
+    }
+
+    public ICashierService fire(int cashierId) {
+        ICashierService fired = cashiersById.remove(cashierId);
+        if (fired != null) {
+            version.incrementAndGet();
+        }
+        return fired;
+    }
+
+    public boolean isHired(int cashierId) {
+        return cashiersById.containsKey(cashierId);
+    }
+
+    public ICashierService find(int cashierId) {
+        return cashiersById.get(cashierId);
+    }
+
+    public void replaceAll(Collection<ICashierService> cashiers) {
+        cashiersById.clear();
+        for (ICashierService cashier : cashiers) {
+            cashiersById.put(cashier.getId(), cashier);
+        }
+        version.incrementAndGet();
+    }
+
+    private final class RosterView extends AbstractSet<ICashierService> {
+        @Override
+        public Iterator<ICashierService> iterator() {
+            Iterator<ICashierService> values = cashiersById.values().iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return values.hasNext();
+                }
+
+                @Override
+                public ICashierService next() {
+                    return values.next();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return cashiersById.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof ICashierService cashier && cashiersById.get(cashier.getId()) == cashier;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package Shop.stores;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Chain-wide totals, added up store by store by StoreRegistry
+public final class ChainReport {
+    public static final ChainReport EMPTY = new ChainReport(0, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+
+    private final int storeCount;
+    private final BigDecimal revenue;
+    private final BigDecimal deliveryCost;
+    private final BigDecimal salaries;
+
+    // Constructor
+    public ChainReport(int storeCount, BigDecimal revenue, BigDecimal deliveryCost, BigDecimal salaries) {
+        this.storeCount = storeCount;
+        this.revenue = revenue;
+        this.deliveryCost = deliveryCost;
+        this.salaries = salaries;
+    }
+
+    public static ChainReport of(IStoreService store) {
+        return new ChainReport(1, store.calculateRevenue(), store.calculateTotalDeliveryCost(), store.calculateMonthlySalaries());
+    }
+
+    // Getters
+    public int getStoreCount() {
+        return storeCount;
+    }
+
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    public BigDecimal getDeliveryCost() {
+        return deliveryCost;
+    }
+
+    public BigDecimal getSalaries() {
+        return salaries;
+    }
+
+    public BigDecimal getPureRevenue() {
+        return revenue.subtract(salaries).subtract(deliveryCost).setScale(2, RoundingMode.HALF_UP);
+    }
+    // -----------------
+
+    public ChainReport combine(ChainReport other) {
+        return new ChainReport(storeCount + other.storeCount, revenue.add(other.revenue),
+                deliveryCost.add(other.deliveryCost), salaries.add(other.salaries));
+    }
+
+    @Override
+    public String toString() {
+        return "ChainReport{stores=" + storeCount + ", revenue=" + revenue + ", deliveryCost=" + deliveryCost
+                + ", salaries=" + salaries + ", pureRevenue=" + getPureRevenue() + "}";
+    }
+}
@@ -0,0 +1,104 @@
+package Shop.stores;
+
+import Shop.commodities.Commodity;
+import Shop.commodities.CommodityCategory;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// A commodity whose fields live in a ColumnarCommodityInventory. Views are made on demand, two views
+// of the same entry are equal. Once the entry is removed or replaced the view is stale: reading it throws
+// IllegalStateException, changing it does nothing and tryReserve returns false.
+final class ColumnarCommodity extends Commodity {
+    private final ColumnarCommodityInventory inventory;
+    private final int generation;
+
+    // Constructor
+    ColumnarCommodity(ColumnarCommodityInventory inventory, int id, int generation) {
+        super(id, null, null, null, null, null);
+        this.inventory = inventory;
+        this.generation = generation;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    boolean belongsTo(ColumnarCommodityInventory inventory) {
+        return this.inventory == inventory;
+    }
+
+    // Getters / Setters
+    @Override
+    public String getName() {
+        return inventory.getName(this);
+    }
+
+    @Override
+    public void setName(String name) {
+        inventory.setName(this, name);
+    }
+
+    @Override
+    public CommodityCategory getCategory() {
+        return inventory.getCategory(this);
+    }
+
+    @Override
+    public void setCategory(CommodityCategory category) {
+        inventory.setCategory(this, category);
+    }
+
+    @Override
+    public BigDecimal getDeliveryPrice() {
+        return inventory.getDeliveryPrice(this);
+    }
+
+    @Override
+    public void setDeliveryPrice(BigDecimal deliveryPrice) {
+        inventory.setDeliveryPrice(this, deliveryPrice);
+    }
+
+    @Override
+    public BigDecimal getQuantity() {
+        return inventory.getQuantity(this);
+    }
+
+    @Override
+    public void setQuantity(BigDecimal quantity) {
+        inventory.setQuantity(this, quantity);
+    }
+
+    @Override
+    public boolean tryReserve(BigDecimal amount) {
+        return inventory.tryReserve(this, amount);
+    }
+
+    @Override
+    public void addQuantity(BigDecimal amount) {
+        inventory.addQuantity(this, amount);
+    }
+
+    @Override
+    public LocalDate getExpiryDate() {
+        return inventory.getExpiryDate(this);
+    }
+
+    @Override
+    public void setExpiryDate(LocalDate expiryDate) {
+        inventory.setExpiryDate(this, expiryDate);
+    }
+    // -----------------
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ColumnarCommodity other)) return false;
+        return inventory == other.inventory && getId() == other.getId() && generation == other.generation;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * getId() + generation;
+    }
+}
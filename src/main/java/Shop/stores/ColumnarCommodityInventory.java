@@ -0,0 +1,608 @@
+package Shop.stores;
+
+import Shop.commodities.Commodity;
+import Shop.commodities.CommodityCategory;
+import Shop.helpers.Money;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+// Struct-of-arrays inventory for large catalogues: ids, categories, delivery prices, quantities and expiry
+// days sit in primitive columns and names are interned, instead of five objects per commodity.
+// Commodities are handed out as ColumnarCommodity views that read and write the columns.
+// Prices and quantities are scaled longs, so like Money they must fit a long or add throws ArithmeticException.
+// Every change takes the write lock, which suits catalogues that are scanned more than they are sold from;
+// busy tills are better served by CommodityInventory.
+public class ColumnarCommodityInventory implements ICommodityInventory {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NO_EXPIRY = Integer.MIN_VALUE;
+    private static final byte NO_CATEGORY = -1;
+    private static final CommodityCategory[] CATEGORIES = CommodityCategory.values();
+
+    private final StampedLock lock = new StampedLock();
+
+    private int size;
+    private final IdIndex positions; // id -> row
+    private final Map<String, String> namePool;
+    private int nextGeneration;
+
+    // Columns
+    private int[] ids;
+    private int[] generations; // changes whenever an id's entry is replaced, so views of the old entry go stale
+    private String[] names;
+    private byte[] categories;
+    private long[] priceUnscaled;
+    private int[] priceScale;
+    private long[] quantityUnscaled;
+    private int[] quantityScale;
+    private int[] expiryEpochDays;
+
+    // A commodity's fields converted before the lock is taken, so a bad value leaves the inventory untouched
+    private record Row(int id, String name, byte category, Money deliveryPrice, Money quantity, int expiryEpochDay) {
+    }
+
+    // Constructor
+    public ColumnarCommodityInventory() {
+        positions = new IdIndex(INITIAL_CAPACITY);
+        namePool = new HashMap<>();
+        allocateColumns(INITIAL_CAPACITY);
+    }
+
+    public ColumnarCommodityInventory(Collection<Commodity> initial) {
+        this();
+        addAll(initial);
+    }
+
+    @Override
+    public Commodity findById(int id) {
+        if (IdIndex.isDense(id)) {
+            long stamp = lock.tryOptimisticRead();
+            int generation = findDenseGeneration(id);
+            if (lock.validate(stamp)) {
+                return generation == 0 ? null : new ColumnarCommodity(this, id, generation);
+            }
+        }
+
+        long stamp = lock.readLock();
+        try {
+            int row = positions.get(id);
+            return row < 0 ? null : view(row);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return findById(id) != null;
+    }
+
+    @Override
+    public Commodity add(Commodity commodity) {
+        Row values = toRow(commodity);
+
+        long stamp = lock.writeLock();
+        try {
+            return view(addLocked(values));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Every commodity is converted first, so either all of them are added or none
+    @Override
+    public void addAll(Collection<Commodity> added) {
+        List<Row> rows = new ArrayList<>(added.size());
+        for (Commodity commodity : added) {
+            rows.add(toRow(commodity));
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            if (size + rows.size() > ids.length) {
+                growColumns(Math.max(ids.length * 2, size + rows.size()));
+            }
+            for (Row row : rows) {
+                addLocked(row);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean merge(Commodity commodity) {
+        Row values = toRow(commodity);
+
+        long stamp = lock.writeLock();
+        try {
+            return mergeLocked(values) >= 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Converted first like addAll, and every merged quantity is worked out before the first write,
+    // so a bad value or an overflow leaves every entry as it was
+    @Override
+    public List<Commodity> mergeAll(Collection<Commodity> added) {
+        List<Row> rows = new ArrayList<>(added.size());
+        for (Commodity commodity : added) {
+            rows.add(toRow(commodity));
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            // The quantity each id ends up with, and the first row of each id not stored yet
+            Map<Integer, Money> quantities = new HashMap<>();
+            List<Row> newRows = new ArrayList<>();
+            for (Row values : rows) {
+                Money current = quantities.get(values.id());
+                if (current == null) {
+                    int row = positions.get(values.id());
+                    if (row < 0) {
+                        quantities.put(values.id(), values.quantity());
+                        newRows.add(values);
+                        continue;
+                    }
+                    current = Money.ofUnscaled(quantityUnscaled[row], quantityScale[row]);
+                }
+                quantities.put(values.id(), current.add(values.quantity()));
+            }
+
+            for (Map.Entry<Integer, Money> entry : quantities.entrySet()) {
+                int row = positions.get(entry.getKey());
+                if (row >= 0) {
+                    setQuantityAt(row, entry.getValue());
+                }
+            }
+            List<Commodity> stored = new ArrayList<>(newRows.size());
+            for (Row values : newRows) {
+                Row merged = new Row(values.id(), values.name(), values.category(), values.deliveryPrice(),
+                        quantities.get(values.id()), values.expiryEpochDay());
+                stored.add(view(addLocked(merged)));
+            }
+            return stored;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Returns a plain Commodity with the removed values, views of the entry go stale
+    @Override
+    public Commodity remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            int row = positions.get(id);
+            if (row < 0) {
+                return null;
+            }
+
+            Commodity removed = new Commodity(id, names[row], categoryAt(row), priceAt(row), quantityAt(row), expiryAt(row));
+
+            int lastRow = size - 1;
+            if (row != lastRow) {
+                moveRow(lastRow, row);
+                positions.put(ids[row], row);
+            }
+            names[lastRow] = null;
+            size--;
+
+            positions.remove(id);
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean isStored(Commodity commodity) {
+        if (!(commodity instanceof ColumnarCommodity view) || !view.belongsTo(this)) {
+            return false;
+        }
+
+        long stamp = lock.readLock();
+        try {
+            return rowOf(view) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Views of every entry at this point in time
+    @Override
+    public List<Commodity> asList() {
+        long stamp = lock.readLock();
+        try {
+            List<Commodity> views = new ArrayList<>(size);
+            for (int row = 0; row < size; row++) {
+                views.add(view(row));
+            }
+            return Collections.unmodifiableList(views);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Runs over a snapshot of views, the lock is not reentrant so it is not held while the action reads them
+    @Override
+    public void forEach(Consumer<Commodity> action) {
+        asList().forEach(action);
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            positions.clear();
+            namePool.clear();
+            size = 0;
+            allocateColumns(INITIAL_CAPACITY);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Products are summed per scale in longs, a row that overflows is added as a BigDecimal instead.
+    // The result equals the BigDecimal reduce over the same commodities, scale included.
+    @Override
+    public BigDecimal sumDeliveryCost() {
+        long[] sums = new long[64];
+        boolean[] seen = new boolean[sums.length];
+        BigDecimal overflow = null;
+
+        long stamp = lock.readLock();
+        try {
+            for (int row = 0; row < size; row++) {
+                int scale = priceScale[row] + quantityScale[row];
+                if (scale < sums.length) {
+                    try {
+                        sums[scale] = Math.addExact(sums[scale], Math.multiplyExact(priceUnscaled[row], quantityUnscaled[row]));
+                        seen[scale] = true;
+                        continue;
+                    } catch (ArithmeticException e) {
+                        // Falls through to the exact sum
+                    }
+                }
+                BigDecimal cost = priceAt(row).multiply(quantityAt(row));
+                overflow = overflow == null ? cost : overflow.add(cost);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int scale = 0; scale < sums.length; scale++) {
+            if (seen[scale]) {
+                total = total.add(BigDecimal.valueOf(sums[scale], scale));
+            }
+        }
+        return overflow == null ? total : total.add(overflow);
+    }
+
+    // View Access, used by ColumnarCommodity. Reads of a stale view throw, writes to it are dropped
+    // the same way changes to a removed Commodity object are never seen.
+    String getName(ColumnarCommodity view) {
+        long stamp = lock.readLock();
+        try {
+            return names[liveRowOf(view)];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void setName(ColumnarCommodity view, String name) {
+        long stamp = lock.writeLock();
+        try {
+            int row = rowOf(view);
+            if (row >= 0) {
+                names[row] = intern(name);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    CommodityCategory getCategory(ColumnarCommodity view) {
+        long stamp = lock.readLock();
+        try {
+            return categoryAt(liveRowOf(view));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void setCategory(ColumnarCommodity view, CommodityCategory category) {
+        long stamp = lock.writeLock();
+        try {
+            int row = rowOf(view);
+            if (row >= 0) {
+                categories[row] = toOrdinal(category);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    BigDecimal getDeliveryPrice(ColumnarCommodity view) {
+        long stamp = lock.readLock();
+        try {
+            return priceAt(liveRowOf(view));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void setDeliveryPrice(ColumnarCommodity view, BigDecimal deliveryPrice) {
+        Money price = Money.of(deliveryPrice);
+
+        long stamp = lock.writeLock();
+        try {
+            int row = rowOf(view);
+            if (row >= 0) {
+                priceUnscaled[row] = price.getUnscaled();
+                priceScale[row] = price.getScale();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    BigDecimal getQuantity(ColumnarCommodity view) {
+        long stamp = lock.readLock();
+        try {
+            return quantityAt(liveRowOf(view));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void setQuantity(ColumnarCommodity view, BigDecimal quantity) {
+        Money newQuantity = Money.of(quantity);
+
+        long stamp = lock.writeLock();
+        try {
+            int row = rowOf(view);
+            if (row >= 0) {
+                setQuantityAt(row, newQuantity);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // A stale view has nothing left to reserve
+    boolean tryReserve(ColumnarCommodity view, BigDecimal amount) {
+        Money reserved = Money.of(amount);
+
+        long stamp = lock.writeLock();
+        try {
+            int row = rowOf(view);
+            if (row < 0) {
+                return false;
+            }
+
+            Money current = Money.ofUnscaled(quantityUnscaled[row], quantityScale[row]);
+            if (current.compareTo(reserved) < 0) {
+                return false;
+            }
+            setQuantityAt(row, current.subtract(reserved));
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void addQuantity(ColumnarCommodity view, BigDecimal amount) {
+        Money added = Money.of(amount);
+
+        long stamp = lock.writeLock();
+        try {
+            int row = rowOf(view);
+            if (row >= 0) {
+                setQuantityAt(row, Money.ofUnscaled(quantityUnscaled[row], quantityScale[row]).add(added));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    LocalDate getExpiryDate(ColumnarCommodity view) {
+        long stamp = lock.readLock();
+        try {
+            return expiryAt(liveRowOf(view));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void setExpiryDate(ColumnarCommodity view, LocalDate expiryDate) {
+        int epochDay = toEpochDay(expiryDate);
+
+        long stamp = lock.writeLock();
+        try {
+            int row = rowOf(view);
+            if (row >= 0) {
+                expiryEpochDays[row] = epochDay;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Row Helpers
+    private Row toRow(Commodity commodity) {
+        return new Row(commodity.getId(), commodity.getName(), toOrdinal(commodity.getCategory()),
+                Money.of(commodity.getDeliveryPrice()), Money.of(commodity.getQuantity()), toEpochDay(commodity.getExpiryDate()));
+    }
+
+    // Row of the new entry, or -1 when the quantity went into an existing one
+    private int mergeLocked(Row values) {
+        int row = positions.get(values.id());
+        if (row >= 0) {
+            setQuantityAt(row, Money.ofUnscaled(quantityUnscaled[row], quantityScale[row]).add(values.quantity()));
+            return -1;
+        }
+        return addLocked(values);
+    }
+
+    private int addLocked(Row values) {
+        int row = positions.get(values.id());
+        if (row < 0) {
+            if (size == ids.length) {
+                growColumns(size * 2);
+            }
+            row = size++;
+            positions.put(values.id(), row);
+        }
+
+        ids[row] = values.id();
+        generations[row] = newGeneration();
+        names[row] = intern(values.name());
+        categories[row] = values.category();
+        priceUnscaled[row] = values.deliveryPrice().getUnscaled();
+        priceScale[row] = values.deliveryPrice().getScale();
+        setQuantityAt(row, values.quantity());
+        expiryEpochDays[row] = values.expiryEpochDay();
+        return row;
+    }
+
+    private void moveRow(int from, int to) {
+        ids[to] = ids[from];
+        generations[to] = generations[from];
+        names[to] = names[from];
+        categories[to] = categories[from];
+        priceUnscaled[to] = priceUnscaled[from];
+        priceScale[to] = priceScale[from];
+        quantityUnscaled[to] = quantityUnscaled[from];
+        quantityScale[to] = quantityScale[from];
+        expiryEpochDays[to] = expiryEpochDays[from];
+    }
+
+    private ColumnarCommodity view(int row) {
+        return new ColumnarCommodity(this, ids[row], generations[row]);
+    }
+
+    // Row of the view's entry, or -1 once the entry was removed or replaced
+    private int rowOf(ColumnarCommodity view) {
+        int row = positions.get(view.getId());
+        return row >= 0 && generations[row] == view.getGeneration() ? row : -1;
+    }
+
+    private int liveRowOf(ColumnarCommodity view) {
+        int row = rowOf(view);
+        if (row < 0) {
+            throw new IllegalStateException("Commodity " + view.getId() + " is no longer in the inventory.");
+        }
+        return row;
+    }
+
+    // Generations start at 1 so 0 can mean absent, wrapping around after four billion adds is harmless
+    private int newGeneration() {
+        int generation = ++nextGeneration;
+        if (generation == 0) {
+            generation = ++nextGeneration;
+        }
+        return generation;
+    }
+
+    private void setQuantityAt(int row, Money quantity) {
+        quantityUnscaled[row] = quantity.getUnscaled();
+        quantityScale[row] = quantity.getScale();
+    }
+
+    private CommodityCategory categoryAt(int row) {
+        byte ordinal = categories[row];
+        return ordinal == NO_CATEGORY ? null : CATEGORIES[ordinal];
+    }
+
+    private BigDecimal priceAt(int row) {
+        return BigDecimal.valueOf(priceUnscaled[row], priceScale[row]);
+    }
+
+    private BigDecimal quantityAt(int row) {
+        return BigDecimal.valueOf(quantityUnscaled[row], quantityScale[row]);
+    }
+
+    private LocalDate expiryAt(int row) {
+        int epochDay = expiryEpochDays[row];
+        return epochDay == NO_EXPIRY ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static byte toOrdinal(CommodityCategory category) {
+        return category == null ? NO_CATEGORY : (byte) category.ordinal();
+    }
+
+    private static int toEpochDay(LocalDate date) {
+        return date == null ? NO_EXPIRY : Math.toIntExact(date.toEpochDay());
+    }
+
+    private String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        String pooled = namePool.putIfAbsent(name, name);
+        return pooled == null ? name : pooled;
+    }
+
+    private void allocateColumns(int capacity) {
+        ids = new int[capacity];
+        generations = new int[capacity];
+        names = new String[capacity];
+        categories = new byte[capacity];
+        priceUnscaled = new long[capacity];
+        priceScale = new int[capacity];
+        quantityUnscaled = new long[capacity];
+        quantityScale = new int[capacity];
+        expiryEpochDays = new int[capacity];
+    }
+
+    private void growColumns(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+        names = Arrays.copyOf(names, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+        priceUnscaled = Arrays.copyOf(priceUnscaled, capacity);
+        priceScale = Arrays.copyOf(priceScale, capacity);
+        quantityUnscaled = Arrays.copyOf(quantityUnscaled, capacity);
+        quantityScale = Arrays.copyOf(quantityScale, capacity);
+        expiryEpochDays = Arrays.copyOf(expiryEpochDays, capacity);
+    }
+
+    // Position Helpers
+    // Must not throw on a torn read, the caller validates the stamp afterwards. Returns 0 if absent.
+    private int findDenseGeneration(int id) {
+        int[] currentIds = ids;
+        int[] currentGenerations = generations;
+
+        int row = positions.peekDense(id);
+        if (row < 0 || row >= currentIds.length || row >= currentGenerations.length || currentIds[row] != id) {
+            return 0;
+        }
+        return currentGenerations[row];
+    }
+}
@@ -0,0 +1,251 @@
+package Shop.stores;
+
+import Shop.commodities.Commodity;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+public class CommodityInventory implements ICommodityInventory {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Lookups from the tills use optimistic reads, only deliveries and removals take the write lock
+    private final StampedLock lock = new StampedLock();
+
+    private Commodity[] commodities;
+    private int size;
+    private final IdIndex positions; // id -> position in commodities
+
+    // Constructor
+    public CommodityInventory() {
+        commodities = new Commodity[INITIAL_CAPACITY];
+        positions = new IdIndex(INITIAL_CAPACITY);
+    }
+
+    public CommodityInventory(Collection<Commodity> initial) {
+        this();
+        for (Commodity commodity : initial) {
+            add(commodity);
+        }
+    }
+
+    @Override
+    public Commodity findById(int id) {
+        if (IdIndex.isDense(id)) {
+            long stamp = lock.tryOptimisticRead();
+            Commodity found = findDense(id);
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        }
+
+        long stamp = lock.readLock();
+        try {
+            int position = positions.get(id);
+            return position < 0 ? null : commodities[position];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return findById(id) != null;
+    }
+
+    // Adds the commodity, replacing any entry with the same id
+    @Override
+    public Commodity add(Commodity commodity) {
+        long stamp = lock.writeLock();
+        try {
+            addLocked(commodity);
+            return commodity;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Same as add for each commodity, under a single write lock
+    @Override
+    public void addAll(Collection<Commodity> added) {
+        long stamp = lock.writeLock();
+        try {
+            if (size + added.size() > commodities.length) {
+                commodities = Arrays.copyOf(commodities, Math.max(commodities.length * 2, size + added.size()));
+            }
+            for (Commodity commodity : added) {
+                addLocked(commodity);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean merge(Commodity commodity) {
+        long stamp = lock.writeLock();
+        try {
+            return mergeLocked(commodity);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<Commodity> mergeAll(Collection<Commodity> added) {
+        List<Commodity> stored = new ArrayList<>();
+        long stamp = lock.writeLock();
+        try {
+            for (Commodity commodity : added) {
+                if (mergeLocked(commodity)) {
+                    stored.add(commodity);
+                }
+            }
+            return stored;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Swap-removes so removal does not shift the rest of the inventory
+    @Override
+    public Commodity remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            int position = positions.get(id);
+            if (position < 0) {
+                return null;
+            }
+
+            Commodity removed = commodities[position];
+            int lastPosition = size - 1;
+            Commodity last = commodities[lastPosition];
+            commodities[lastPosition] = null;
+            size--;
+
+            if (position != lastPosition) {
+                commodities[position] = last;
+                positions.put(last.getId(), position);
+            }
+
+            positions.remove(id);
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean isStored(Commodity commodity) {
+        return findById(commodity.getId()) == commodity;
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Point-in-time copy, safe to iterate while tills keep selling
+    @Override
+    public List<Commodity> asList() {
+        long stamp = lock.readLock();
+        try {
+            return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(commodities, size)));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<Commodity> action) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < size; i++) {
+                action.accept(commodities[i]);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            Arrays.fill(commodities, 0, size, null);
+            positions.clear();
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public BigDecimal sumDeliveryCost() {
+        long stamp = lock.readLock();
+        try {
+            BigDecimal total = BigDecimal.ZERO;
+            for (int i = 0; i < size; i++) {
+                total = total.add(commodities[i].getDeliveryPrice().multiply(commodities[i].getQuantity()));
+            }
+            return total;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private boolean mergeLocked(Commodity commodity) {
+        int position = positions.get(commodity.getId());
+        if (position >= 0) {
+            commodities[position].addQuantity(commodity.getQuantity());
+            return false;
+        }
+        addLocked(commodity);
+        return true;
+    }
+
+    private void addLocked(Commodity commodity) {
+        int id = commodity.getId();
+        int position = positions.get(id);
+
+        if (position >= 0) {
+            commodities[position] = commodity;
+            return;
+        }
+
+        if (size == commodities.length) {
+            commodities = Arrays.copyOf(commodities, size * 2);
+        }
+        commodities[size] = commodity;
+        positions.put(id, size);
+        size++;
+    }
+
+    // Position Helpers
+    // Must not throw on a torn read, the caller validates the stamp afterwards
+    private Commodity findDense(int id) {
+        Commodity[] currentCommodities = commodities;
+
+        int position = positions.peekDense(id);
+        if (position < 0 || position >= currentCommodities.length) {
+            return null;
+        }
+        Commodity found = currentCommodities[position];
+        return found != null && found.getId() == id ? found : null;
+    }
+}
@@ -0,0 +1,113 @@
+package Shop.stores;
+
+import Shop.commodities.Commodity;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+// Perishable stock ordered by expiry date, so a sweep only touches the items that expired.
+// The expiry discount is not tracked here, pricing compares the expiry date at the till.
+// Entries are checked lazily when popped: sold out or replaced commodities are dropped and
+// a later expiry date is queued again. An earlier date is only seen after reschedule().
+public class ExpiryIndex {
+    private record Entry(LocalDate expiryDate, Commodity commodity) {
+    }
+
+    private static final Comparator<Entry> BY_EXPIRY =
+            Comparator.comparing(Entry::expiryDate).thenComparingInt(entry -> entry.commodity().getId());
+
+    // Priority queue plus the date each commodity is currently queued under, older entries are skipped
+    private static final class DateQueue {
+        private final PriorityQueue<Entry> queue = new PriorityQueue<>(BY_EXPIRY);
+        // Commodity keeps identity equality, columnar views compare equal when they show the same entry
+        private final Map<Commodity, LocalDate> scheduled = new HashMap<>();
+
+        void schedule(Commodity commodity, LocalDate expiryDate) {
+            if (!expiryDate.equals(scheduled.put(commodity, expiryDate))) {
+                queue.add(new Entry(expiryDate, commodity));
+            }
+        }
+
+        List<Commodity> pollUntil(LocalDate cutoff, Predicate<Commodity> isStocked) {
+            List<Commodity> polled = new ArrayList<>();
+
+            while (!queue.isEmpty() && !queue.peek().expiryDate().isAfter(cutoff)) {
+                Entry entry = queue.poll();
+                Commodity commodity = entry.commodity();
+
+                if (!entry.expiryDate().equals(scheduled.get(commodity))) {
+                    continue;
+                }
+                scheduled.remove(commodity);
+
+                // Stocked is checked first, a view of a removed entry cannot be read
+                if (!isStocked.test(commodity)) {
+                    continue;
+                }
+                LocalDate current = commodity.getExpiryDate();
+                if (current == null) {
+                    continue;
+                }
+                if (!current.equals(entry.expiryDate())) {
+                    schedule(commodity, current);
+                    continue;
+                }
+
+                polled.add(commodity);
+            }
+            return polled;
+        }
+
+        void clear() {
+            queue.clear();
+            scheduled.clear();
+        }
+    }
+
+    private final DateQueue expiryQueue;
+
+    // Constructor
+    public ExpiryIndex() {
+        expiryQueue = new DateQueue();
+    }
+
+    public ExpiryIndex(Collection<Commodity> initial) {
+        this();
+        for (Commodity commodity : initial) {
+            add(commodity);
+        }
+    }
+
+    public synchronized void add(Commodity commodity) {
+        LocalDate expiryDate = commodity.getExpiryDate();
+        if (expiryDate == null) {
+            return;
+        }
+        expiryQueue.schedule(commodity, expiryDate);
+    }
+
+    // Call after changing the expiry date of a stocked commodity
+    public synchronized void reschedule(Commodity commodity) {
+        add(commodity);
+    }
+
+    public synchronized int size() {
+        return expiryQueue.scheduled.size();
+    }
+
+    public synchronized void clear() {
+        expiryQueue.clear();
+    }
+
+    // Pops every stocked commodity that expires on or before today
+    public synchronized List<Commodity> pollExpired(LocalDate today, Predicate<Commodity> isStocked) {
+        return expiryQueue.pollUntil(today, isStocked);
+    }
+}
@@ -0,0 +1,58 @@
+package Shop.stores;
+
+import Shop.commodities.Commodity;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Runs the store's expiry handling on a schedule so it stays off the checkout path
+public class ExpirySweeper implements AutoCloseable {
+    private final IStoreService store;
+    private final ScheduledExecutorService scheduler;
+
+    // Constructor
+    public ExpirySweeper(IStoreService store, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Sweep period must be positive.");
+        }
+
+        this.store = store;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiry-sweeper-" + store.getId());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::sweepSafely, 0, period, unit);
+    }
+
+    // Removes expired stock, returns how many were removed
+    public int sweep() {
+        List<Commodity> expired = store.removeExpiredCommodities(LocalDate.now());
+        return expired.size();
+    }
+
+    // Waits for a running sweep to finish, an interrupted close cancels it and keeps the interrupt
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sweepSafely() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            System.err.println("Expiry sweep failed for store " + store.getId() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package Shop.stores;
+
+import Shop.commodities.Commodity;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+// A store's commodities by id. CommodityInventory keeps the Commodity objects themselves,
+// ColumnarCommodityInventory keeps their fields in arrays and hands out views.
+public interface ICommodityInventory {
+    Commodity findById(int id);
+
+    boolean contains(int id);
+
+    // Adds the commodity, replacing any entry with the same id. Returns the commodity as stored,
+    // later changes have to go through that instance.
+    Commodity add(Commodity commodity);
+
+    void addAll(Collection<Commodity> added);
+
+    // Adds the commodity's quantity to the entry with the same id, or stores the commodity when there is none.
+    // The lookup and the insert are one write, so two first deliveries of an id racing each other both count.
+    // Returns true if the commodity was stored as a new entry.
+    boolean merge(Commodity commodity);
+
+    // merge for each commodity under a single write, returns the new entries as stored
+    List<Commodity> mergeAll(Collection<Commodity> added);
+
+    Commodity remove(int id);
+
+    // True if the commodity is the entry this inventory currently holds for its id
+    boolean isStored(Commodity commodity);
+
+    int size();
+
+    boolean isEmpty();
+
+    List<Commodity> asList();
+
+    void forEach(Consumer<Commodity> action);
+
+    void clear();
+
+    // Sum of delivery price times quantity over everything in the inventory
+    BigDecimal sumDeliveryCost();
+}
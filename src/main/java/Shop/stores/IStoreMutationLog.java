@@ -0,0 +1,28 @@
+package Shop.stores;
+
+import Shop.cashiers.ICashierService;
+import Shop.commodities.Commodity;
+import Shop.commodities.CommodityCategory;
+import Shop.receipts.Receipt;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+// Where a store records its changes so they survive a crash. Each call returns once the change is
+// durable and throws StoreLogWriteRException if it could not be written.
+public interface IStoreMutationLog {
+    void logDelivery(int storeId, Collection<Commodity> delivery);
+
+    void logSale(Receipt receipt);
+
+    // Expired stock taken off the shelf
+    void logRemoval(int storeId, Collection<Integer> commodityIds);
+
+    void logHire(int storeId, ICashierService cashier);
+
+    void logFire(int storeId, int cashierId);
+
+    void logMarkupChange(int storeId, CommodityCategory category, BigDecimal percentage);
+
+    void logExpiryDiscountChange(int storeId, BigDecimal percentage, int thresholdDays);
+}
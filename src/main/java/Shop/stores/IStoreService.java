@@ -8,9 +8,12 @@ import Shop.exceptions.CommodityNotFoundException;
 import Shop.receipts.Receipt;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
 
 public interface IStoreService {
 
@@ -21,40 +24,104 @@ public interface IStoreService {
 
     EnumMap<CommodityCategory, BigDecimal> getMarkupPercentages();
 
+    void setMarkupPercentage(CommodityCategory category, BigDecimal percentage);
+
+    void setExpiryDiscount(BigDecimal percentage, int thresholdDays);
+
+    IStoreMutationLog getMutationLog();
+
+    void setMutationLog(IStoreMutationLog mutationLog);
+
     BigDecimal getRevenue();
 
     void setRevenue(BigDecimal revenue);
 
+    void addRevenue(BigDecimal amount);
+
     List<Commodity> getAvailableCommodities();
 
     List<Commodity> getDeliveredCommodities();
 
+    Commodity findAvailableCommodity(int id);
+
+    Commodity findDeliveredCommodity(int id);
+
+    StoreTotals getRunningTotals();
+
     List<CustomDataType> getSoldCommodities();
 
+    SoldLedger getSoldLedger();
+
+    void recordSale(CustomDataType purchased, CommodityCategory category);
+
+    List<CustomDataType> closeSalesPeriod();
+
+    void logSale(Receipt receipt);
+
+    void addReceipt(Receipt receipt);
+
+    void replayReceipt(Receipt receipt);
+
     Set<ICashierService> getCashiers();
 
+    ICashierService findCashier(int cashierId);
+
+    boolean isCashierHired(int cashierId);
+
+    long getRosterVersion();
+
     Set<Receipt> getReceipts();
 
     void setReceipts(Set<Receipt> newReceipts);
 
+    ReceiptQuery queryReceipts();
+
     int getReceiptCount();
 
     void setReceiptCount(int receiptCount);
 
     // Custom
+    int getCommodityIdCounter();
+
+    void setCommodityIdCounter(int commodityIdCounter);
+
+    int getCashierIdCounter();
+
+    void setCashierIdCounter(int cashierIdCounter);
+
     int getNextCommodityId();
 
     int getNextCashierId();
+
+    int getNextReceiptId();
+
+    int getNextReceiptId(int tillId);
+
+    ReceiptIdAllocator getReceiptIdAllocator();
+
+    StampedLock getCheckoutLock();
     // -----------------
 
     void addCommodity(Commodity commodity);
 
+    int addCommodities(Collection<Commodity> manifest);
+
+    int replayDelivery(Collection<Commodity> delivery);
+
+    void replayRemoval(Collection<Integer> commodityIds);
+
     void hireCashier(ICashierService cashier);
 
+    ICashierService fireCashier(int cashierId);
+
+    SellingPrice getSellingPrice(Commodity commodity);
+
     BigDecimal applyExpiryDiscount(Commodity commodity);
 
     Boolean checkForExpired(Commodity commodity) throws CommodityNotFoundException;
 
+    List<Commodity> removeExpiredCommodities(LocalDate today);
+
     BigDecimal calculateTotalDeliveryCost();
 
     BigDecimal calculateMonthlySalaries();
@@ -62,4 +129,6 @@ public interface IStoreService {
     BigDecimal calculateRevenue();
 
     BigDecimal calculatePureRevenue();
+
+    boolean verifyRunningTotals();
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package Shop.stores;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Commodity id -> position in the owner's columns. Ids handed out by Store.getNextCommodityId are
+// small and dense, so they index an int array directly. Anything outside that range (negative or
+// very large external ids) goes to the sparse map. Not thread safe, the owner guards it with its lock.
+final class IdIndex {
+    private static final int MAX_DENSE_ID = 1 << 22;
+
+    private int[] dense; // id -> position + 1, 0 means absent
+    private final Map<Integer, Integer> sparse;
+
+    // Constructor
+    IdIndex(int initialCapacity) {
+        dense = new int[initialCapacity];
+        sparse = new HashMap<>();
+    }
+
+    static boolean isDense(int id) {
+        return id >= 0 && id < MAX_DENSE_ID;
+    }
+
+    // Position of the id, -1 if absent
+    int get(int id) {
+        if (isDense(id)) {
+            return id < dense.length ? dense[id] - 1 : -1;
+        }
+        Integer position = sparse.get(id);
+        return position == null ? -1 : position;
+    }
+
+    // For optimistic reads of a dense id without the lock. Never throws on a torn read, the caller
+    // checks the position against its own columns and validates its stamp afterwards.
+    int peekDense(int id) {
+        int[] current = dense;
+        return id < current.length ? current[id] - 1 : -1;
+    }
+
+    void put(int id, int position) {
+        if (!isDense(id)) {
+            sparse.put(id, position);
+            return;
+        }
+
+        if (id >= dense.length) {
+            int newLength = Math.max(dense.length * 2, Integer.highestOneBit(id) << 1);
+            dense = Arrays.copyOf(dense, Math.min(newLength, MAX_DENSE_ID));
+        }
+        dense[id] = position + 1;
+    }
+
+    void remove(int id) {
+        if (isDense(id)) {
+            if (id < dense.length) {
+                dense[id] = 0;
+            }
+        } else {
+            sparse.remove(id);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(dense, 0);
+        sparse.clear();
+    }
+}
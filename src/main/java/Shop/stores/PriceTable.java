@@ -0,0 +1,54 @@
+package Shop.stores;
+
+import Shop.commodities.Commodity;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-store cache of selling prices keyed by commodity id. Entries are filled on delivery and
+// recomputed lazily when they go stale: a markup or expiry discount change bumps the version,
+// and a commodity whose delivery price or category was replaced no longer matches its entry.
+// Changes made straight through the map returned by getMarkupPercentages() are not seen.
+public class PriceTable {
+    private final Map<Integer, SellingPrice> prices;
+    private final AtomicLong version;
+
+    // Constructor
+    public PriceTable() {
+        prices = new ConcurrentHashMap<>();
+        version = new AtomicLong();
+    }
+
+    // Getters
+    public long getVersion() {
+        return version.get();
+    }
+
+    public int size() {
+        return prices.size();
+    }
+    // -----------------
+
+    // Returns the cached price or null if there is none or it is stale
+    public SellingPrice find(Commodity commodity) {
+        SellingPrice price = prices.get(commodity.getId());
+        if (price != null && price.isCurrent(commodity.getDeliveryPrice(), commodity.getCategory(), version.get())) {
+            return price;
+        }
+        return null;
+    }
+
+    public void put(SellingPrice price) {
+        prices.put(price.getCommodityId(), price);
+    }
+
+    public void remove(int commodityId) {
+        prices.remove(commodityId);
+    }
+
+    public void invalidateAll() {
+        version.incrementAndGet();
+        prices.clear();
+    }
+}
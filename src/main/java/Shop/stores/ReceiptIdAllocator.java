@@ -0,0 +1,299 @@
+package Shop.stores;
+
+import Shop.exceptions.ReceiptIdWriteRException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hands out a store's receipt ids. By default every id comes straight off the store's high-water
+// mark with one CAS, so ids are unique, gap-free and in the order the sales took them.
+//
+// With a block size above one each till takes a block of ids from the mark instead and numbers its
+// receipts from the block, so tills do not contend on one counter. That gives up the gap-free order:
+// ids stay unique and grow per till, but not across tills, and ids a till has not used yet are skipped
+// once its block is retired. Only worth it for many busy tills on many cores.
+//
+// Paired with the store id the ids are unique across the chain, see globalId.
+//
+// With a high-water file the mark is leased ahead and written before any id of the lease is handed
+// out, so a restart continues above every id handed out before it, skipping the rest of the lease.
+public class ReceiptIdAllocator {
+    public static final int GAP_FREE = 1;
+    public static final int DEFAULT_BLOCK_SIZE = 32;
+    private static final int BLOCKS_PER_LEASE = 1024;
+
+    // Ids first to last of one till, cut off when the allocator retires its blocks. issuedBefore is
+    // the highest id the till handed out from its earlier blocks.
+    private static final class Block {
+        final int epoch;
+        final int first;
+        final int last;
+        final int issuedBefore;
+        final AtomicInteger next;
+
+        Block(int epoch, int first, int last, int issuedBefore) {
+            this.epoch = epoch;
+            this.first = first;
+            this.last = last;
+            this.issuedBefore = issuedBefore;
+            this.next = new AtomicInteger(first);
+        }
+
+        int lastIssued() {
+            int taken = next.get();
+            return taken == first ? issuedBefore : Math.min(taken - 1, last);
+        }
+    }
+
+    private final int storeId;
+    private volatile int blockSize;
+    private final AtomicInteger highWater = new AtomicInteger();
+    private final Map<Integer, Block> blocks = new ConcurrentHashMap<>();
+    private volatile int epoch;
+    private volatile int issuedFloor;
+
+    private volatile Path highWaterFile;
+    private volatile int leasedUpTo = Integer.MAX_VALUE;
+
+    // Gap-free ids given back while a later id was still out, guarded by this allocator
+    private final Set<Integer> givenBack = new HashSet<>();
+
+    // Constructor
+    public ReceiptIdAllocator(int storeId) {
+        this(storeId, GAP_FREE);
+    }
+
+    public ReceiptIdAllocator(int storeId, int blockSize) {
+        checkBlockSize(blockSize);
+        this.storeId = storeId;
+        this.blockSize = blockSize;
+    }
+
+    // Chain-wide receipt id: the store id in the high half, the store's receipt id in the low half
+    public static long globalId(int storeId, int receiptId) {
+        return ((long) storeId << 32) | (receiptId & 0xFFFFFFFFL);
+    }
+
+    public static int storeIdOf(long globalId) {
+        return (int) (globalId >>> 32);
+    }
+
+    public static int receiptIdOf(long globalId) {
+        return (int) globalId;
+    }
+
+    // Next receipt id for the given till, the till only matters with per-till blocks
+    public int nextId(int tillId) {
+        if (blockSize == GAP_FREE) {
+            return nextGapFreeId();
+        }
+
+        while (true) {
+            Block block = blocks.get(tillId);
+            if (block != null && block.epoch == epoch) {
+                int id = block.next.getAndIncrement();
+                if (id <= block.last) {
+                    return id;
+                }
+            }
+
+            Block fresh = reserveBlock(block == null ? 0 : block.lastIssued());
+            boolean installed = block == null
+                    ? blocks.putIfAbsent(tillId, fresh) == null
+                    : blocks.replace(tillId, block, fresh);
+            // Losing the race to another thread of the same till skips the fresh block's ids
+            if (installed) {
+                return fresh.next.getAndIncrement();
+            }
+        }
+    }
+
+    // Gives back a gap-free id whose sale never happened. The mark drops back over it once every id
+    // above it has been given back as well, until then it stays a gap. Ids from blocks are only skipped.
+    public synchronized void giveBack(int receiptId) {
+        if (blockSize != GAP_FREE || receiptId > highWater.get()) {
+            return;
+        }
+
+        givenBack.add(receiptId);
+        while (true) {
+            int current = highWater.get();
+            if (!givenBack.remove(current)) {
+                return;
+            }
+            // Fails when a till takes the next id meanwhile, the id waits for that one to come back
+            if (!highWater.compareAndSet(current, current - 1)) {
+                givenBack.add(current);
+                return;
+            }
+        }
+    }
+
+    // Highest id handed out or reserved for a till
+    public int getHighWater() {
+        return highWater.get();
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    // GAP_FREE or a per-till block size. Blocks taken so far are retired, their unused ids are skipped.
+    public synchronized void setBlockSize(int blockSize) {
+        checkBlockSize(blockSize);
+        this.blockSize = blockSize;
+        retireBlocks();
+    }
+
+    // Highest id a till has handed out. Exact while the tills are quiet, a moment behind while they sell.
+    public int getLastIssuedId() {
+        if (blockSize == GAP_FREE) {
+            return highWater.get();
+        }
+
+        int lastIssued = issuedFloor;
+        for (Block block : blocks.values()) {
+            lastIssued = Math.max(lastIssued, block.lastIssued());
+        }
+        return lastIssued;
+    }
+
+    // Continues numbering after the given id, e.g. after a restore. Every till's block is retired,
+    // so the next ids are taken above it.
+    public synchronized void setHighWater(int receiptId) {
+        ensureLeased(receiptId);
+        highWater.set(receiptId);
+        givenBack.clear();
+        blocks.clear();
+        issuedFloor = receiptId;
+        retireBlocks();
+    }
+
+    // Returns the last issued id, ids handed out from now on are above it. With per-till blocks this
+    // retires every till's block, so each till skips the rest of its block. A till that picked its id
+    // from an old block just before can still finish with an id below.
+    public int seal() {
+        retireBlocks();
+        return getLastIssuedId();
+    }
+
+    // Leases the mark in the given file from now on. A mark already in the file is taken as the floor.
+    public synchronized void persistTo(Path file) throws IOException {
+        if (Files.exists(file)) {
+            int persisted = readHighWater(file);
+            // Ids up to the mark may have been handed out before the restart
+            if (persisted > highWater.get()) {
+                setHighWater(persisted);
+            }
+        }
+
+        highWaterFile = file;
+        leasedUpTo = highWater.get();
+        ensureLeased(highWater.get() + 1);
+    }
+
+    public Path getHighWaterFile() {
+        return highWaterFile;
+    }
+
+    // Allocation Helpers
+    private int nextGapFreeId() {
+        while (true) {
+            int current = highWater.get();
+            if (current == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Receipt ids of store " + storeId + " are exhausted.");
+            }
+            int id = current + 1;
+
+            if (id > leasedUpTo) {
+                ensureLeased(id);
+                continue;
+            }
+            if (highWater.compareAndSet(current, id)) {
+                return id;
+            }
+        }
+    }
+
+    private Block reserveBlock(int issuedBefore) {
+        while (true) {
+            int start = highWater.get();
+            if (start > Integer.MAX_VALUE - blockSize) {
+                throw new IllegalStateException("Receipt ids of store " + storeId + " are exhausted.");
+            }
+            int end = start + blockSize;
+
+            if (end > leasedUpTo) {
+                ensureLeased(end);
+                continue;
+            }
+            // Read before the CAS, so a block taken after a retire is never tagged with the old epoch
+            int blockEpoch = epoch;
+            if (highWater.compareAndSet(start, end)) {
+                return new Block(blockEpoch, start + 1, end, issuedBefore);
+            }
+        }
+    }
+
+    private synchronized void retireBlocks() {
+        epoch++;
+    }
+
+    private synchronized void ensureLeased(int receiptId) {
+        Path file = highWaterFile;
+        if (file == null || receiptId <= leasedUpTo) {
+            return;
+        }
+
+        // Gap-free ids lease as much as a default block would, one id at a time would write the file per sale
+        long lease = (long) receiptId + (long) Math.max(blockSize, DEFAULT_BLOCK_SIZE) * BLOCKS_PER_LEASE;
+        int newLease = (int) Math.min(Integer.MAX_VALUE, lease);
+        try {
+            writeHighWater(file, newLease);
+        } catch (IOException e) {
+            throw new ReceiptIdWriteRException(file.toString(), e);
+        }
+        leasedUpTo = newLease;
+    }
+
+    private static void checkBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Receipt id blocks hold at least one id.");
+        }
+    }
+
+    // High-Water File Helpers
+    private static int readHighWater(Path file) throws IOException {
+        String text = Files.readString(file, StandardCharsets.US_ASCII).trim();
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Receipt id file " + file + " does not hold a receipt id: " + text, e);
+        }
+    }
+
+    // Written next to the target and moved over it, a crash mid-write leaves the old mark in place
+    private static void writeHighWater(Path file, int receiptId) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer text = ByteBuffer.wrap((receiptId + "\n").getBytes(StandardCharsets.US_ASCII));
+            while (text.hasRemaining()) {
+                channel.write(text);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,241 @@
+package Shop.stores;
+
+import Shop.commodities.CustomDataType;
+import Shop.receipts.Receipt;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// A store's receipts, kept in issue order three ways: all of them, per cashier and per commodity sold.
+// It is the store's receipt set, so anything added through getReceipts() is indexed as well.
+// A receipt is indexed under the issue time, cashier and lines it had when it was added.
+// Like the concurrent collections it is built on, a query running next to adds may or may not see them.
+public class ReceiptIndex extends AbstractSet<Receipt> {
+    // Issue time, then insertion order so receipts issued in the same instant all get a place
+    record TimeKey(long epochSecond, int nano, long sequence) implements Comparable<TimeKey> {
+        @Override
+        public int compareTo(TimeKey other) {
+            int bySecond = Long.compare(epochSecond, other.epochSecond);
+            if (bySecond != 0) {
+                return bySecond;
+            }
+            int byNano = Integer.compare(nano, other.nano);
+            return byNano != 0 ? byNano : Long.compare(sequence, other.sequence);
+        }
+
+        // Sorts before every receipt issued at the given time, null means before everything
+        static TimeKey probe(LocalDateTime time) {
+            if (time == null) {
+                return new TimeKey(Long.MIN_VALUE, 0, Long.MIN_VALUE);
+            }
+            return new TimeKey(time.toEpochSecond(ZoneOffset.UTC), time.getNano(), Long.MIN_VALUE);
+        }
+    }
+
+    // What the filters look at, so a query does not go back to the receipt for it. commodityIds is sorted.
+    record Entry(Receipt receipt, int cashierId, int[] commodityIds) {
+        boolean hasCommodity(int commodityId) {
+            return Arrays.binarySearch(commodityIds, commodityId) >= 0;
+        }
+    }
+
+    // Receipts of one cashier or one commodity, sized so a query can start from the shortest list
+    static final class Posting {
+        final ConcurrentSkipListMap<TimeKey, Entry> entries = new ConcurrentSkipListMap<>();
+        final AtomicInteger size = new AtomicInteger();
+    }
+
+    static final int NO_CASHIER = -1;
+
+    private final Map<Receipt, TimeKey> members = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<TimeKey, Entry> byTime = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Posting> byCashier = new ConcurrentHashMap<>();
+    private final Map<Integer, Posting> byCommodity = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Constructor
+    public ReceiptIndex() {
+    }
+
+    public ReceiptIndex(Collection<Receipt> receipts) {
+        addAll(receipts);
+    }
+
+    // Starts a query over this store's receipts
+    public ReceiptQuery query() {
+        return new ReceiptQuery(this);
+    }
+
+    // Set
+    @Override
+    public boolean add(Receipt receipt) {
+        LocalDateTime issued = receipt.getIssuedDateTime();
+        TimeKey key = issued == null
+                ? new TimeKey(Long.MIN_VALUE, 0, sequence.incrementAndGet())
+                : new TimeKey(issued.toEpochSecond(ZoneOffset.UTC), issued.getNano(), sequence.incrementAndGet());
+
+        if (members.putIfAbsent(receipt, key) != null) {
+            return false;
+        }
+
+        Entry entry = new Entry(receipt, receipt.getCashier() == null ? NO_CASHIER : receipt.getCashierId(),
+                commodityIds(receipt));
+        byTime.put(key, entry);
+        post(byCashier, entry.cashierId(), key, entry);
+        for (int commodityId : entry.commodityIds()) {
+            post(byCommodity, commodityId, key, entry);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        if (!(object instanceof Receipt receipt)) {
+            return false;
+        }
+        TimeKey key = members.remove(receipt);
+        if (key == null) {
+            return false;
+        }
+
+        Entry entry = byTime.remove(key);
+        if (entry != null) {
+            unpost(byCashier, entry.cashierId(), key);
+            for (int commodityId : entry.commodityIds()) {
+                unpost(byCommodity, commodityId, key);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return object instanceof Receipt && members.containsKey(object);
+    }
+
+    @Override
+    public int size() {
+        return members.size();
+    }
+
+    @Override
+    public void clear() {
+        members.clear();
+        byTime.clear();
+        byCashier.clear();
+        byCommodity.clear();
+    }
+
+    @Override
+    public Iterator<Receipt> iterator() {
+        Iterator<Receipt> receipts = members.keySet().iterator();
+
+        return new Iterator<>() {
+            private Receipt last;
+
+            @Override
+            public boolean hasNext() {
+                return receipts.hasNext();
+            }
+
+            @Override
+            public Receipt next() {
+                last = receipts.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                ReceiptIndex.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    // Swaps in the given receipts. A copy is taken first, so passing this index itself keeps it as it is.
+    public void replaceAll(Collection<Receipt> receipts) {
+        List<Receipt> copy = new ArrayList<>(receipts);
+        clear();
+        addAll(copy);
+    }
+    // -----------------
+
+    // Query Helpers
+    // Entries issued in [from, to) from the smallest of the lists the filters allow. The caller still
+    // applies the filters the chosen list does not cover.
+    Stream<Entry> select(LocalDateTime from, LocalDateTime to, Integer cashierId, Integer commodityId) {
+        NavigableMap<TimeKey, Entry> source = byTime;
+        int sourceSize = Integer.MAX_VALUE;
+
+        if (cashierId != null) {
+            Posting posting = byCashier.get(cashierId);
+            if (posting == null) {
+                return Stream.empty();
+            }
+            source = posting.entries;
+            sourceSize = posting.size.get();
+        }
+        if (commodityId != null) {
+            Posting posting = byCommodity.get(commodityId);
+            if (posting == null) {
+                return Stream.empty();
+            }
+            if (posting.size.get() < sourceSize) {
+                source = posting.entries;
+            }
+        }
+
+        if (from != null && to != null) {
+            source = source.subMap(TimeKey.probe(from), true, TimeKey.probe(to), false);
+        } else if (from != null) {
+            source = source.tailMap(TimeKey.probe(from), true);
+        } else if (to != null) {
+            source = source.headMap(TimeKey.probe(to), false);
+        }
+        return source.values().stream();
+    }
+
+    private static void post(Map<Integer, Posting> postings, int id, TimeKey key, Entry entry) {
+        Posting posting = postings.computeIfAbsent(id, unused -> new Posting());
+        if (posting.entries.put(key, entry) == null) {
+            posting.size.incrementAndGet();
+        }
+    }
+
+    private static void unpost(Map<Integer, Posting> postings, int id, TimeKey key) {
+        Posting posting = postings.get(id);
+        if (posting != null && posting.entries.remove(key) != null) {
+            posting.size.decrementAndGet();
+        }
+    }
+
+    private static int[] commodityIds(Receipt receipt) {
+        List<CustomDataType> lines = receipt.getPurchasedCommodities();
+        if (lines == null) {
+            return new int[0];
+        }
+
+        int[] ids = new int[lines.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = lines.get(i).getId();
+        }
+        // A commodity on several lines is posted once
+        return Arrays.stream(ids).sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,78 @@
+package Shop.stores;
+
+import Shop.receipts.Receipt;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+// Filters over a store's receipt index. Results come in issue order and are produced lazily, so a
+// shift's receipts can be summed without collecting them. Every filter is optional.
+//   store.queryReceipts().between(shiftStart, shiftEnd).byCashier(7).totalCost()
+public class ReceiptQuery {
+    private final ReceiptIndex index;
+
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private Integer cashierId;
+    private Integer commodityId;
+
+    // Constructor
+    ReceiptQuery(ReceiptIndex index) {
+        this.index = index;
+    }
+
+    // Filters
+    // Issued at or after the given time
+    public ReceiptQuery issuedFrom(LocalDateTime from) {
+        this.from = from;
+        return this;
+    }
+
+    // Issued before the given time
+    public ReceiptQuery issuedBefore(LocalDateTime to) {
+        this.to = to;
+        return this;
+    }
+
+    // Issued in [from, to)
+    public ReceiptQuery between(LocalDateTime from, LocalDateTime to) {
+        return issuedFrom(from).issuedBefore(to);
+    }
+
+    public ReceiptQuery byCashier(int cashierId) {
+        this.cashierId = cashierId;
+        return this;
+    }
+
+    // Receipts with at least one line of the given commodity
+    public ReceiptQuery withCommodity(int commodityId) {
+        this.commodityId = commodityId;
+        return this;
+    }
+    // -----------------
+
+    // Results
+    public Stream<Receipt> stream() {
+        if (from != null && to != null && !from.isBefore(to)) {
+            return Stream.empty();
+        }
+
+        Integer cashier = cashierId;
+        Integer commodity = commodityId;
+        return index.select(from, to, cashier, commodity)
+                .filter(entry -> cashier == null || entry.cashierId() == cashier)
+                .filter(entry -> commodity == null || entry.hasCommodity(commodity))
+                .map(ReceiptIndex.Entry::receipt);
+    }
+
+    public long count() {
+        return stream().count();
+    }
+
+    public BigDecimal totalCost() {
+        return stream()
+                .map(Receipt::getTotalCost)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
@@ -0,0 +1,66 @@
+package Shop.stores;
+
+import java.math.BigDecimal;
+
+// Striped BigDecimal sum in the spirit of LongAdder: every till adds into its own cell,
+// so concurrent sales do not contend on a single revenue field. Reads add the cells up.
+public class RevenueAccumulator {
+    private static final class Cell {
+        private BigDecimal value = BigDecimal.ZERO;
+
+        synchronized void add(BigDecimal amount) {
+            value = value.add(amount);
+        }
+
+        synchronized BigDecimal get() {
+            return value;
+        }
+
+        synchronized void set(BigDecimal amount) {
+            value = amount;
+        }
+    }
+
+    private final Cell[] cells;
+    private final int mask;
+
+    // Constructor
+    public RevenueAccumulator() {
+        this(BigDecimal.ZERO);
+    }
+
+    public RevenueAccumulator(BigDecimal initial) {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+        cells = new Cell[stripes];
+        for (int i = 0; i < stripes; i++) {
+            cells[i] = new Cell();
+        }
+        mask = stripes - 1;
+        cells[0].set(initial);
+    }
+
+    public void add(BigDecimal amount) {
+        cells[stripeForCurrentThread()].add(amount);
+    }
+
+    public BigDecimal sum() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Cell cell : cells) {
+            total = total.add(cell.get());
+        }
+        return total;
+    }
+
+    // Not atomic with concurrent add calls, meant for resets between trading periods
+    public void reset(BigDecimal value) {
+        cells[0].set(value);
+        for (int i = 1; i < cells.length; i++) {
+            cells[i].set(BigDecimal.ZERO);
+        }
+    }
+
+    private int stripeForCurrentThread() {
+        int hash = System.identityHashCode(Thread.currentThread()) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
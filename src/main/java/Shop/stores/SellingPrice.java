@@ -0,0 +1,73 @@
+package Shop.stores;
+
+import Shop.commodities.CommodityCategory;
+import Shop.helpers.Money;
+
+import java.math.BigDecimal;
+
+// Prices of one commodity worked out once per delivery or pricing change, see PriceTable
+public final class SellingPrice {
+    private final int commodityId;
+    private final BigDecimal deliveryPrice;
+    private final CommodityCategory category;
+    private final long version;
+
+    private final BigDecimal priceWithMarkup;
+    private final Money priceWithMarkupMoney; // null when the price does not fit the fixed-point type
+    private final BigDecimal baseSellingPrice;
+    private final BigDecimal discountedSellingPrice;
+
+    // Constructor
+    SellingPrice(int commodityId, BigDecimal deliveryPrice, CommodityCategory category, long version,
+                 BigDecimal priceWithMarkup, BigDecimal baseSellingPrice, BigDecimal discountedSellingPrice) {
+        this.commodityId = commodityId;
+        this.deliveryPrice = deliveryPrice;
+        this.category = category;
+        this.version = version;
+
+        this.priceWithMarkup = priceWithMarkup;
+        this.priceWithMarkupMoney = toMoney(priceWithMarkup);
+        this.baseSellingPrice = baseSellingPrice;
+        this.discountedSellingPrice = discountedSellingPrice;
+    }
+
+    // Getters
+    public int getCommodityId() {
+        return commodityId;
+    }
+
+    // Delivery price times the markup multiplier, unrounded, this is what checkout charges
+    public BigDecimal getPriceWithMarkup() {
+        return priceWithMarkup;
+    }
+
+    public Money getPriceWithMarkupMoney() {
+        return priceWithMarkupMoney;
+    }
+
+    // Price with markup rounded to cents
+    public BigDecimal getBaseSellingPrice() {
+        return baseSellingPrice;
+    }
+
+    // Base selling price with the expiry discount applied, rounded to cents
+    public BigDecimal getDiscountedSellingPrice() {
+        return discountedSellingPrice;
+    }
+    // -----------------
+
+    // Same delivery price, same category and no pricing change since it was computed. The reference check
+    // covers plain commodities, columnar views build a new BigDecimal on every read and need equals.
+    boolean isCurrent(BigDecimal deliveryPrice, CommodityCategory category, long version) {
+        return (this.deliveryPrice == deliveryPrice || this.deliveryPrice.equals(deliveryPrice))
+                && this.category == category && this.version == version;
+    }
+
+    private static Money toMoney(BigDecimal amount) {
+        try {
+            return Money.of(amount);
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package Shop.stores;
+
+import Shop.commodities.CommodityCategory;
+import Shop.commodities.CustomDataType;
+import Shop.helpers.Money;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Everything sold in the current period, one slot per commodity id in first-sold order.
+// Quantity and revenue are kept as scaled longs per slot; a slot whose numbers outgrow a long
+// moves to BigDecimal for good. A sold line keeps the price of its first sale, like the old list did.
+// Slots are split into stripes by commodity id, each with its own lock and running revenue, so tills
+// selling different commodities do not queue on one lock. The total revenue adds the stripes up.
+// Whole-ledger reads and resets hold every stripe, taken in order.
+public class SoldLedger {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // A recomputed revenue next to the running one it was checked against
+    public record RevenueCheck(BigDecimal running, BigDecimal recomputed) {
+    }
+
+    private record SoldLine(long sequence, CustomDataType line) {
+    }
+
+    private final Stripe[] stripes;
+    private final int stripeBits;
+    private final AtomicLong nextSequence = new AtomicLong(); // first-sold order across the stripes
+
+    // Constructor
+    public SoldLedger() {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        stripeBits = Integer.numberOfTrailingZeros(count);
+    }
+
+    // Adds the sold quantity to the commodity's line and returns the price the line is kept at
+    public BigDecimal record(int id, String name, CommodityCategory category, BigDecimal quantity, BigDecimal price) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            return stripe.record(keyOf(id), id, name, category, quantity, price, nextSequence);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Per-commodity queries
+    public CustomDataType find(int id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.slots.get(keyOf(id));
+            return slot < 0 ? null : stripe.toCustomDataType(slot);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public BigDecimal getQuantity(int id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.slots.get(keyOf(id));
+            return slot < 0 ? BigDecimal.ZERO : stripe.quantityOf(slot);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public BigDecimal getRevenue(int id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.slots.get(keyOf(id));
+            return slot < 0 ? BigDecimal.ZERO : stripe.revenueOf(slot);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Per-category queries, a scan over the primitive columns one stripe at a time
+    public BigDecimal getQuantity(CommodityCategory category) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (int slot = 0; slot < stripe.size; slot++) {
+                    if (stripe.categories[slot] == category) {
+                        total = total.add(stripe.quantityOf(slot));
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    public BigDecimal getRevenue(CommodityCategory category) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (int slot = 0; slot < stripe.size; slot++) {
+                    if (stripe.categories[slot] == category) {
+                        total = total.add(stripe.revenueOf(slot));
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    // The stripes' running revenue added up, exact while the tills are quiet
+    public BigDecimal getTotalRevenue() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                total = total.add(stripe.revenue);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    // Recomputes the revenue from the slots with every stripe held and puts the running revenue right
+    public RevenueCheck recomputeRevenue() {
+        lockAll();
+        try {
+            BigDecimal running = BigDecimal.ZERO;
+            BigDecimal recomputed = BigDecimal.ZERO;
+            for (Stripe stripe : stripes) {
+                BigDecimal sum = stripe.sumRevenue();
+                running = running.add(stripe.revenue);
+                recomputed = recomputed.add(sum);
+                stripe.revenue = sum;
+            }
+            return new RevenueCheck(running, recomputed);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // Period handling
+    public List<CustomDataType> snapshot() {
+        lockAll();
+        try {
+            List<SoldLine> sold = new ArrayList<>();
+            for (Stripe stripe : stripes) {
+                for (int slot = 0; slot < stripe.size; slot++) {
+                    sold.add(new SoldLine(stripe.sequences[slot], stripe.toCustomDataType(slot)));
+                }
+            }
+            sold.sort(Comparator.comparingLong(SoldLine::sequence));
+
+            List<CustomDataType> lines = new ArrayList<>(sold.size());
+            for (SoldLine line : sold) {
+                lines.add(line.line());
+            }
+            return Collections.unmodifiableList(lines);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // Closes the period: returns what was sold and starts the next one empty
+    public List<CustomDataType> snapshotAndReset() {
+        lockAll();
+        try {
+            List<CustomDataType> lines = snapshot();
+            clear();
+            return lines;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    public void replaceAll(Collection<CustomDataType> lines) {
+        lockAll();
+        try {
+            clear();
+            for (CustomDataType line : lines) {
+                record(line.getId(), line.getName(), null, line.getQuantity(), line.getPrice());
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    public void clear() {
+        lockAll();
+        try {
+            for (Stripe stripe : stripes) {
+                stripe.clear();
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // Stripe Helpers
+    // The low bits pick the stripe and the rest key the slot inside it, so dense ids stay dense per stripe
+    private Stripe stripeOf(int id) {
+        return stripes[id & (stripes.length - 1)];
+    }
+
+    private int keyOf(int id) {
+        return id >> stripeBits;
+    }
+
+    private void lockAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].lock.unlock();
+        }
+    }
+
+    // One stripe's slots in columns, every method runs with the stripe's lock held
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private int size;
+        private final IdIndex slots = new IdIndex(INITIAL_CAPACITY); // key -> slot, absent means not sold yet
+        private BigDecimal revenue = BigDecimal.ZERO;
+
+        // Columns
+        private int[] ids;
+        private long[] sequences;
+        private String[] names;
+        private CommodityCategory[] categories;
+        private BigDecimal[] prices;
+        private long[] priceUnscaled;
+        private int[] priceScale;
+        private long[] quantityUnscaled;
+        private int[] quantityScale;
+        private long[] revenueUnscaled; // at priceScale + quantityScale
+        private BigDecimal[] bigQuantity; // set once a slot no longer fits the long columns
+
+        Stripe() {
+            allocateColumns(INITIAL_CAPACITY);
+        }
+
+        BigDecimal record(int key, int id, String name, CommodityCategory category, BigDecimal quantity,
+                          BigDecimal price, AtomicLong nextSequence) {
+            int slot = slots.get(key);
+            if (slot < 0) {
+                slot = addSlot(key, id, name, category, price, nextSequence.getAndIncrement());
+            } else if (categories[slot] == null) {
+                categories[slot] = category;
+            }
+
+            addQuantity(slot, quantity);
+            revenue = revenue.add(prices[slot].multiply(quantity));
+            return prices[slot];
+        }
+
+        BigDecimal sumRevenue() {
+            BigDecimal total = BigDecimal.ZERO;
+            for (int slot = 0; slot < size; slot++) {
+                total = total.add(revenueOf(slot));
+            }
+            return total;
+        }
+
+        void clear() {
+            slots.clear();
+            size = 0;
+            revenue = BigDecimal.ZERO;
+            allocateColumns(INITIAL_CAPACITY);
+        }
+
+        // Column Helpers
+        private int addSlot(int key, int id, String name, CommodityCategory category, BigDecimal price, long sequence) {
+            if (size == ids.length) {
+                growColumns(size * 2);
+            }
+
+            int slot = size++;
+            ids[slot] = id;
+            sequences[slot] = sequence;
+            names[slot] = name;
+            categories[slot] = category;
+            prices[slot] = price;
+            quantityUnscaled[slot] = 0;
+            quantityScale[slot] = 0;
+            revenueUnscaled[slot] = 0;
+            bigQuantity[slot] = null;
+
+            try {
+                Money money = Money.of(price);
+                priceUnscaled[slot] = money.getUnscaled();
+                priceScale[slot] = money.getScale();
+            } catch (ArithmeticException e) {
+                bigQuantity[slot] = BigDecimal.ZERO;
+            }
+
+            slots.put(key, slot);
+            return slot;
+        }
+
+        private void addQuantity(int slot, BigDecimal quantity) {
+            if (bigQuantity[slot] == null) {
+                try {
+                    Money added = Money.of(quantity);
+                    int scale = Math.max(quantityScale[slot], added.getScale());
+
+                    long newQuantity = Math.addExact(rescale(quantityUnscaled[slot], quantityScale[slot], scale),
+                            rescale(added.getUnscaled(), added.getScale(), scale));
+                    long newRevenue = Math.multiplyExact(priceUnscaled[slot], newQuantity);
+
+                    quantityUnscaled[slot] = newQuantity;
+                    quantityScale[slot] = scale;
+                    revenueUnscaled[slot] = newRevenue;
+                    return;
+                } catch (ArithmeticException e) {
+                    bigQuantity[slot] = quantityOf(slot);
+                }
+            }
+            bigQuantity[slot] = bigQuantity[slot].add(quantity);
+        }
+
+        private BigDecimal quantityOf(int slot) {
+            if (bigQuantity[slot] != null) {
+                return bigQuantity[slot];
+            }
+            return BigDecimal.valueOf(quantityUnscaled[slot], quantityScale[slot]);
+        }
+
+        private BigDecimal revenueOf(int slot) {
+            if (bigQuantity[slot] != null) {
+                return prices[slot].multiply(bigQuantity[slot]);
+            }
+            return BigDecimal.valueOf(revenueUnscaled[slot], priceScale[slot] + quantityScale[slot]);
+        }
+
+        private CustomDataType toCustomDataType(int slot) {
+            return new CustomDataType(ids[slot], names[slot], quantityOf(slot), prices[slot]);
+        }
+
+        private static long rescale(long unscaled, int fromScale, int toScale) {
+            return Money.ofUnscaled(unscaled, fromScale).setScale(toScale).getUnscaled();
+        }
+
+        private void allocateColumns(int capacity) {
+            ids = new int[capacity];
+            sequences = new long[capacity];
+            names = new String[capacity];
+            categories = new CommodityCategory[capacity];
+            prices = new BigDecimal[capacity];
+            priceUnscaled = new long[capacity];
+            priceScale = new int[capacity];
+            quantityUnscaled = new long[capacity];
+            quantityScale = new int[capacity];
+            revenueUnscaled = new long[capacity];
+            bigQuantity = new BigDecimal[capacity];
+        }
+
+        private void growColumns(int capacity) {
+            ids = Arrays.copyOf(ids, capacity);
+            sequences = Arrays.copyOf(sequences, capacity);
+            names = Arrays.copyOf(names, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            priceUnscaled = Arrays.copyOf(priceUnscaled, capacity);
+            priceScale = Arrays.copyOf(priceScale, capacity);
+            quantityUnscaled = Arrays.copyOf(quantityUnscaled, capacity);
+            quantityScale = Arrays.copyOf(quantityScale, capacity);
+            revenueUnscaled = Arrays.copyOf(revenueUnscaled, capacity);
+            bigQuantity = Arrays.copyOf(bigQuantity, capacity);
+        }
+    }
+}
@@ -8,6 +8,9 @@ import Shop.receipts.Receipt;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 
 public class Store {
     private final int id;
@@ -16,24 +19,38 @@ public class Store {
     private EnumMap<CommodityCategory, BigDecimal> markupPercentages;
     private BigDecimal expiryDiscountPercentage;
     private int expiryDiscountThresholdDays;
+    private final PriceTable priceTable;
+    private volatile IStoreMutationLog mutationLog;
 
-    private BigDecimal revenue;
+    private final RevenueAccumulator revenue;
+    private final StoreTotals runningTotals;
 
-    private List<Commodity> availableCommodities;
-    private List<Commodity> deliveredCommodities;
-    private List<CustomDataType> soldCommodities;
+    private final Supplier<ICommodityInventory> inventoryFactory;
+    private ICommodityInventory availableCommodities;
+    private ICommodityInventory deliveredCommodities;
+    private final ExpiryIndex expiryIndex;
+    private final SoldLedger soldCommodities;
 
-    private Set<ICashierService> cashiers;
-    private Set<Receipt> receipts;
+    private final CashierRoster cashiers;
+    private final ReceiptIndex receipts;
 
-    private int receiptCount;
+    private final ReceiptIdAllocator receiptIds;
+    private final StampedLock checkoutLock;
 
-    private int commodityIdCounter;
-    private int cashierIdCounter;
+    private final AtomicInteger commodityIdCounter;
+    private final AtomicInteger cashierIdCounter;
 
     // Constructor
     public Store(int id, String name, BigDecimal eatableMarkupPercentage, BigDecimal nonEatableMarkupPercentage,
                  BigDecimal expiryDiscountPercentage, int expiryDiscountThresholdDays) {
+        this(id, name, eatableMarkupPercentage, nonEatableMarkupPercentage, expiryDiscountPercentage,
+                expiryDiscountThresholdDays, CommodityInventory::new);
+    }
+
+    // The factory picks the inventory backend, e.g. ColumnarCommodityInventory::new for large catalogues
+    public Store(int id, String name, BigDecimal eatableMarkupPercentage, BigDecimal nonEatableMarkupPercentage,
+                 BigDecimal expiryDiscountPercentage, int expiryDiscountThresholdDays,
+                 Supplier<ICommodityInventory> inventoryFactory) {
 
         this.id = id;
         this.name = name;
@@ -44,21 +61,26 @@ public class Store {
 
         this.expiryDiscountPercentage = expiryDiscountPercentage;
         this.expiryDiscountThresholdDays = expiryDiscountThresholdDays;
+        priceTable = new PriceTable();
 
-        revenue = BigDecimal.ZERO;
+        revenue = new RevenueAccumulator();
+        runningTotals = new StoreTotals();
 
-        availableCommodities = new ArrayList<>();
-        deliveredCommodities = new ArrayList<>();
-        soldCommodities = new ArrayList<>();
+        this.inventoryFactory = inventoryFactory;
+        availableCommodities = inventoryFactory.get();
+        deliveredCommodities = inventoryFactory.get();
+        expiryIndex = new ExpiryIndex();
+        soldCommodities = new SoldLedger();
 
-        cashiers = new HashSet<>();
-        receipts = new HashSet<>();
+        cashiers = new CashierRoster();
+        receipts = new ReceiptIndex();
 
-        receiptCount = 0;
+        receiptIds = new ReceiptIdAllocator(id);
+        checkoutLock = new StampedLock();
 
         // Custom
-        commodityIdCounter = 0;
-        cashierIdCounter = 0;
+        commodityIdCounter = new AtomicInteger();
+        cashierIdCounter = new AtomicInteger();
     }
 
     // Getters and Setters
@@ -83,7 +105,7 @@ public class Store {
     }
 
     public void setEatableMarkupPercentage(BigDecimal eatableMarkupPercentage) {
-        markupPercentages.put(CommodityCategory.EATABLE, eatableMarkupPercentage);
+        setMarkupPercentage(CommodityCategory.EATABLE, eatableMarkupPercentage);
     }
 
     public BigDecimal getNonEatableMarkupPercentage() {
@@ -91,7 +113,17 @@ public class Store {
     }
 
     public void setNonEatableMarkupPercentage(BigDecimal nonEatableMarkupPercentage) {
-        markupPercentages.put(CommodityCategory.NONEATABLE, nonEatableMarkupPercentage);
+        setMarkupPercentage(CommodityCategory.NONEATABLE, nonEatableMarkupPercentage);
+    }
+
+    // Pricing changes go to the mutation log first, like every other change to the store
+    public void setMarkupPercentage(CommodityCategory category, BigDecimal percentage) {
+        IStoreMutationLog log = mutationLog;
+        if (log != null) {
+            log.logMarkupChange(id, category, percentage);
+        }
+        markupPercentages.put(category, percentage);
+        priceTable.invalidateAll();
     }
 
     public BigDecimal getExpiryDiscountPercentage() {
@@ -99,7 +131,7 @@ public class Store {
     }
 
     public void setExpiryDiscountPercentage(BigDecimal expiryDiscountPercentage) {
-        this.expiryDiscountPercentage = expiryDiscountPercentage;
+        setExpiryDiscount(expiryDiscountPercentage, expiryDiscountThresholdDays);
     }
 
     public int getExpiryDiscountThresholdDays() {
@@ -107,47 +139,106 @@ public class Store {
     }
 
     public void setExpiryDiscountThresholdDays(int expiryDiscountThresholdDays) {
-        this.expiryDiscountThresholdDays = expiryDiscountThresholdDays;
+        setExpiryDiscount(expiryDiscountPercentage, expiryDiscountThresholdDays);
+    }
+
+    public void setExpiryDiscount(BigDecimal percentage, int thresholdDays) {
+        IStoreMutationLog log = mutationLog;
+        if (log != null) {
+            log.logExpiryDiscountChange(id, percentage, thresholdDays);
+        }
+        expiryDiscountPercentage = percentage;
+        expiryDiscountThresholdDays = thresholdDays;
+        priceTable.invalidateAll();
+    }
+
+    public ExpiryIndex getExpiryIndex() {
+        return expiryIndex;
+    }
+
+    public StoreTotals getRunningTotals() {
+        return runningTotals;
+    }
+
+    public PriceTable getPriceTable() {
+        return priceTable;
+    }
+
+    public IStoreMutationLog getMutationLog() {
+        return mutationLog;
+    }
+
+    public void setMutationLog(IStoreMutationLog mutationLog) {
+        this.mutationLog = mutationLog;
     }
 
     public BigDecimal getRevenue() {
-        return revenue;
+        return revenue.sum();
     }
 
     public void setRevenue(BigDecimal revenue) {
-        this.revenue = revenue;
+        this.revenue.reset(revenue);
+    }
+
+    public void addRevenue(BigDecimal amount) {
+        revenue.add(amount);
     }
 
     public List<Commodity> getAvailableCommodities() {
-        return availableCommodities;
+        return availableCommodities.asList();
     }
 
     public void setAvailableCommodities(List<Commodity> availableCommodities) {
-        this.availableCommodities = availableCommodities;
+        ICommodityInventory inventory = inventoryFactory.get();
+        inventory.addAll(availableCommodities);
+        this.availableCommodities = inventory;
+        expiryIndex.clear();
+        inventory.forEach(expiryIndex::add);
     }
 
     public List<Commodity> getDeliveredCommodities() {
-        return deliveredCommodities;
+        return deliveredCommodities.asList();
     }
 
     public void setDeliveredCommodities(List<Commodity> deliveredCommodities) {
-        this.deliveredCommodities = deliveredCommodities;
+        ICommodityInventory inventory = inventoryFactory.get();
+        inventory.addAll(deliveredCommodities);
+        this.deliveredCommodities = inventory;
+        runningTotals.setDeliveryCost(inventory.sumDeliveryCost());
+    }
+
+    public ICommodityInventory getAvailableInventory() {
+        return availableCommodities;
+    }
+
+    public ICommodityInventory getDeliveredInventory() {
+        return deliveredCommodities;
     }
 
+    // A copy of the ledger's lines, later sales do not show up in it
     public List<CustomDataType> getSoldCommodities() {
-        return soldCommodities;
+        return soldCommodities.snapshot();
     }
 
     public void setSoldCommodities(List<CustomDataType> soldCommodities) {
-        this.soldCommodities = soldCommodities;
+        this.soldCommodities.replaceAll(soldCommodities);
+    }
+
+    public SoldLedger getSoldLedger() {
+        return soldCommodities;
     }
 
     public Set<ICashierService> getCashiers() {
-        return cashiers;
+        return cashiers.asSet();
     }
 
     public void setCashiers(Set<ICashierService> cashiers) {
-        this.cashiers = cashiers;
+        this.cashiers.replaceAll(cashiers);
+        runningTotals.setSalaries(StoreTotals.sumSalaries(this.cashiers.asSet()));
+    }
+
+    public CashierRoster getCashierRoster() {
+        return cashiers;
     }
 
     public Set<Receipt> getReceipts() {
@@ -155,24 +246,64 @@ public class Store {
     }
 
     public void setReceipts(Set<Receipt> receipts) {
-        this.receipts = receipts;
+        this.receipts.replaceAll(receipts);
     }
 
+    public ReceiptIndex getReceiptIndex() {
+        return receipts;
+    }
+
+    // Highest receipt id a till has handed out, receipts with a higher id came later
     public int getReceiptCount() {
-        return receiptCount;
+        return receiptIds.getLastIssuedId();
     }
 
     public void setReceiptCount(int receiptCount) {
-        this.receiptCount = receiptCount;
+        receiptIds.setHighWater(receiptCount);
+    }
+
+    public ReceiptIdAllocator getReceiptIdAllocator() {
+        return receiptIds;
+    }
+
+    // Tills hold it shared while a sale moves stock, ledger, revenue and receipt id, deliveries and expiry
+    // sweeps while they change the inventories. A snapshot holds it exclusively while it reads them,
+    // so it never sees half of any of them.
+    public StampedLock getCheckoutLock() {
+        return checkoutLock;
     }
 
     // Custom
+    public int getCommodityIdCounter() {
+        return commodityIdCounter.get();
+    }
+
+    public void setCommodityIdCounter(int commodityIdCounter) {
+        this.commodityIdCounter.set(commodityIdCounter);
+    }
+
+    public int getCashierIdCounter() {
+        return cashierIdCounter.get();
+    }
+
+    public void setCashierIdCounter(int cashierIdCounter) {
+        this.cashierIdCounter.set(cashierIdCounter);
+    }
+
     public int getNextCommodityId() {
-        return ++commodityIdCounter;
+        return commodityIdCounter.incrementAndGet();
     }
 
     public int getNextCashierId() {
-        return ++cashierIdCounter;
+        return cashierIdCounter.incrementAndGet();
+    }
+
+    public int getNextReceiptId() {
+        return receiptIds.nextId(0);
+    }
+
+    public int getNextReceiptId(int tillId) {
+        return receiptIds.nextId(tillId);
     }
     // -----------------
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package Shop.stores;
+
+import Shop.exceptions.fileExceptions.NoReceiptFilesFoundException;
+import Shop.exceptions.fileExceptions.StoreNotFoundException;
+import Shop.helpers.ReceiptFileManager;
+import Shop.helpers.ReceiptLoadResult;
+import Shop.receipts.Receipt;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+// Every store of the chain by id. Chain-wide figures are computed per store in parallel on a
+// fork/join pool and combined, and loaded receipts are handed to the store that issued them.
+public class StoreRegistry {
+    // Below this many stores a task adds them up itself instead of splitting further
+    private static final int SEQUENTIAL_THRESHOLD = 8;
+
+    private final Map<Integer, IStoreService> stores;
+    private final ForkJoinPool pool;
+
+    // Constructor
+    public StoreRegistry() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public StoreRegistry(ForkJoinPool pool) {
+        this.stores = new ConcurrentHashMap<>();
+        this.pool = pool;
+    }
+
+    public void register(IStoreService store) {
+        IStoreService existing = stores.putIfAbsent(store.getId(), store);
+        if (existing != null && existing != store) {
+            throw new IllegalArgumentException("A store with ID " + store.getId() + " is already registered.");
+        }
+    }
+
+    public IStoreService unregister(int storeId) {
+        return stores.remove(storeId);
+    }
+
+    public IStoreService findStore(int storeId) throws StoreNotFoundException {
+        IStoreService store = stores.get(storeId);
+        if (store == null) {
+            throw new StoreNotFoundException(storeId);
+        }
+        return store;
+    }
+
+    public boolean contains(int storeId) {
+        return stores.containsKey(storeId);
+    }
+
+    public Collection<IStoreService> getStores() {
+        return Collections.unmodifiableCollection(stores.values());
+    }
+
+    public int size() {
+        return stores.size();
+    }
+
+    // Chain-wide aggregations
+    public BigDecimal calculateRevenue() {
+        return aggregate(IStoreService::calculateRevenue, BigDecimal::add, BigDecimal.ZERO);
+    }
+
+    public BigDecimal calculateTotalDeliveryCost() {
+        return aggregate(IStoreService::calculateTotalDeliveryCost, BigDecimal::add, BigDecimal.ZERO);
+    }
+
+    public BigDecimal calculateMonthlySalaries() {
+        return aggregate(IStoreService::calculateMonthlySalaries, BigDecimal::add, BigDecimal.ZERO);
+    }
+
+    public BigDecimal calculatePureRevenue() {
+        return calculateReport().getPureRevenue();
+    }
+
+    // All totals in one pass over the stores
+    public ChainReport calculateReport() {
+        return aggregate(ChainReport::of, ChainReport::combine, ChainReport.EMPTY);
+    }
+
+    public <T> T aggregate(Function<IStoreService, T> perStore, BinaryOperator<T> combiner, T identity) {
+        IStoreService[] snapshot = stores.values().toArray(new IStoreService[0]);
+        return pool.invoke(new AggregateTask<>(snapshot, 0, snapshot.length, perStore, combiner, identity));
+    }
+    // -----------------
+
+    // Loads a receipt directory against the registered stores and adds every receipt to its store
+    public ReceiptLoadResult loadReceipts(File receiptDir) throws NoReceiptFilesFoundException {
+        ReceiptLoadResult result = ReceiptFileManager.loadReceipts(receiptDir, stores.values());
+
+        for (Receipt receipt : result.getReceipts()) {
+            IStoreService store = stores.get(receipt.getStoreId());
+            if (store != null) {
+                store.getReceipts().add(receipt);
+            }
+        }
+        return result;
+    }
+
+    // ForkJoinTask is Serializable, these tasks only ever live inside one aggregate call
+    @SuppressWarnings("serial")
+    private static final class AggregateTask<T> extends RecursiveTask<T> {
+        private final IStoreService[] stores;
+        private final int from;
+        private final int to;
+        private final Function<IStoreService, T> perStore;
+        private final BinaryOperator<T> combiner;
+        private final T identity;
+
+        AggregateTask(IStoreService[] stores, int from, int to, Function<IStoreService, T> perStore,
+                      BinaryOperator<T> combiner, T identity) {
+            this.stores = stores;
+            this.from = from;
+            this.to = to;
+            this.perStore = perStore;
+            this.combiner = combiner;
+            this.identity = identity;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                T result = identity;
+                for (int i = from; i < to; i++) {
+                    result = combiner.apply(result, perStore.apply(stores[i]));
+                }
+                return result;
+            }
+
+            int middle = (from + to) >>> 1;
+            AggregateTask<T> left = new AggregateTask<>(stores, from, middle, perStore, combiner, identity);
+            AggregateTask<T> right = new AggregateTask<>(stores, middle, to, perStore, combiner, identity);
+            left.fork();
+            T rightResult = right.compute();
+            return combiner.apply(left.join(), rightResult);
+        }
+    }
+}
@@ -12,9 +12,14 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
 
 public class StoreServiceImp implements IStoreService {
     public Store store;
@@ -42,6 +47,27 @@ public class StoreServiceImp implements IStoreService {
         return store.getMarkupPercentages();
     }
 
+    // Logged by the store before it applies the change
+    @Override
+    public void setMarkupPercentage(CommodityCategory category, BigDecimal percentage) {
+        store.setMarkupPercentage(category, percentage);
+    }
+
+    @Override
+    public void setExpiryDiscount(BigDecimal percentage, int thresholdDays) {
+        store.setExpiryDiscount(percentage, thresholdDays);
+    }
+
+    @Override
+    public IStoreMutationLog getMutationLog() {
+        return store.getMutationLog();
+    }
+
+    @Override
+    public void setMutationLog(IStoreMutationLog mutationLog) {
+        store.setMutationLog(mutationLog);
+    }
+
     @Override
     public BigDecimal getRevenue() {
         return store.getRevenue();
@@ -52,6 +78,11 @@ public class StoreServiceImp implements IStoreService {
         store.setRevenue(revenue);
     }
 
+    @Override
+    public void addRevenue(BigDecimal amount) {
+        store.addRevenue(amount);
+    }
+
     @Override
     public List<Commodity> getAvailableCommodities() {
         return store.getAvailableCommodities();
@@ -62,16 +93,99 @@ public class StoreServiceImp implements IStoreService {
         return store.getDeliveredCommodities();
     }
 
+    @Override
+    public Commodity findAvailableCommodity(int id) {
+        return store.getAvailableInventory().findById(id);
+    }
+
+    @Override
+    public Commodity findDeliveredCommodity(int id) {
+        return store.getDeliveredInventory().findById(id);
+    }
+
+    @Override
+    public StoreTotals getRunningTotals() {
+        return store.getRunningTotals();
+    }
+
     @Override
     public List<CustomDataType> getSoldCommodities() {
         return store.getSoldCommodities();
     }
 
+    @Override
+    public SoldLedger getSoldLedger() {
+        return store.getSoldLedger();
+    }
+
+    // The ledger keeps the period's revenue itself, a merged line counts at its first price
+    @Override
+    public void recordSale(CustomDataType purchased, CommodityCategory category) {
+        store.getSoldLedger().record(purchased.getId(), purchased.getName(), category,
+                purchased.getQuantity(), purchased.getPrice());
+    }
+
+    // Write-ahead: with a mutation log attached this returns once the sale is durable. Call it before the
+    // sale touches the ledger, revenue or receipts, a StoreLogWriteRException then leaves them as they were.
+    @Override
+    public void logSale(Receipt receipt) {
+        IStoreMutationLog log = store.getMutationLog();
+        if (log != null) {
+            log.logSale(receipt);
+        }
+    }
+
+    @Override
+    public void addReceipt(Receipt receipt) {
+        store.getReceipts().add(receipt);
+    }
+
+    // Applies a receipt issued after the last snapshot: its lines leave the stock and go into the ledger,
+    // its total into the revenue. Stock that cannot cover a line is reported and left as it is.
+    @Override
+    public void replayReceipt(Receipt receipt) {
+        for (CustomDataType line : receipt.getPurchasedCommodities()) {
+            Commodity commodity = findAvailableCommodity(line.getId());
+            if (commodity == null || !commodity.tryReserve(line.getQuantity())) {
+                System.err.println("Replaying receipt " + receipt.getId() + " of store " + getId() + ": not enough "
+                        + line.getName() + " in stock, stock left as it is.");
+            }
+            recordSale(line, commodity == null ? null : commodity.getCategory());
+        }
+
+        store.addRevenue(receipt.getTotalCost());
+        store.getReceipts().add(receipt);
+        if (receipt.getId() > store.getReceiptCount()) {
+            store.setReceiptCount(receipt.getId());
+        }
+    }
+
+    // Ends the sales period: returns what was sold and starts the ledger and the revenue over
+    @Override
+    public List<CustomDataType> closeSalesPeriod() {
+        return store.getSoldLedger().snapshotAndReset();
+    }
+
     @Override
     public Set<ICashierService> getCashiers() {
         return store.getCashiers();
     }
 
+    @Override
+    public ICashierService findCashier(int cashierId) {
+        return store.getCashierRoster().find(cashierId);
+    }
+
+    @Override
+    public boolean isCashierHired(int cashierId) {
+        return store.getCashierRoster().isHired(cashierId);
+    }
+
+    @Override
+    public long getRosterVersion() {
+        return store.getCashierRoster().getVersion();
+    }
+
     @Override
     public Set<Receipt> getReceipts() {
         return store.getReceipts();
@@ -82,6 +196,11 @@ public class StoreServiceImp implements IStoreService {
         store.setReceipts(newReceipts);
     }
 
+    @Override
+    public ReceiptQuery queryReceipts() {
+        return store.getReceiptIndex().query();
+    }
+
     @Override
     public int getReceiptCount() {
         return store.getReceiptCount();
@@ -93,6 +212,26 @@ public class StoreServiceImp implements IStoreService {
     }
 
     // Custom
+    @Override
+    public int getCommodityIdCounter() {
+        return store.getCommodityIdCounter();
+    }
+
+    @Override
+    public void setCommodityIdCounter(int commodityIdCounter) {
+        store.setCommodityIdCounter(commodityIdCounter);
+    }
+
+    @Override
+    public int getCashierIdCounter() {
+        return store.getCashierIdCounter();
+    }
+
+    @Override
+    public void setCashierIdCounter(int cashierIdCounter) {
+        store.setCashierIdCounter(cashierIdCounter);
+    }
+
     @Override
     public int getNextCommodityId() {
         return store.getNextCommodityId();
@@ -102,34 +241,231 @@ public class StoreServiceImp implements IStoreService {
     public int getNextCashierId() {
         return store.getNextCashierId();
     }
+
+    @Override
+    public int getNextReceiptId() {
+        return store.getNextReceiptId();
+    }
+
+    @Override
+    public int getNextReceiptId(int tillId) {
+        return store.getNextReceiptId(tillId);
+    }
+
+    @Override
+    public ReceiptIdAllocator getReceiptIdAllocator() {
+        return store.getReceiptIdAllocator();
+    }
+
+    @Override
+    public StampedLock getCheckoutLock() {
+        return store.getCheckoutLock();
+    }
     // -----------------
 
     @Override
     public void addCommodity(Commodity commodity) {
-        if (commodity.getExpiryDate() != null && commodity.getExpiryDate().isBefore(LocalDate.now())) {
-            throw new CommodityExpiredDateRException(commodity.getName(), commodity.getExpiryDate());
+        // Copied once, so a view from an inventory handed back in gives every step below the same values
+        Commodity delivery = new Commodity(commodity);
+        checkDelivery(delivery, LocalDate.now());
+
+        // Held shared like a sale, so a snapshot sees all of the delivery or none of it
+        StampedLock checkoutLock = store.getCheckoutLock();
+        long stamp = checkoutLock.readLock();
+        try {
+            deliver(delivery);
+        } finally {
+            checkoutLock.unlockRead(stamp);
+        }
+    }
+
+    private void deliver(Commodity delivery) {
+        // Logged before it is stocked, so no logged sale can come ahead of the delivery it sold from
+        IStoreMutationLog log = store.getMutationLog();
+        if (log != null) {
+            log.logDelivery(getId(), List.of(delivery));
+        }
+
+        // Merged into an existing entry in the same step as the lookup, so concurrent deliveries all count
+        store.getDeliveredInventory().merge(new Commodity(delivery));
+        // Merged deliveries keep the price of the first one, same as the recomputed total
+        Commodity delivered = findDeliveredCommodity(delivery.getId());
+        store.getRunningTotals().addDelivery(delivered.getDeliveryPrice(), delivery.getQuantity());
+
+        boolean added = store.getAvailableInventory().merge(new Commodity(delivery));
+        // Null if an expiry sweep took it off the shelf in the meantime
+        Commodity available = findAvailableCommodity(delivery.getId());
+        if (available == null) {
+            return;
+        }
+        if (added) {
+            store.getExpiryIndex().add(available);
+        }
+
+        // Price the delivery now so the tills only do a lookup
+        getSellingPrice(available);
+    }
+
+    // Bulk delivery: the whole manifest is checked before anything is stocked, lines with the same id are
+    // merged, and new commodities go into both inventories in one write each. Returns the distinct ids stocked.
+    @Override
+    public int addCommodities(Collection<Commodity> manifest) {
+        LocalDate today = LocalDate.now();
+        List<Commodity> delivery = new ArrayList<>(manifest.size());
+        for (Commodity line : manifest) {
+            Commodity copy = new Commodity(line);
+            checkDelivery(copy, today);
+            delivery.add(copy);
+        }
+
+        StampedLock checkoutLock = store.getCheckoutLock();
+        long stamp = checkoutLock.readLock();
+        try {
+            IStoreMutationLog log = store.getMutationLog();
+            if (log != null) {
+                log.logDelivery(getId(), delivery);
+            }
+            return stock(delivery);
+        } finally {
+            checkoutLock.unlockRead(stamp);
+        }
+    }
+
+    // Delivery Helpers
+    // Everything a delivery can be refused for is checked before it is logged, so replay never meets it
+    private static void checkDelivery(Commodity line, LocalDate today) {
+        if (line.getDeliveryPrice() == null || line.getQuantity() == null) {
+            throw new IllegalArgumentException("Commodity " + line.getId() + " is delivered without a price or quantity.");
+        }
+        if (line.getExpiryDate() != null && line.getExpiryDate().isBefore(today)) {
+            throw new CommodityExpiredDateRException(line.getName(), line.getExpiryDate());
+        }
+    }
+
+    // Applies a delivery from the mutation log. It was checked when it was made, so goods that
+    // have expired since are stocked anyway and left to the expiry sweep.
+    @Override
+    public int replayDelivery(Collection<Commodity> delivery) {
+        StampedLock checkoutLock = store.getCheckoutLock();
+        long stamp = checkoutLock.readLock();
+        try {
+            return stock(delivery);
+        } finally {
+            checkoutLock.unlockRead(stamp);
         }
+    }
+
+    // Takes the logged removals off the shelf, so a later delivery of the same id is a new entry as it was
+    @Override
+    public void replayRemoval(Collection<Integer> commodityIds) {
+        StampedLock checkoutLock = store.getCheckoutLock();
+        long stamp = checkoutLock.readLock();
+        try {
+            for (int commodityId : commodityIds) {
+                removeFromShelf(commodityId);
+            }
+        } finally {
+            checkoutLock.unlockRead(stamp);
+        }
+    }
 
-        Commodity delivered = helper.findCommodityById(store.getDeliveredCommodities(), commodity.getId());
-        Commodity available = helper.findCommodityById(store.getAvailableCommodities(), commodity.getId());
+    private int stock(Collection<Commodity> manifest) {
+        Map<Integer, Commodity> merged = new LinkedHashMap<>();
+
+        for (Commodity line : manifest) {
+            // The first line of an id decides its price and details, like consecutive addCommodity calls
+            Commodity mergedLine = merged.get(line.getId());
+            if (mergedLine == null) {
+                merged.put(line.getId(), new Commodity(line));
+            } else {
+                mergedLine.setQuantity(mergedLine.getQuantity().add(line.getQuantity()));
+            }
+        }
 
-        if (delivered != null) {
-            delivered.setQuantity(delivered.getQuantity().add(commodity.getQuantity()));
-        } else {
-            store.getDeliveredCommodities().add(new Commodity(commodity));
+        // Each inventory gets its own copies, the merged lines stay as delivered for the totals below
+        List<Commodity> deliveredLines = new ArrayList<>(merged.size());
+        List<Commodity> availableLines = new ArrayList<>(merged.size());
+        for (Commodity line : merged.values()) {
+            deliveredLines.add(new Commodity(line));
+            availableLines.add(new Commodity(line));
         }
 
-        if (available != null) {
-            available.setQuantity(available.getQuantity().add(commodity.getQuantity()));
-        } else {
-            Commodity availableCopy = new Commodity(commodity);
-            store.getAvailableCommodities().add(availableCopy);
+        // Lines for ids already stocked only add their quantity, the rest are inserted in the same write
+        store.getDeliveredInventory().mergeAll(deliveredLines);
+        for (Commodity line : merged.values()) {
+            Commodity delivered = findDeliveredCommodity(line.getId());
+            store.getRunningTotals().addDelivery(delivered.getDeliveryPrice(), line.getQuantity());
         }
+
+        // Index what the inventory stored, a columnar inventory keeps its own view of each line
+        for (Commodity added : store.getAvailableInventory().mergeAll(availableLines)) {
+            store.getExpiryIndex().add(added);
+        }
+        for (Commodity line : merged.values()) {
+            Commodity available = findAvailableCommodity(line.getId());
+            if (available != null) {
+                getSellingPrice(available);
+            }
+        }
+
+        return merged.size();
     }
 
     @Override
     public void hireCashier(ICashierService cashier) {
-        store.getCashiers().add(cashier);
+        IStoreMutationLog log = store.getMutationLog();
+        if (log != null) {
+            log.logHire(getId(), cashier);
+        }
+
+        ICashierService previous = store.getCashierRoster().hire(cashier);
+        if (previous == cashier) {
+            return;
+        }
+        if (previous != null) {
+            store.getRunningTotals().removeSalary(previous.getSalary());
+        }
+        store.getRunningTotals().addSalary(cashier.getSalary());
+    }
+
+    @Override
+    public ICashierService fireCashier(int cashierId) {
+        IStoreMutationLog log = store.getMutationLog();
+        if (log != null) {
+            log.logFire(getId(), cashierId);
+        }
+
+        ICashierService fired = store.getCashierRoster().fire(cashierId);
+        if (fired != null) {
+            store.getRunningTotals().removeSalary(fired.getSalary());
+        }
+        return fired;
+    }
+
+    @Override
+    public SellingPrice getSellingPrice(Commodity commodity) {
+        PriceTable priceTable = store.getPriceTable();
+
+        SellingPrice price = priceTable.find(commodity);
+        if (price != null) {
+            return price;
+        }
+
+        // Read the version first so a pricing change made while computing leaves the entry stale
+        long version = priceTable.getVersion();
+        BigDecimal deliveryPrice = commodity.getDeliveryPrice();
+
+        BigDecimal priceWithMarkup = deliveryPrice.multiply(helper.calculateMarkupMultiplier(this, commodity));
+        BigDecimal baseSellingPrice = priceWithMarkup.setScale(2, RoundingMode.HALF_UP);
+
+        BigDecimal discountPercentage = store.getExpiryDiscountPercentage();
+        BigDecimal discountMultiplier = BigDecimal.ONE.subtract(discountPercentage.divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+        BigDecimal discountedSellingPrice = baseSellingPrice.multiply(discountMultiplier).setScale(2, RoundingMode.HALF_UP);
+
+        price = new SellingPrice(commodity.getId(), deliveryPrice, commodity.getCategory(), version,
+                priceWithMarkup, baseSellingPrice, discountedSellingPrice);
+        priceTable.put(price);
+        return price;
     }
 
     @Override
@@ -141,22 +477,18 @@ public class StoreServiceImp implements IStoreService {
         LocalDate today = LocalDate.now();
         long daysUntilExpiry = ChronoUnit.DAYS.between(today, commodity.getExpiryDate());
 
-        BigDecimal baseSellingPrice = commodity.getDeliveryPrice().multiply(helper.calculateMarkupMultiplier(this, commodity)).setScale(2, RoundingMode.HALF_UP);
+        SellingPrice price = getSellingPrice(commodity);
 
         if (daysUntilExpiry <= store.getExpiryDiscountThresholdDays()) {
-            BigDecimal discountPercentage = store.getExpiryDiscountPercentage();
-            BigDecimal discountMultiplier = BigDecimal.ONE.subtract(discountPercentage.divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
-
-            return baseSellingPrice.multiply(discountMultiplier).setScale(2, RoundingMode.HALF_UP);
+            return price.getDiscountedSellingPrice();
         }
 
-        return baseSellingPrice;
+        return price.getBaseSellingPrice();
     }
 
     @Override
     public Boolean checkForExpired(Commodity commodity) throws CommodityNotFoundException, CommodityExpiredDateRException {
-        Commodity existingCommodity = store.getAvailableCommodities().stream().filter(c ->
-                c.getId() == commodity.getId()).findFirst().orElse(null);
+        Commodity existingCommodity = findAvailableCommodity(commodity.getId());
 
         if (existingCommodity == null) {
             throw new CommodityNotFoundException(commodity.getId());
@@ -167,28 +499,95 @@ public class StoreServiceImp implements IStoreService {
         LocalDate today = LocalDate.now();
 
         if (!commodity.getExpiryDate().isAfter(today)) {
-            store.getAvailableCommodities().removeIf(c -> c.getId() == commodity.getId());
+            StampedLock checkoutLock = store.getCheckoutLock();
+            long stamp = checkoutLock.readLock();
+            try {
+                logRemoval(List.of(commodity.getId()));
+                removeFromShelf(commodity.getId());
+            } finally {
+                checkoutLock.unlockRead(stamp);
+            }
             throw new CommodityExpiredDateRException(commodity.getName(), commodity.getExpiryDate());
         }
 
         return false;
     }
 
+    // Pops everything that expired by today off the expiry index and takes it off the shelf.
+    // Held shared like a sale, so a snapshot sees all of the sweep or none of it.
+    @Override
+    public List<Commodity> removeExpiredCommodities(LocalDate today) {
+        StampedLock checkoutLock = store.getCheckoutLock();
+        long stamp = checkoutLock.readLock();
+        try {
+            return sweep(today);
+        } finally {
+            checkoutLock.unlockRead(stamp);
+        }
+    }
+
+    private List<Commodity> sweep(LocalDate today) {
+        List<Commodity> expired = store.getExpiryIndex().pollExpired(today, this::isStocked);
+
+        List<Integer> expiredIds = new ArrayList<>(expired.size());
+        for (Commodity commodity : expired) {
+            expiredIds.add(commodity.getId());
+        }
+        try {
+            logRemoval(expiredIds);
+        } catch (RuntimeException e) {
+            // Queued again, so the next sweep tries them once more
+            for (Commodity commodity : expired) {
+                store.getExpiryIndex().add(commodity);
+            }
+            throw e;
+        }
+
+        List<Commodity> removed = new ArrayList<>(expired.size());
+        for (Commodity commodity : expired) {
+            Commodity removedCommodity = removeFromShelf(commodity.getId());
+            if (removedCommodity != null) {
+                removed.add(removedCommodity);
+            }
+        }
+        return removed;
+    }
+
+    // Removal Helpers
+    // Logged before the stock goes, like deliveries, so replay removes the same entries in the same order
+    private void logRemoval(List<Integer> commodityIds) {
+        IStoreMutationLog log = store.getMutationLog();
+        if (log != null && !commodityIds.isEmpty()) {
+            log.logRemoval(getId(), commodityIds);
+        }
+    }
+
+    private Commodity removeFromShelf(int commodityId) {
+        Commodity removed = store.getAvailableInventory().remove(commodityId);
+        store.getPriceTable().remove(commodityId);
+        return removed;
+    }
+
+    private boolean isStocked(Commodity commodity) {
+        return store.getAvailableInventory().isStored(commodity);
+    }
+
     @Override
     public BigDecimal calculateTotalDeliveryCost() {
-        return store.getDeliveredCommodities().stream().map(commodity ->
-                commodity.getDeliveryPrice().multiply(commodity.getQuantity())).reduce(BigDecimal.ZERO, BigDecimal::add).setScale(2, RoundingMode.HALF_UP);
+        verifyIfEnabled();
+        return store.getRunningTotals().getDeliveryCost().setScale(2, RoundingMode.HALF_UP);
     }
 
     @Override
     public BigDecimal calculateMonthlySalaries() {
-        return store.getCashiers().stream().map(ICashierService::getSalary).reduce(BigDecimal.ZERO, BigDecimal::add).setScale(2, RoundingMode.HALF_UP);
+        verifyIfEnabled();
+        return store.getRunningTotals().getSalaries().setScale(2, RoundingMode.HALF_UP);
     }
 
     @Override
     public BigDecimal calculateRevenue() {
-        return store.getSoldCommodities().stream().map(commodity ->
-                commodity.getPrice().multiply(commodity.getQuantity())).reduce(BigDecimal.ZERO, BigDecimal::add).setScale(2, RoundingMode.HALF_UP);
+        verifyIfEnabled();
+        return store.getSoldLedger().getTotalRevenue().setScale(2, RoundingMode.HALF_UP);
     }
 
     @Override
@@ -199,4 +598,46 @@ public class StoreServiceImp implements IStoreService {
 
         return revenue.subtract(salaries).subtract(deliveryCosts).setScale(2, RoundingMode.HALF_UP);
     }
+
+    // Recomputes every running total from the collections, reports and corrects any drift
+    @Override
+    public boolean verifyRunningTotals() {
+        StoreTotals totals = store.getRunningTotals();
+        boolean consistent = true;
+
+        BigDecimal deliveryCost = store.getDeliveredInventory().sumDeliveryCost();
+        if (isDrifted("delivery cost", totals.getDeliveryCost(), deliveryCost)) {
+            totals.setDeliveryCost(deliveryCost);
+            consistent = false;
+        }
+
+        BigDecimal salaries = StoreTotals.sumSalaries(store.getCashiers());
+        if (isDrifted("salaries", totals.getSalaries(), salaries)) {
+            totals.setSalaries(salaries);
+            consistent = false;
+        }
+
+        // The ledger puts its own running revenue right while it recomputes
+        SoldLedger.RevenueCheck revenue = store.getSoldLedger().recomputeRevenue();
+        if (isDrifted("revenue", revenue.running(), revenue.recomputed())) {
+            consistent = false;
+        }
+
+        return consistent;
+    }
+
+    private void verifyIfEnabled() {
+        if (store.getRunningTotals().isVerificationEnabled()) {
+            verifyRunningTotals();
+        }
+    }
+
+    private boolean isDrifted(String total, BigDecimal running, BigDecimal recomputed) {
+        if (running.compareTo(recomputed) == 0) {
+            return false;
+        }
+        System.err.println("Running " + total + " of store " + getId() + " drifted: running " + running
+                + ", recomputed " + recomputed + ".");
+        return true;
+    }
 }
\ No newline at end of file
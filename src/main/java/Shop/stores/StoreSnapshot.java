@@ -0,0 +1,335 @@
+package Shop.stores;
+
+import Shop.commodities.Commodity;
+import Shop.commodities.CommodityCategory;
+import Shop.commodities.CustomDataType;
+import Shop.helpers.Money;
+import Shop.receipts.Receipt;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+// Store state in one binary file, so a restarted JVM gets its inventory back without going through
+// deliveries and receipts. Receipts issued after the snapshot are replayed on top.
+// The file is written and read in one buffer through a FileChannel rather than mapped: a mapping stays
+// open until it is collected, and on Windows a mapped file cannot be replaced by the next snapshot.
+//
+// Header (HEADER_BYTES):
+//   int magic, short version, int storeId, long createdEpochMillis,
+//   int commodityIdCounter, int cashierIdCounter, int receiptCount,
+//   byte revenueScale, long revenue, int availableCount, int deliveredCount, int soldCount,
+//   long dictionaryOffset, int dictionaryCount
+// Commodities, available then delivered:
+//   int id, int nameRef, byte category, byte priceScale, long deliveryPrice,
+//   byte quantityScale, long quantity, int expiryEpochDay
+// Sold lines:
+//   int id, int nameRef, byte quantityScale, long quantity, byte priceScale, long price
+// Dictionary at dictionaryOffset:
+//   dictionaryCount x (short length, UTF-8 bytes)
+//
+// Amounts are unscaled longs with their own scale, so values come back exactly as they were.
+// Names are indexes into the dictionary, -1 is a null name. Cashiers are not part of the snapshot,
+// hire them again before replaying receipts.
+public final class StoreSnapshot {
+    private static final int MAGIC = 0x534E4150; // "SNAP"
+    private static final short VERSION = 1;
+
+    private static final int HEADER_BYTES = 4 + 2 + 4 + 8 + 4 + 4 + 4 + 1 + 8 + 4 + 4 + 4 + 8 + 4;
+    private static final int COMMODITY_BYTES = 4 + 4 + 1 + 1 + 8 + 1 + 8 + 4;
+    private static final int SOLD_LINE_BYTES = 4 + 4 + 1 + 8 + 1 + 8;
+
+    private static final byte NO_CATEGORY = -1;
+    private static final int NO_EXPIRY = Integer.MIN_VALUE;
+    private static final int NO_NAME = -1;
+    private static final CommodityCategory[] CATEGORIES = CommodityCategory.values();
+
+    private StoreSnapshot() {
+    }
+
+    // Tills, deliveries and expiry sweeps are held off while the store is read and encoded, so every sale
+    // is either wholly in the snapshot with an id at or below its receipt count, or wholly after it and
+    // replayed. The file is written, forced to disk and moved into place once they are let go again.
+    // With per-till receipt id blocks (ReceiptIdAllocator.setBlockSize) reading the count seals the
+    // allocator: every till's block is retired and the rest of its ids are skipped, so later receipts
+    // get ids above the count.
+    public static void write(Store store, Path file) throws IOException {
+        // Written next to the target and moved over it, a crash mid-write leaves the old snapshot in place
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        ByteBuffer buffer;
+        StampedLock checkoutLock = store.getCheckoutLock();
+        long stamp = checkoutLock.writeLock();
+        try {
+            buffer = encode(store, file);
+        } finally {
+            checkoutLock.unlockWrite(stamp);
+        }
+
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Puts the snapshot's state into the store and returns the receipt count it was taken at
+    public static int restore(Path file, Store store) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Store snapshot is larger than 2 GB: " + file);
+            }
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Store snapshot was cut short: " + file);
+                }
+            }
+            buffer.flip();
+        }
+
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a store snapshot: " + file);
+        }
+        if (buffer.getShort() != VERSION) {
+            throw new IOException("Unsupported store snapshot version: " + file);
+        }
+        int storeId = buffer.getInt();
+        if (storeId != store.getId()) {
+            throw new IOException("Store snapshot " + file + " belongs to store " + storeId + ", not " + store.getId() + ".");
+        }
+
+        buffer.getLong(); // created at
+        int commodityIdCounter = buffer.getInt();
+        int cashierIdCounter = buffer.getInt();
+        int receiptCount = buffer.getInt();
+        int revenueScale = buffer.get();
+        BigDecimal revenue = BigDecimal.valueOf(buffer.getLong(), revenueScale);
+        int availableCount = buffer.getInt();
+        int deliveredCount = buffer.getInt();
+        int soldCount = buffer.getInt();
+        int dictionaryOffset = (int) buffer.getLong();
+        String[] names = readDictionary(buffer, dictionaryOffset, buffer.getInt());
+
+        List<Commodity> available = new ArrayList<>(availableCount);
+        for (int i = 0; i < availableCount; i++) {
+            available.add(getCommodity(buffer, names));
+        }
+        List<Commodity> delivered = new ArrayList<>(deliveredCount);
+        for (int i = 0; i < deliveredCount; i++) {
+            delivered.add(getCommodity(buffer, names));
+        }
+        List<CustomDataType> sold = new ArrayList<>(soldCount);
+        for (int i = 0; i < soldCount; i++) {
+            sold.add(getSoldLine(buffer, names));
+        }
+
+        store.setAvailableCommodities(available);
+        store.setDeliveredCommodities(delivered);
+        store.setSoldCommodities(sold);
+        store.setRevenue(revenue);
+        store.setReceiptCount(receiptCount);
+        store.setCommodityIdCounter(commodityIdCounter);
+        store.setCashierIdCounter(cashierIdCounter);
+        store.getPriceTable().invalidateAll();
+        return receiptCount;
+    }
+
+    // Applies the store's receipts issued after its receipt count, in id order, and returns how many it applied
+    public static int replay(IStoreService store, Collection<Receipt> receipts) {
+        int after = store.getReceiptCount();
+        List<Receipt> pending = new ArrayList<>();
+        for (Receipt receipt : receipts) {
+            if (receipt.getStoreId() == store.getId() && receipt.getId() > after) {
+                pending.add(receipt);
+            }
+        }
+        pending.sort(Comparator.comparingInt(Receipt::getId));
+
+        for (Receipt receipt : pending) {
+            store.replayReceipt(receipt);
+        }
+        return pending.size();
+    }
+
+    // Fills a buffer the size of the file, the caller writes it out
+    private static ByteBuffer encode(Store store, Path file) throws IOException {
+        int receiptCount = store.getReceiptIdAllocator().seal();
+        Money revenue = toMoney(store.getRevenue(), "revenue");
+        List<CustomDataType> sold = store.getSoldCommodities();
+        List<Commodity> available = store.getAvailableCommodities();
+        List<Commodity> delivered = store.getDeliveredCommodities();
+
+        Map<String, Integer> nameRefs = new HashMap<>();
+        List<byte[]> dictionary = new ArrayList<>();
+        long dictionaryBytes = 0;
+        for (String name : names(available, delivered, sold)) {
+            if (name != null && !nameRefs.containsKey(name)) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > 0xFFFF) {
+                    throw new IllegalArgumentException("Commodity name is too long for a store snapshot: " + name.substring(0, 32) + "...");
+                }
+                nameRefs.put(name, dictionary.size());
+                dictionary.add(bytes);
+                dictionaryBytes += 2 + bytes.length;
+            }
+        }
+
+        long dictionaryOffset = HEADER_BYTES + (long) (available.size() + delivered.size()) * COMMODITY_BYTES
+                + (long) sold.size() * SOLD_LINE_BYTES;
+        long fileSize = dictionaryOffset + dictionaryBytes;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Store snapshot would be larger than 2 GB: " + file);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putInt(store.getId());
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putInt(store.getCommodityIdCounter());
+        buffer.putInt(store.getCashierIdCounter());
+        buffer.putInt(receiptCount);
+        buffer.put(toScaleByte(revenue.getScale(), "revenue"));
+        buffer.putLong(revenue.getUnscaled());
+        buffer.putInt(available.size());
+        buffer.putInt(delivered.size());
+        buffer.putInt(sold.size());
+        buffer.putLong(dictionaryOffset);
+        buffer.putInt(dictionary.size());
+
+        for (Commodity commodity : available) {
+            putCommodity(buffer, commodity, nameRefs);
+        }
+        for (Commodity commodity : delivered) {
+            putCommodity(buffer, commodity, nameRefs);
+        }
+        for (CustomDataType line : sold) {
+            putSoldLine(buffer, line, nameRefs);
+        }
+        for (byte[] name : dictionary) {
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+        }
+        return buffer;
+    }
+
+    // Record Helpers
+    private static void putCommodity(ByteBuffer buffer, Commodity commodity, Map<String, Integer> nameRefs) {
+        Money price = toMoney(commodity.getDeliveryPrice(), "deliveryPrice");
+        Money quantity = toMoney(commodity.getQuantity(), "quantity");
+        CommodityCategory category = commodity.getCategory();
+        LocalDate expiryDate = commodity.getExpiryDate();
+
+        buffer.putInt(commodity.getId());
+        buffer.putInt(nameRef(commodity.getName(), nameRefs));
+        buffer.put(category == null ? NO_CATEGORY : (byte) category.ordinal());
+        buffer.put(toScaleByte(price.getScale(), "deliveryPrice"));
+        buffer.putLong(price.getUnscaled());
+        buffer.put(toScaleByte(quantity.getScale(), "quantity"));
+        buffer.putLong(quantity.getUnscaled());
+        buffer.putInt(expiryDate == null ? NO_EXPIRY : Math.toIntExact(expiryDate.toEpochDay()));
+    }
+
+    private static Commodity getCommodity(ByteBuffer buffer, String[] names) {
+        int id = buffer.getInt();
+        String name = name(buffer.getInt(), names);
+        byte category = buffer.get();
+        int priceScale = buffer.get();
+        BigDecimal price = BigDecimal.valueOf(buffer.getLong(), priceScale);
+        int quantityScale = buffer.get();
+        BigDecimal quantity = BigDecimal.valueOf(buffer.getLong(), quantityScale);
+        int expiryEpochDay = buffer.getInt();
+
+        return new Commodity(id, name, category == NO_CATEGORY ? null : CATEGORIES[category], price, quantity,
+                expiryEpochDay == NO_EXPIRY ? null : LocalDate.ofEpochDay(expiryEpochDay));
+    }
+
+    private static void putSoldLine(ByteBuffer buffer, CustomDataType line, Map<String, Integer> nameRefs) {
+        Money quantity = toMoney(line.getQuantity(), "quantity");
+        Money price = toMoney(line.getPrice(), "price");
+
+        buffer.putInt(line.getId());
+        buffer.putInt(nameRef(line.getName(), nameRefs));
+        buffer.put(toScaleByte(quantity.getScale(), "quantity"));
+        buffer.putLong(quantity.getUnscaled());
+        buffer.put(toScaleByte(price.getScale(), "price"));
+        buffer.putLong(price.getUnscaled());
+    }
+
+    private static CustomDataType getSoldLine(ByteBuffer buffer, String[] names) {
+        int id = buffer.getInt();
+        String name = name(buffer.getInt(), names);
+        int quantityScale = buffer.get();
+        BigDecimal quantity = BigDecimal.valueOf(buffer.getLong(), quantityScale);
+        int priceScale = buffer.get();
+        BigDecimal price = BigDecimal.valueOf(buffer.getLong(), priceScale);
+        return new CustomDataType(id, name, quantity, price);
+    }
+
+    private static List<String> names(List<Commodity> available, List<Commodity> delivered, List<CustomDataType> sold) {
+        List<String> names = new ArrayList<>(available.size() + delivered.size() + sold.size());
+        available.forEach(commodity -> names.add(commodity.getName()));
+        delivered.forEach(commodity -> names.add(commodity.getName()));
+        sold.forEach(line -> names.add(line.getName()));
+        return names;
+    }
+
+    private static int nameRef(String name, Map<String, Integer> nameRefs) {
+        return name == null ? NO_NAME : nameRefs.get(name);
+    }
+
+    private static String name(int ref, String[] names) {
+        return ref == NO_NAME ? null : names[ref];
+    }
+
+    private static String[] readDictionary(ByteBuffer buffer, int offset, int count) {
+        String[] names = new String[count];
+        int position = offset;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getShort(position) & 0xFFFF;
+            position += 2;
+
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += length;
+        }
+        return names;
+    }
+
+    private static Money toMoney(BigDecimal value, String field) {
+        try {
+            return Money.of(value);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(field + " " + value + " does not fit a store snapshot.", e);
+        }
+    }
+
+    private static byte toScaleByte(int scale, String field) {
+        if (scale > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException(field + " has too many decimals for a store snapshot (scale " + scale + ").");
+        }
+        return (byte) scale;
+    }
+}
@@ -0,0 +1,85 @@
+package Shop.stores;
+
+import Shop.cashiers.ICashierService;
+import Shop.commodities.Commodity;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+// Running sums behind calculateTotalDeliveryCost and calculateMonthlySalaries. They are bumped as
+// deliveries and hires happen so the reports do not walk the collections. Revenue is not kept here,
+// the sold ledger keeps its own total. Anything that edits the collections behind the store's back (setting a price or salary directly)
+// makes them drift, StoreServiceImp.verifyRunningTotals recomputes and reports that.
+public class StoreTotals {
+    private final Object deliveryLock = new Object();
+    private final Object salariesLock = new Object();
+
+    private BigDecimal deliveryCost = BigDecimal.ZERO;
+    private BigDecimal salaries = BigDecimal.ZERO;
+
+    private volatile boolean verificationEnabled;
+
+    // Getters / Setters
+    public BigDecimal getDeliveryCost() {
+        synchronized (deliveryLock) {
+            return deliveryCost;
+        }
+    }
+
+    public void setDeliveryCost(BigDecimal deliveryCost) {
+        synchronized (deliveryLock) {
+            this.deliveryCost = deliveryCost;
+        }
+    }
+
+    public BigDecimal getSalaries() {
+        synchronized (salariesLock) {
+            return salaries;
+        }
+    }
+
+    public void setSalaries(BigDecimal salaries) {
+        synchronized (salariesLock) {
+            this.salaries = salaries;
+        }
+    }
+
+    // When on, every report recomputes from scratch and compares
+    public boolean isVerificationEnabled() {
+        return verificationEnabled;
+    }
+
+    public void setVerificationEnabled(boolean verificationEnabled) {
+        this.verificationEnabled = verificationEnabled;
+    }
+    // -----------------
+
+    public void addDelivery(BigDecimal deliveryPrice, BigDecimal quantity) {
+        BigDecimal amount = deliveryPrice.multiply(quantity);
+        synchronized (deliveryLock) {
+            deliveryCost = deliveryCost.add(amount);
+        }
+    }
+
+    public void addSalary(BigDecimal salary) {
+        synchronized (salariesLock) {
+            salaries = salaries.add(salary);
+        }
+    }
+
+    public void removeSalary(BigDecimal salary) {
+        synchronized (salariesLock) {
+            salaries = salaries.subtract(salary);
+        }
+    }
+
+    // Full recomputation, the same reduce the reports used to run on every call
+    public static BigDecimal sumDeliveryCost(Collection<Commodity> deliveredCommodities) {
+        return deliveredCommodities.stream().map(commodity ->
+                commodity.getDeliveryPrice().multiply(commodity.getQuantity())).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    public static BigDecimal sumSalaries(Collection<ICashierService> cashiers) {
+        return cashiers.stream().map(ICashierService::getSalary).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
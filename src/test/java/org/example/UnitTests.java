@@ -7,25 +7,75 @@ import Shop.cashiers.ICashierService;
 import Shop.commodities.Commodity;
 import Shop.commodities.CommodityCategory;
 import Shop.commodities.CustomDataType;
+import Shop.exceptions.CashierNotHiredRException;
 import Shop.exceptions.CommodityExpiredDateRException;
+import Shop.exceptions.CommodityNotFoundException;
 import Shop.exceptions.InsufficientFundsException;
 import Shop.exceptions.InsufficientQuantityRException;
+import Shop.exceptions.StoreLogWriteRException;
+import Shop.helpers.AsyncReceiptWriter;
+import Shop.helpers.BinaryReceiptReader;
+import Shop.helpers.BinaryReceiptWriter;
+import Shop.helpers.DeliveryManifestReader;
+import Shop.helpers.IReceiptStorage;
+import Shop.helpers.JsonFileReceiptStorage;
+import Shop.helpers.Money;
+import Shop.helpers.ReceiptExportResult;
+import Shop.helpers.ReceiptExporter;
 import Shop.helpers.ReceiptFileManager;
+import Shop.helpers.ReceiptJournal;
+import Shop.helpers.ReceiptLoadResult;
 import Shop.helpers.ReceiptPrinter;
+import Shop.helpers.ReceiptSerializationContext;
+import Shop.helpers.StoreWriteAheadLog;
+import Shop.metrics.MetricsRegistry;
+import Shop.metrics.MetricsSnapshot;
 import Shop.receipts.Receipt;
+import Shop.receipts.ReceiptRecord;
+import Shop.simulation.CheckoutSimulator;
+import Shop.simulation.SimulationConfig;
+import Shop.simulation.SimulationReport;
+import Shop.simulation.ZipfDistribution;
+import Shop.stores.ColumnarCommodityInventory;
+import Shop.stores.IStoreMutationLog;
 import Shop.stores.IStoreService;
+import Shop.stores.ReceiptIdAllocator;
+import Shop.stores.SoldLedger;
 import Shop.stores.Store;
+import Shop.stores.StoreRegistry;
 import Shop.stores.StoreServiceHelper;
 import Shop.stores.StoreServiceImp;
+import Shop.stores.StoreSnapshot;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -93,6 +143,42 @@ public class UnitTests {
     }
 
 
+    @Test
+    public void firedCashierCannotSell() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        StoreServiceHelper storeHelper = new StoreServiceHelper();
+        IStoreService store = new StoreServiceImp(storeData, storeHelper);
+
+        // Cashier
+        Cashier cashier = new Cashier("Bob", store.getNextCashierId(), BigDecimal.valueOf(10), store);
+        ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodity
+        Commodity commodity = new Commodity(store.getNextCommodityId(), "Commodity", CommodityCategory.NONEATABLE,
+                BigDecimal.valueOf(1), BigDecimal.valueOf(10), null);
+        store.addCommodity(commodity);
+
+        List<CustomDataType> cart = List.of(new CustomDataType(commodity.getId(), commodity.getName(),
+                BigDecimal.valueOf(1), BigDecimal.ZERO));
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+
+        // Test
+        long version = store.getRosterVersion();
+        assertSame(cashierService, store.fireCashier(cashierService.getId()));
+        assertTrue(store.getRosterVersion() > version);
+        assertFalse(store.isCashierHired(cashierService.getId()));
+        assertFalse(store.getCashiers().contains(cashierService));
+        assertEquals(0, store.calculateMonthlySalaries().compareTo(BigDecimal.ZERO));
+
+        assertThrows(CashierNotHiredRException.class, () -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+
+        store.hireCashier(cashierService);
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+    }
+
     // Commodity
     @Test
     public void addingCommodityToStore() {
@@ -141,6 +227,34 @@ public class UnitTests {
         assertEquals(BigDecimal.valueOf(20), store.getDeliveredCommodities().get(0).getQuantity());
     }
 
+    @Test
+    public void findAndRemoveCommodityThroughInventoryIndex() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        StoreServiceHelper storeHelper = new StoreServiceHelper();
+        IStoreService store = new StoreServiceImp(storeData, storeHelper);
+
+        // Commodities
+        Commodity apple = new Commodity(store.getNextCommodityId(), "Apple", CommodityCategory.EATABLE,
+                BigDecimal.valueOf(1), BigDecimal.valueOf(10), LocalDate.now().plusDays(1));
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                BigDecimal.valueOf(2), BigDecimal.valueOf(5), null);
+        store.addCommodity(apple);
+        store.addCommodity(soap);
+
+        // Test
+        assertEquals("Soap", store.findAvailableCommodity(soap.getId()).getName());
+        assertEquals("Apple", store.findDeliveredCommodity(apple.getId()).getName());
+
+        apple.setExpiryDate(LocalDate.now().minusDays(1));
+        assertThrows(CommodityExpiredDateRException.class, () -> store.checkForExpired(apple));
+
+        assertNull(store.findAvailableCommodity(apple.getId()));
+        assertEquals(1, store.getAvailableCommodities().size());
+        assertEquals("Soap", store.findAvailableCommodity(soap.getId()).getName());
+    }
+
     @Test
     public void sellCommodity() {
         // Store
@@ -233,6 +347,48 @@ public class UnitTests {
         System.out.println("Caught expected exception: " + exception.getMessage());
     }
 
+    @Test
+    public void failedSaleLeavesStockAndSoldCommoditiesUntouched() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        StoreServiceHelper storeHelper = new StoreServiceHelper();
+        IStoreService store = new StoreServiceImp(storeData, storeHelper);
+
+        // Cashier
+        Cashier cashier = new Cashier("Bob", store.getNextCashierId(), BigDecimal.valueOf(10), store);
+        CashierServiceHelper helper = new CashierServiceHelper();
+        ICashierService cashierService = new CashierServiceImp(cashier, helper);
+        store.hireCashier(cashierService);
+
+        // Commodities
+        Commodity apple = new Commodity(store.getNextCommodityId(), "Apple", CommodityCategory.EATABLE,
+                BigDecimal.valueOf(1), BigDecimal.valueOf(10), LocalDate.now().plusDays(5));
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                BigDecimal.valueOf(100), BigDecimal.valueOf(5), null);
+        store.addCommodity(apple);
+        store.addCommodity(soap);
+
+        // Not enough money for the second line
+        List<CustomDataType> expensiveCart = List.of(
+                new CustomDataType(apple.getId(), apple.getName(), BigDecimal.valueOf(2), null),
+                new CustomDataType(soap.getId(), soap.getName(), BigDecimal.valueOf(1), null));
+        assertThrows(InsufficientFundsException.class, () -> cashierService.sellCommodities(expensiveCart, BigDecimal.valueOf(10)));
+
+        // Each line fits on its own, both together do not
+        List<CustomDataType> oversoldCart = List.of(
+                new CustomDataType(apple.getId(), apple.getName(), BigDecimal.valueOf(6), null),
+                new CustomDataType(apple.getId(), apple.getName(), BigDecimal.valueOf(6), null));
+        assertThrows(InsufficientQuantityRException.class, () -> cashierService.sellCommodities(oversoldCart, BigDecimal.valueOf(100)));
+
+        // Test
+        assertEquals(BigDecimal.valueOf(10), store.findAvailableCommodity(apple.getId()).getQuantity());
+        assertEquals(BigDecimal.valueOf(5), store.findAvailableCommodity(soap.getId()).getQuantity());
+        assertTrue(store.getSoldCommodities().isEmpty());
+        assertEquals(0, store.getReceiptCount());
+        assertEquals(0, store.getRevenue().compareTo(BigDecimal.ZERO));
+    }
+
     @Test
     public void deliveredCommoditiesRemainUnchangedAfterSelling() {
         // Store
@@ -290,6 +446,272 @@ public class UnitTests {
         System.out.println("Caught expected exception: " + exception.getMessage());
     }
 
+    @Test
+    public void sweepExpiredCommodities() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        StoreServiceHelper storeHelper = new StoreServiceHelper();
+        IStoreService store = new StoreServiceImp(storeData, storeHelper);
+
+        // Commodities
+        Commodity apple = new Commodity(store.getNextCommodityId(), "Apple", CommodityCategory.EATABLE,
+                BigDecimal.valueOf(1), BigDecimal.valueOf(10), LocalDate.now().plusDays(1));
+        Commodity milk = new Commodity(store.getNextCommodityId(), "Milk", CommodityCategory.EATABLE,
+                BigDecimal.valueOf(2), BigDecimal.valueOf(10), LocalDate.now().plusDays(2));
+        Commodity rice = new Commodity(store.getNextCommodityId(), "Rice", CommodityCategory.EATABLE,
+                BigDecimal.valueOf(3), BigDecimal.valueOf(10), LocalDate.now().plusDays(30));
+        store.addCommodity(apple);
+        store.addCommodity(milk);
+        store.addCommodity(rice);
+
+        // Apple goes off on the shelf
+        Commodity shelvedApple = store.findAvailableCommodity(apple.getId());
+        shelvedApple.setExpiryDate(LocalDate.now().minusDays(1));
+        storeData.getExpiryIndex().reschedule(shelvedApple);
+
+        List<Commodity> expired = store.removeExpiredCommodities(LocalDate.now());
+        assertEquals(1, expired.size());
+        assertEquals(apple.getId(), expired.get(0).getId());
+        assertNull(store.findAvailableCommodity(apple.getId()));
+
+        // Milk is inside the discount window, rice is not
+        assertEquals(new BigDecimal("1.98"), store.applyExpiryDiscount(store.findAvailableCommodity(milk.getId())));
+        assertEquals(new BigDecimal("3.30"), store.applyExpiryDiscount(store.findAvailableCommodity(rice.getId())));
+
+        // Nothing new the second time round
+        assertTrue(store.removeExpiredCommodities(LocalDate.now()).isEmpty());
+        assertEquals(2, storeData.getExpiryIndex().size());
+    }
+
+    @Test
+    public void columnarInventorySellsAndSweepsLikeTheDefault() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3, ColumnarCommodityInventory::new);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        Cashier cashier = new Cashier("Bob", store.getNextCashierId(), BigDecimal.valueOf(10), store);
+        ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodities, soap delivered twice
+        Commodity apple = new Commodity(store.getNextCommodityId(), "Apple", CommodityCategory.EATABLE,
+                new BigDecimal("1.00"), BigDecimal.valueOf(10), LocalDate.now().plusDays(1));
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                new BigDecimal("2.50"), new BigDecimal("4.5"), null);
+        store.addCommodity(apple);
+        store.addCommodity(soap);
+        store.addCommodity(soap);
+
+        List<CustomDataType> cart = List.of(new CustomDataType(soap.getId(), soap.getName(), new BigDecimal("1.5"), null));
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+
+        // Test
+        Commodity shelvedSoap = store.findAvailableCommodity(soap.getId());
+        assertEquals("Soap", shelvedSoap.getName());
+        assertEquals(new BigDecimal("7.5"), shelvedSoap.getQuantity());
+        assertEquals(shelvedSoap, store.findAvailableCommodity(soap.getId()));
+        assertEquals(new BigDecimal("32.50"), store.calculateTotalDeliveryCost());
+        assertEquals(new BigDecimal("4.13"), store.calculateRevenue());
+        assertTrue(store.verifyRunningTotals());
+
+        // Apple goes off on the shelf, the old view goes stale once it is removed
+        Commodity shelvedApple = store.findAvailableCommodity(apple.getId());
+        shelvedApple.setExpiryDate(LocalDate.now().minusDays(1));
+        storeData.getExpiryIndex().reschedule(shelvedApple);
+
+        List<Commodity> expired = store.removeExpiredCommodities(LocalDate.now());
+        assertEquals(1, expired.size());
+        assertEquals("Apple", expired.get(0).getName());
+        assertNull(store.findAvailableCommodity(apple.getId()));
+        assertFalse(shelvedApple.tryReserve(BigDecimal.ONE));
+        assertThrows(IllegalStateException.class, shelvedApple::getQuantity);
+        assertEquals(1, store.getAvailableCommodities().size());
+
+        // A batch that would overflow a quantity column changes nothing
+        ColumnarCommodityInventory inventory = new ColumnarCommodityInventory(List.of(new Commodity(1, "Sand",
+                CommodityCategory.NONEATABLE, BigDecimal.ONE, BigDecimal.valueOf(Long.MAX_VALUE), null)));
+        List<Commodity> batch = List.of(
+                new Commodity(2, "Towel", CommodityCategory.NONEATABLE, BigDecimal.ONE, BigDecimal.ONE, null),
+                new Commodity(1, "Sand", CommodityCategory.NONEATABLE, BigDecimal.ONE, BigDecimal.ONE, null));
+        assertThrows(ArithmeticException.class, () -> inventory.mergeAll(batch));
+        assertEquals(1, inventory.size());
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE), inventory.findById(1).getQuantity());
+    }
+
+    @Test
+    public void restoreSnapshotAndReplayLaterReceipts() throws Exception {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        Cashier cashier = new Cashier("Bob", store.getNextCashierId(), BigDecimal.valueOf(10), store);
+        ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodities
+        Commodity apple = new Commodity(store.getNextCommodityId(), "Apple", CommodityCategory.EATABLE,
+                new BigDecimal("1.25"), new BigDecimal("10.5"), LocalDate.now().plusDays(30));
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                new BigDecimal("2.00"), BigDecimal.valueOf(10), null);
+        store.addCommodity(apple);
+        store.addCommodity(soap);
+
+        List<CustomDataType> cart = List.of(
+                new CustomDataType(apple.getId(), apple.getName(), BigDecimal.valueOf(2), null),
+                new CustomDataType(soap.getId(), soap.getName(), BigDecimal.ONE, null));
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+
+        File snapshot = Files.createTempFile("store", ".snapshot").toFile();
+        snapshot.deleteOnExit();
+        StoreSnapshot.write(storeData, snapshot.toPath());
+
+        // Sold after the snapshot, only the receipts know about it
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+
+        // Restarted store
+        Store restoredData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService restored = new StoreServiceImp(restoredData, new StoreServiceHelper());
+        assertEquals(1, StoreSnapshot.restore(snapshot.toPath(), restoredData));
+        restored.hireCashier(cashierService);
+        assertEquals(1, StoreSnapshot.replay(restored, store.getReceipts()));
+
+        // Test
+        assertEquals(new BigDecimal("6.5"), restored.findAvailableCommodity(apple.getId()).getQuantity());
+        assertEquals(BigDecimal.valueOf(8), restored.findAvailableCommodity(soap.getId()).getQuantity());
+        assertEquals(LocalDate.now().plusDays(30), restored.findAvailableCommodity(apple.getId()).getExpiryDate());
+        assertEquals(0, restored.getRevenue().compareTo(store.getRevenue()));
+        assertEquals(store.calculateRevenue(), restored.calculateRevenue());
+        assertEquals(store.calculateTotalDeliveryCost(), restored.calculateTotalDeliveryCost());
+        assertEquals(2, restored.getReceiptCount());
+        assertEquals(store.getNextCommodityId(), restored.getNextCommodityId());
+        assertTrue(restored.verifyRunningTotals());
+
+        // Replaying again changes nothing
+        assertEquals(0, StoreSnapshot.replay(restored, store.getReceipts()));
+    }
+
+    @Test
+    public void recoverStoresFromWriteAheadLog() throws Exception {
+        File logFile = Files.createTempFile("store", ".wal").toFile();
+        logFile.deleteOnExit();
+        StoreWriteAheadLog log = new StoreWriteAheadLog(logFile.toPath());
+
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+        store.setMutationLog(log);
+
+        // Cashier
+        Cashier cashier = new Cashier("Bob", store.getNextCashierId(), BigDecimal.valueOf(10), store);
+        ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodities
+        Commodity apple = new Commodity(store.getNextCommodityId(), "Apple", CommodityCategory.EATABLE,
+                new BigDecimal("1.25"), new BigDecimal("10.5"), LocalDate.now().plusDays(30));
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                new BigDecimal("2.00"), BigDecimal.valueOf(10), null);
+        store.addCommodity(apple);
+        store.addCommodities(List.of(soap));
+        store.setMarkupPercentage(CommodityCategory.EATABLE, BigDecimal.valueOf(20));
+        storeData.setNonEatableMarkupPercentage(BigDecimal.valueOf(30));
+        storeData.setExpiryDiscountPercentage(BigDecimal.valueOf(25));
+
+        List<CustomDataType> cart = List.of(
+                new CustomDataType(apple.getId(), apple.getName(), BigDecimal.valueOf(2), null),
+                new CustomDataType(soap.getId(), soap.getName(), BigDecimal.ONE, null));
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+
+        // Milk goes off and is swept, the next milk delivery is a new entry
+        Commodity milk = new Commodity(store.getNextCommodityId(), "Milk", CommodityCategory.EATABLE,
+                new BigDecimal("0.90"), BigDecimal.valueOf(6), LocalDate.now().plusDays(2));
+        store.addCommodity(milk);
+        Commodity shelvedMilk = store.findAvailableCommodity(milk.getId());
+        shelvedMilk.setExpiryDate(LocalDate.now().minusDays(1));
+        storeData.getExpiryIndex().reschedule(shelvedMilk);
+        assertEquals(1, store.removeExpiredCommodities(LocalDate.now()).size());
+        store.addCommodity(new Commodity(milk.getId(), "Milk", CommodityCategory.EATABLE,
+                new BigDecimal("0.90"), BigDecimal.valueOf(3), LocalDate.now().plusDays(5)));
+
+        // The cashier leaves after the sale, the sale is still replayed
+        store.fireCashier(cashier.getId());
+        log.close();
+
+        // A record cut off by a crash
+        Files.write(logFile.toPath(), new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        // Restarted store
+        IStoreService restored = new StoreServiceImp(new Store(1, "Store", BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), BigDecimal.valueOf(10), 3), new StoreServiceHelper());
+        StoreRegistry registry = new StoreRegistry();
+        registry.register(restored);
+
+        StoreWriteAheadLog reopened = new StoreWriteAheadLog(logFile.toPath());
+        assertEquals(11, reopened.recover(registry));
+
+        // Test
+        assertEquals(new BigDecimal("8.5"), restored.findAvailableCommodity(apple.getId()).getQuantity());
+        assertEquals(BigDecimal.valueOf(3), restored.findAvailableCommodity(milk.getId()).getQuantity());
+        assertEquals(LocalDate.now().plusDays(5), restored.findAvailableCommodity(milk.getId()).getExpiryDate());
+        assertEquals(BigDecimal.valueOf(9), restored.findAvailableCommodity(soap.getId()).getQuantity());
+        assertEquals(0, restored.getMarkupPercentages().get(CommodityCategory.EATABLE).compareTo(BigDecimal.valueOf(20)));
+        assertEquals(0, restored.getMarkupPercentages().get(CommodityCategory.NONEATABLE).compareTo(BigDecimal.valueOf(30)));
+        assertEquals(new BigDecimal("1.13"),
+                restored.getSellingPrice(restored.findAvailableCommodity(apple.getId())).getDiscountedSellingPrice());
+        assertEquals(0, restored.getRevenue().compareTo(store.getRevenue()));
+        assertEquals(store.calculateTotalDeliveryCost(), restored.calculateTotalDeliveryCost());
+        assertEquals(1, restored.getReceiptCount());
+        assertTrue(restored.getCashiers().isEmpty());
+        assertEquals(store.getNextCommodityId(), restored.getNextCommodityId());
+        assertTrue(restored.verifyRunningTotals());
+
+        // Recovering into a store that already logs is refused
+        restored.setMutationLog(reopened);
+        assertThrows(IllegalStateException.class, () -> reopened.recover(registry));
+        reopened.close();
+    }
+
+    @Test
+    public void deliverManifestInBatches() throws Exception {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Manifest, apple is listed twice
+        File manifest = Files.createTempFile("manifest", ".json").toFile();
+        Files.writeString(manifest.toPath(), "[" +
+                "{\"id\":1,\"name\":\"Apple\",\"category\":\"EATABLE\",\"deliveryPrice\":1.10,\"quantity\":4," +
+                "\"expiryDate\":\"" + LocalDate.now().plusDays(10) + "\"}," +
+                "{\"id\":2,\"name\":\"Soap\",\"category\":\"NONEATABLE\",\"deliveryPrice\":2,\"quantity\":3}," +
+                "{\"id\":1,\"name\":\"Apple\",\"category\":\"EATABLE\",\"deliveryPrice\":1.10,\"quantity\":6," +
+                "\"expiryDate\":\"" + LocalDate.now().plusDays(10) + "\"}]");
+
+        // Test
+        assertEquals(3, DeliveryManifestReader.deliver(manifest, store, 2));
+        assertEquals(new BigDecimal("10"), store.findAvailableCommodity(1).getQuantity());
+        assertEquals(new BigDecimal("10"), store.findDeliveredCommodity(1).getQuantity());
+        assertEquals(new BigDecimal("3"), store.findAvailableCommodity(2).getQuantity());
+        assertEquals(new BigDecimal("17.00"), store.calculateTotalDeliveryCost());
+        assertTrue(store.verifyRunningTotals());
+
+        // One expired line rejects the whole manifest
+        Files.writeString(manifest.toPath(), "[" +
+                "{\"id\":3,\"name\":\"Milk\",\"category\":\"EATABLE\",\"deliveryPrice\":1,\"quantity\":1}," +
+                "{\"id\":4,\"name\":\"Old\",\"category\":\"EATABLE\",\"deliveryPrice\":1,\"quantity\":1," +
+                "\"expiryDate\":\"" + LocalDate.now().minusDays(1) + "\"}]");
+
+        assertThrows(CommodityExpiredDateRException.class, () -> DeliveryManifestReader.deliver(manifest, store, 1));
+        assertNull(store.findAvailableCommodity(3));
+    }
+
     @Test
     public void tryToAddAlreadyExpiredCommodity(){
         // Store
@@ -331,6 +753,34 @@ public class UnitTests {
         assertEquals(expectedPrice, store.applyExpiryDiscount(discountableCommodity));
     }
 
+    @Test
+    public void sellingPricesFollowMarkupAndDiscountChanges() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        StoreServiceHelper storeHelper = new StoreServiceHelper();
+        IStoreService store = new StoreServiceImp(storeData, storeHelper);
+
+        // Commodity
+        Commodity commodity = new Commodity(store.getNextCommodityId(), "Apple", CommodityCategory.EATABLE,
+                BigDecimal.valueOf(10), BigDecimal.valueOf(10), LocalDate.now().plusDays(1));
+        store.addCommodity(commodity);
+        Commodity available = store.findAvailableCommodity(commodity.getId());
+
+        assertEquals(1, storeData.getPriceTable().size());
+        assertEquals(new BigDecimal("11.00"), store.getSellingPrice(available).getBaseSellingPrice());
+        assertEquals(new BigDecimal("9.90"), store.applyExpiryDiscount(available));
+
+        storeData.setEatableMarkupPercentage(BigDecimal.valueOf(20));
+        assertEquals(new BigDecimal("12.00"), store.getSellingPrice(available).getBaseSellingPrice());
+
+        storeData.setExpiryDiscountPercentage(BigDecimal.valueOf(50));
+        assertEquals(new BigDecimal("6.00"), store.applyExpiryDiscount(available));
+
+        available.setDeliveryPrice(BigDecimal.valueOf(20));
+        assertEquals(new BigDecimal("24.00"), store.getSellingPrice(available).getBaseSellingPrice());
+    }
+
     @Test
     public void tryToAddCommodityThatIsAboutToExpiry() {
         // Store
@@ -545,6 +995,117 @@ public class UnitTests {
         System.out.println("The cost for monthly salaries is: " + actual);
     }
 
+    @Test
+    public void runningTotalsMatchRecomputedTotals() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        StoreServiceHelper storeHelper = new StoreServiceHelper();
+        IStoreService store = new StoreServiceImp(storeData, storeHelper);
+
+        // Cashier
+        Cashier cashier = new Cashier("Bob", store.getNextCashierId(), BigDecimal.valueOf(10), store);
+        ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+        store.hireCashier(cashierService);
+        store.hireCashier(cashierService);
+
+        // Commodity, delivered twice at different prices
+        Commodity commodity = new Commodity(store.getNextCommodityId(), "Commodity", CommodityCategory.NONEATABLE,
+                new BigDecimal("1.50"), BigDecimal.valueOf(4), null);
+        store.addCommodity(commodity);
+        commodity.setDeliveryPrice(new BigDecimal("2.00"));
+        store.addCommodity(commodity);
+
+        List<CustomDataType> cart = List.of(new CustomDataType(commodity.getId(), commodity.getName(),
+                BigDecimal.valueOf(3), BigDecimal.ZERO));
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+
+        assertTrue(store.verifyRunningTotals());
+        assertEquals(new BigDecimal("10.00"), store.calculateMonthlySalaries());
+        assertEquals(new BigDecimal("12.00"), store.calculateTotalDeliveryCost());
+        assertEquals(new BigDecimal("9.90"), store.calculateRevenue());
+
+        // A salary changed behind the store's back is reported and corrected
+        cashier.setSalary(BigDecimal.valueOf(15));
+        assertFalse(store.verifyRunningTotals());
+        assertEquals(new BigDecimal("15.00"), store.calculateMonthlySalaries());
+        assertTrue(store.verifyRunningTotals());
+    }
+
+    @Test
+    public void soldLedgerMergesLinesAndClosesPeriods() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(20),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        Cashier cashier = new Cashier("Bob", store.getNextCashierId(), BigDecimal.valueOf(10), store);
+        ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodities
+        Commodity apple = new Commodity(store.getNextCommodityId(), "Apple", CommodityCategory.EATABLE,
+                new BigDecimal("1.00"), BigDecimal.valueOf(10), LocalDate.now().plusDays(30));
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                new BigDecimal("2.00"), BigDecimal.valueOf(10), null);
+        store.addCommodity(apple);
+        store.addCommodity(soap);
+
+        List<CustomDataType> cart = List.of(
+                new CustomDataType(apple.getId(), apple.getName(), new BigDecimal("1.5"), null),
+                new CustomDataType(soap.getId(), soap.getName(), BigDecimal.valueOf(2), null));
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+
+        // Test
+        SoldLedger ledger = store.getSoldLedger();
+        assertEquals(2, ledger.size());
+        assertEquals(new BigDecimal("3.0"), ledger.getQuantity(apple.getId()));
+        assertEquals(0, ledger.getRevenue(CommodityCategory.EATABLE).compareTo(new BigDecimal("3.30")));
+        assertEquals(0, ledger.getRevenue(CommodityCategory.NONEATABLE).compareTo(new BigDecimal("9.60")));
+        assertEquals(new BigDecimal("12.90"), store.calculateRevenue());
+        assertTrue(store.verifyRunningTotals());
+
+        // Closing the period hands back the lines and starts over
+        List<CustomDataType> period = store.closeSalesPeriod();
+        assertEquals(2, period.size());
+        assertEquals(BigDecimal.valueOf(4), period.get(1).getQuantity());
+        assertTrue(store.getSoldCommodities().isEmpty());
+        assertEquals(new BigDecimal("0.00"), store.calculateRevenue());
+        assertTrue(store.verifyRunningTotals());
+
+        // Tills recording side by side lose nothing and the lines keep their first-sold order
+        SoldLedger shared = new SoldLedger();
+        ExecutorService tills = Executors.newFixedThreadPool(4);
+        List<Future<?>> runs = new ArrayList<>();
+        for (int till = 0; till < 4; till++) {
+            runs.add(tills.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    shared.record(i % 50, "Line " + (i % 50), CommodityCategory.EATABLE, BigDecimal.ONE,
+                            new BigDecimal("0.10"));
+                }
+            }));
+        }
+        for (Future<?> run : runs) {
+            assertDoesNotThrow(() -> run.get(10, TimeUnit.SECONDS));
+        }
+        tills.shutdown();
+
+        assertEquals(50, shared.size());
+        assertEquals(0, shared.getTotalRevenue().compareTo(new BigDecimal("400.00")));
+        assertEquals(BigDecimal.valueOf(80), shared.getQuantity(7));
+        SoldLedger.RevenueCheck check = shared.recomputeRevenue();
+        assertEquals(0, check.running().compareTo(check.recomputed()));
+
+        SoldLedger ordered = new SoldLedger();
+        ordered.record(9, "Nine", CommodityCategory.EATABLE, BigDecimal.ONE, BigDecimal.ONE);
+        ordered.record(2, "Two", CommodityCategory.EATABLE, BigDecimal.ONE, BigDecimal.ONE);
+        ordered.record(5, "Five", CommodityCategory.EATABLE, BigDecimal.ONE, BigDecimal.ONE);
+        assertEquals(List.of(9, 2, 5), ordered.snapshot().stream().map(CustomDataType::getId).toList());
+    }
+
 
     // Receipts
     @Test
@@ -707,9 +1268,984 @@ public class UnitTests {
     }
 
 
+    @Test
+    public void columnarStoreRestocksFromItsOwnViews() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3, ColumnarCommodityInventory::new);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        List<Collection<Commodity>> logged = new ArrayList<>();
+        store.setMutationLog(new IStoreMutationLog() {
+            public void logDelivery(int storeId, Collection<Commodity> delivery) {
+                logged.add(delivery);
+            }
+
+            public void logSale(Receipt receipt) {
+            }
+
+            public void logRemoval(int storeId, Collection<Integer> commodityIds) {
+            }
+
+            public void logHire(int storeId, ICashierService cashier) {
+            }
+
+            public void logFire(int storeId, int cashierId) {
+            }
+
+            public void logMarkupChange(int storeId, CommodityCategory category, BigDecimal percentage) {
+            }
+
+            public void logExpiryDiscountChange(int storeId, BigDecimal percentage, int thresholdDays) {
+            }
+        });
+
+        // Commodities
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                new BigDecimal("2.50"), BigDecimal.valueOf(4), null);
+        store.addCommodity(soap);
+
+        // Test
+        Commodity shelved = store.getAvailableCommodities().get(0);
+        store.addCommodity(shelved);
+        assertEquals(BigDecimal.valueOf(8), store.findAvailableCommodity(soap.getId()).getQuantity());
+
+        store.addCommodities(List.of(store.findDeliveredCommodity(soap.getId())));
+        assertEquals(BigDecimal.valueOf(16), store.findAvailableCommodity(soap.getId()).getQuantity());
+        assertEquals("Soap", store.findAvailableCommodity(soap.getId()).getName());
+        assertEquals(new BigDecimal("40.00"), store.calculateTotalDeliveryCost());
+        assertTrue(store.verifyRunningTotals());
+
+        // A line without a price is refused before the log sees it
+        Commodity unpriced = new Commodity(soap.getId(), "Soap", CommodityCategory.NONEATABLE, null, BigDecimal.ONE, null);
+        assertThrows(IllegalArgumentException.class, () -> store.addCommodity(unpriced));
+        assertThrows(IllegalArgumentException.class, () -> store.addCommodities(List.of(soap, unpriced)));
+        assertEquals(3, logged.size());
+        assertEquals(BigDecimal.valueOf(16), store.findAvailableCommodity(soap.getId()).getQuantity());
+    }
+
+    @Test
+    public void saleTheLogRefusesLeavesTheStoreUntouched() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        ICashierService cashierService = new CashierServiceImp(new Cashier("Bob", store.getNextCashierId(),
+                BigDecimal.valueOf(10), store), new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodities
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                BigDecimal.ONE, BigDecimal.valueOf(10), null);
+        store.addCommodity(soap);
+
+        // A log whose disk is full
+        store.setMutationLog(new IStoreMutationLog() {
+            public void logDelivery(int storeId, Collection<Commodity> delivery) {
+            }
+
+            public void logSale(Receipt receipt) {
+                throw new StoreLogWriteRException("full.wal", new IOException("No space left on device"));
+            }
+
+            public void logRemoval(int storeId, Collection<Integer> commodityIds) {
+            }
+
+            public void logHire(int storeId, ICashierService cashier) {
+            }
+
+            public void logFire(int storeId, int cashierId) {
+            }
+
+            public void logMarkupChange(int storeId, CommodityCategory category, BigDecimal percentage) {
+            }
+
+            public void logExpiryDiscountChange(int storeId, BigDecimal percentage, int thresholdDays) {
+            }
+        });
+
+        // Test
+        int receiptCount = store.getReceiptCount();
+        List<CustomDataType> cart = List.of(new CustomDataType(soap.getId(), soap.getName(), BigDecimal.valueOf(3), null));
+        assertThrows(StoreLogWriteRException.class, () -> cashierService.sellCommodities(cart, BigDecimal.valueOf(10)));
+        assertEquals(receiptCount, store.getReceiptCount());
+
+        assertEquals(BigDecimal.valueOf(10), store.findAvailableCommodity(soap.getId()).getQuantity());
+        assertTrue(store.getSoldLedger().isEmpty());
+        assertEquals(0, store.getRevenue().signum());
+        assertEquals(new BigDecimal("0.00"), store.calculateRevenue());
+        assertTrue(store.getReceipts().isEmpty());
+        assertTrue(store.verifyRunningTotals());
+    }
+
+    @Test
+    public void snapshotTakenWhileTillsSellReplaysEverySaleOnce() throws Exception {
+        // Store
+        Store storeData = new Store(2, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashiers
+        List<ICashierService> tills = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ICashierService till = new CashierServiceImp(new Cashier("Till " + i, store.getNextCashierId(),
+                    BigDecimal.valueOf(10), store), new CashierServiceHelper());
+            store.hireCashier(till);
+            tills.add(till);
+        }
+
+        // Commodities
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                BigDecimal.ONE, BigDecimal.valueOf(1000), null);
+        store.addCommodity(soap);
+        List<CustomDataType> cart = List.of(new CustomDataType(soap.getId(), soap.getName(), BigDecimal.ONE, null));
+
+        // Test
+        File snapshot = Files.createTempFile("store", ".snapshot").toFile();
+        snapshot.deleteOnExit();
+
+        ExecutorService pool = Executors.newFixedThreadPool(tills.size());
+        try {
+            List<Future<?>> sales = new ArrayList<>();
+            for (ICashierService till : tills) {
+                sales.add(pool.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        till.sellCommodities(cart, BigDecimal.valueOf(10));
+                    }
+                    return null;
+                }));
+            }
+            while (store.getReceiptCount() < 100) {
+                Thread.yield();
+            }
+            StoreSnapshot.write(storeData, snapshot.toPath());
+            for (Future<?> sale : sales) {
+                sale.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Store restoredData = new Store(2, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService restored = new StoreServiceImp(restoredData, new StoreServiceHelper());
+        int receiptCount = StoreSnapshot.restore(snapshot.toPath(), restoredData);
+        assertEquals(400 - receiptCount, StoreSnapshot.replay(restored, store.getReceipts()));
+
+        // Every sale is in the snapshot or replayed on top of it, never both
+        assertEquals(BigDecimal.valueOf(600), restored.findAvailableCommodity(soap.getId()).getQuantity());
+        assertEquals(BigDecimal.valueOf(400), restored.getSoldLedger().getQuantity(soap.getId()));
+        assertEquals(store.calculateRevenue(), restored.calculateRevenue());
+        assertEquals(0, restored.getRevenue().compareTo(store.getRevenue()));
+        assertEquals(400, restored.getReceiptCount());
+
+        // A delivery waits for a snapshot in progress like the tills do
+        ExecutorService courier = Executors.newSingleThreadExecutor();
+        StampedLock checkoutLock = storeData.getCheckoutLock();
+        long stamp = checkoutLock.writeLock();
+        Future<?> delivery;
+        try {
+            delivery = courier.submit(() -> store.addCommodity(soap));
+            Thread.sleep(50);
+            assertFalse(delivery.isDone());
+            assertEquals(BigDecimal.valueOf(1000), store.findDeliveredCommodity(soap.getId()).getQuantity());
+        } finally {
+            checkoutLock.unlockWrite(stamp);
+        }
+        delivery.get();
+        courier.shutdown();
+        assertEquals(BigDecimal.valueOf(2000), store.findDeliveredCommodity(soap.getId()).getQuantity());
+
+        // The restored snapshot is replaced by the next one
+        StoreSnapshot.write(storeData, snapshot.toPath());
+        assertEquals(400, StoreSnapshot.restore(snapshot.toPath(), restoredData));
+        assertEquals(BigDecimal.valueOf(1600), restoredData.getAvailableInventory().findById(soap.getId()).getQuantity());
+    }
+
+    @Test
+    public void binaryReceiptsKeepEveryValueScale() throws Exception {
+        // Store
+        Store storeData = new Store(4, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        ICashierService cashierService = new CashierServiceImp(new Cashier("Bob", store.getNextCashierId(),
+                BigDecimal.valueOf(10), store), new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodities
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                new BigDecimal("1.10"), BigDecimal.valueOf(10), null);
+        store.addCommodity(soap);
+        Receipt first = cashierService.sellCommodities(
+                List.of(new CustomDataType(soap.getId(), soap.getName(), BigDecimal.valueOf(2), null)), BigDecimal.valueOf(10));
+        Receipt second = cashierService.sellCommodities(
+                List.of(new CustomDataType(soap.getId(), soap.getName(), new BigDecimal("1.5"), null)), new BigDecimal("5.00"));
+
+        // Test
+        // Writer, reader and view, more than six decimals are kept and nothing is padded
+        Path file = Files.createTempFile("receipts", ".bin");
+        ReceiptRecord fine = new ReceiptRecord(100, 4, null, 1, null, LocalDateTime.of(2024, 1, 2, 3, 4, 0),
+                List.of(new CustomDataType(7, "Sugar", new BigDecimal("0.1234567"), new BigDecimal("1.10"))),
+                new BigDecimal("0.14"), new BigDecimal("-1E+1"));
+        try (BinaryReceiptWriter writer = new BinaryReceiptWriter(file)) {
+            writer.write(fine);
+            writer.write(first);
+            assertThrows(IllegalArgumentException.class, () -> writer.write(new ReceiptRecord(101, 4, null, 1, null,
+                    LocalDateTime.of(2024, 1, 2, 3, 4, 0), List.of(), new BigDecimal("1E-200"), BigDecimal.ZERO)));
+        }
+
+        BinaryReceiptReader reader = ReceiptFileManager.openBinaryFile(file);
+        List<ReceiptRecord> records = new ArrayList<>();
+        reader.forEach(view -> {
+            if (view.getReceiptId() == fine.getId()) {
+                assertEquals(1234567, view.getLineQuantityUnscaled(0));
+                assertEquals(7, view.getLineQuantityScale(0));
+                assertEquals(110, view.getLinePriceUnscaled(0));
+                assertEquals(2, view.getLinePriceScale(0));
+                assertEquals("Sugar", view.getLineName(0));
+            }
+            records.add(view.toRecord());
+        });
+        assertEquals(2, reader.getRecordCount());
+        assertEquals(2, records.size());
+        assertEquals(new BigDecimal("0.1234567"), records.get(0).getPurchasedCommodities().get(0).getQuantity());
+        assertEquals(new BigDecimal("1.10"), records.get(0).getPurchasedCommodities().get(0).getPrice());
+        assertEquals(new BigDecimal("0.14"), records.get(0).getTotalCost());
+        assertEquals(new BigDecimal("-10"), records.get(0).getChange());
+        assertEquals(LocalDateTime.of(2024, 1, 2, 3, 4, 0), records.get(0).getIssuedDateTime());
+        assertEquals(first.getTotalCost(), records.get(1).getTotalCost());
+
+        // JSON files converted to binary read back with the values the JSON files hold
+        File dir = Files.createTempDirectory("receipts-binary").toFile();
+        for (Receipt receipt : List.of(first, second)) {
+            ReceiptFileManager.writeReceipt(receipt, dir, ReceiptSerializationContext.Style.COMPACT);
+        }
+        Files.writeString(new File(dir, "receipt_4_999.json").toPath(), "{ not json");
+        Path converted = Files.createTempFile("receipts-converted", ".bin");
+        assertEquals(2, ReceiptFileManager.convertJsonToBinary(dir, converted));
+
+        List<ReceiptRecord> convertedRecords = new ArrayList<>();
+        ReceiptFileManager.openBinaryFile(converted).forEach(view -> convertedRecords.add(view.toRecord()));
+        assertEquals(2, convertedRecords.size());
+        for (ReceiptRecord record : convertedRecords) {
+            Receipt receipt = record.getId() == first.getId() ? first : second;
+            CustomDataType sold = receipt.getPurchasedCommodities().get(0);
+            CustomDataType line = record.getPurchasedCommodities().get(0);
+            assertEquals(receipt.getTotalCost(), record.getTotalCost());
+            assertEquals(receipt.getChange(), record.getChange());
+            assertEquals(sold.getQuantity(), line.getQuantity());
+            assertEquals(sold.getPrice(), line.getPrice());
+            assertEquals(sold.getName(), line.getName());
+        }
+    }
+
+    @Test
+    public void receiptJournalRollsSegmentsRecoversAndExports() throws Exception {
+        // Store
+        Store storeData = new Store(7, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+        Set<IStoreService> stores = Set.of(store);
+
+        // Cashier
+        ICashierService cashierService = new CashierServiceImp(new Cashier("Bob", store.getNextCashierId(),
+                BigDecimal.valueOf(10), store), new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodities
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                BigDecimal.ONE, BigDecimal.valueOf(100), null);
+        store.addCommodity(soap);
+        List<Receipt> receipts = new ArrayList<>();
+        for (int i = 0; i < 42; i++) {
+            receipts.add(cashierService.sellCommodities(
+                    List.of(new CustomDataType(soap.getId(), soap.getName(), BigDecimal.ONE, null)), BigDecimal.valueOf(10)));
+        }
+
+        // Small segments, so 40 receipts roll over several of them
+        File dir = Files.createTempDirectory("receipt-journal").toFile();
+        ReceiptJournal journal = new ReceiptJournal(dir, ReceiptJournal.FsyncPolicy.EVERY_BATCH, 2048, 60_000, 1000);
+        for (int i = 0; i < 40; i += 5) {
+            journal.writeBatch(receipts.subList(i, i + 5));
+        }
+
+        // Test
+        assertTrue(journal.getSegmentCount() > 1);
+        assertEquals(40, journal.getRecordCount());
+        Receipt found = journal.readReceipt(7, receipts.get(17).getId(), stores);
+        assertEquals(receipts.get(17).getTotalCost(), found.getTotalCost());
+        assertNull(journal.readReceipt(7, receipts.get(40).getId(), stores));
+        assertNull(journal.readReceipt(8, receipts.get(17).getId(), stores));
+
+        List<Receipt> after = journal.readReceiptsAfter(7, receipts.get(29).getId(), stores);
+        assertEquals(10, after.size());
+        assertEquals(receipts.get(30).getId(), after.get(0).getId());
+        assertEquals(receipts.get(39).getId(), after.get(9).getId());
+        journal.close();
+
+        // A crash mid-record leaves a torn tail, and names that only look like segments are not segments
+        File[] dataFiles = dir.listFiles((d, name) -> name.endsWith(".ndjson"));
+        Arrays.sort(dataFiles);
+        Files.write(dataFiles[dataFiles.length - 1].toPath(), "{\"id\":999,\"sto".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        Files.writeString(dir.toPath().resolve("segment-backup.ndjson"), "not a segment\n");
+        Files.writeString(dir.toPath().resolve("segment-1.ndjson"), "not a segment either\n");
+
+        ReceiptJournal reopened = new ReceiptJournal(dir, ReceiptJournal.FsyncPolicy.ON_SYNC, 2048, 60_000, 1000);
+        assertEquals(dataFiles.length, reopened.getSegmentCount());
+        assertEquals(40, reopened.getRecordCount());
+        assertEquals(40, reopened.readReceipts(stores).size());
+
+        // An interrupted write fails without leaving anything behind, the next one lands where the index expects
+        Thread.currentThread().interrupt();
+        assertThrows(IOException.class, () -> reopened.writeBatch(List.of(receipts.get(40))));
+        assertTrue(Thread.interrupted());
+        reopened.writeBatch(List.of(receipts.get(41)));
+        reopened.sync();
+        assertNull(reopened.readReceipt(7, receipts.get(40).getId(), stores));
+        assertEquals(receipts.get(41).getId(), reopened.readReceipt(7, receipts.get(41).getId(), stores).getId());
+
+        File exportDir = Files.createTempDirectory("receipt-journal-export").toFile();
+        assertEquals(41, reopened.exportToJsonFiles(exportDir));
+        assertTrue(new File(exportDir, "receipt_7_" + receipts.get(41).getId() + ".json").exists());
+        reopened.close();
+
+        ReceiptJournal last = new ReceiptJournal(dir);
+        assertEquals(41, last.getRecordCount());
+        last.close();
+    }
+
+    @Test
+    public void asyncReceiptWriterBatchesAppliesBackpressureAndClosesCleanly() throws Exception {
+        // Storage that holds its first batch until released and records how it was called
+        class RecordingStorage implements IReceiptStorage {
+            final CountDownLatch entered = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<Integer> batchSizes = new ArrayList<>();
+            volatile int syncs;
+            volatile boolean interrupted;
+
+            @Override
+            public void writeBatch(List<Receipt> receipts) throws IOException {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    throw new InterruptedIOException();
+                }
+                interrupted |= Thread.currentThread().isInterrupted();
+                synchronized (batchSizes) {
+                    batchSizes.add(receipts.size());
+                }
+            }
+
+            @Override
+            public void sync() {
+                syncs++;
+            }
+        }
+        RecordingStorage storage = new RecordingStorage();
+        AsyncReceiptWriter writer = new AsyncReceiptWriter(storage, 4, 3, 20);
+
+        // Test
+        writer.submit(new Receipt(1, null, null, LocalDateTime.now(), List.of(), BigDecimal.ONE, BigDecimal.ZERO));
+        assertTrue(storage.entered.await(5, TimeUnit.SECONDS));
+
+        // The flusher is stuck in the storage, so the queue fills up and the tills are held back
+        for (int id = 2; id <= 5; id++) {
+            writer.submit(new Receipt(id, null, null, LocalDateTime.now(), List.of(), BigDecimal.ONE, BigDecimal.ZERO));
+        }
+        assertFalse(writer.trySubmit(new Receipt(6, null, null, LocalDateTime.now(), List.of(), BigDecimal.ONE,
+                BigDecimal.ZERO), 10, TimeUnit.MILLISECONDS));
+        assertEquals(4, writer.getQueueDepth());
+
+        storage.release.countDown();
+        writer.flush();
+        assertEquals(5, writer.getSubmittedCount());
+        assertEquals(5, storage.batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(storage.batchSizes.stream().allMatch(size -> size <= 3));
+        assertTrue(storage.syncs >= 1);
+
+        writer.submit(new Receipt(7, null, null, LocalDateTime.now(), List.of(), BigDecimal.ONE, BigDecimal.ZERO));
+        writer.close();
+        assertEquals(6, storage.batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertFalse(storage.interrupted);
+        assertEquals(0, writer.getFailedCount());
+        assertThrows(IllegalStateException.class, () -> writer.submit(
+                new Receipt(8, null, null, LocalDateTime.now(), List.of(), BigDecimal.ONE, BigDecimal.ZERO)));
+
+        // A batch that fails between flushes is reported by the next flush, and only once
+        class FailingOnceStorage implements IReceiptStorage {
+            final List<Integer> written = new ArrayList<>();
+            boolean failed;
+
+            @Override
+            public synchronized void writeBatch(List<Receipt> receipts) throws IOException {
+                if (!failed) {
+                    failed = true;
+                    throw new IOException("Disk full");
+                }
+                for (Receipt receipt : receipts) {
+                    written.add(receipt.getId());
+                }
+            }
+
+            @Override
+            public void sync() {
+            }
+        }
+        FailingOnceStorage failingStorage = new FailingOnceStorage();
+        AsyncReceiptWriter failingWriter = new AsyncReceiptWriter(failingStorage, 64, 8, 5);
+        failingWriter.submit(new Receipt(1, null, null, LocalDateTime.now(), List.of(), BigDecimal.ONE, BigDecimal.ZERO));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (failingWriter.getFailedCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, failingWriter.getFailedCount());
+        assertThrows(IOException.class, failingWriter::flush);
+        assertDoesNotThrow(failingWriter::flush);
+
+        // Tills racing close() either get their receipt written or are turned away
+        ExecutorService tills = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> accepted = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(4);
+        for (int till = 0; till < 4; till++) {
+            int base = (till + 1) * 100_000;
+            accepted.add(tills.submit(() -> {
+                started.countDown();
+                int count = 0;
+                try {
+                    while (true) {
+                        failingWriter.submit(new Receipt(base + count, null, null, LocalDateTime.now(), List.of(),
+                                BigDecimal.ONE, BigDecimal.ZERO));
+                        count++;
+                    }
+                } catch (IllegalStateException e) {
+                    return count;
+                }
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        failingWriter.close();
+        int acceptedTotal = 0;
+        for (Future<Integer> till : accepted) {
+            acceptedTotal += till.get(5, TimeUnit.SECONDS);
+        }
+        tills.shutdown();
+        assertEquals(acceptedTotal, failingStorage.written.size());
+        assertEquals(acceptedTotal + 1, failingWriter.getSubmittedCount());
+
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        ICashierService cashierService = new CashierServiceImp(new Cashier("Bob", store.getNextCashierId(),
+                BigDecimal.valueOf(10), store), new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodities
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                BigDecimal.ONE, BigDecimal.valueOf(10), null);
+        store.addCommodity(soap);
+        Receipt receipt = cashierService.sellCommodities(
+                List.of(new CustomDataType(soap.getId(), soap.getName(), BigDecimal.ONE, null)), BigDecimal.valueOf(10));
+
+        // Over JSON files a flush forces the files it wrote and their directory
+        File receiptDir = Files.createTempDirectory("receipts-async").toFile();
+        try (AsyncReceiptWriter fileWriter = new AsyncReceiptWriter(new JsonFileReceiptStorage(receiptDir))) {
+            fileWriter.submit(receipt);
+            fileWriter.flush();
+            assertTrue(new File(receiptDir, "receipt_1_" + receipt.getId() + ".json").exists());
+        }
+    }
+
+    @Test
+    public void parallelTillsNeitherOversellNorLoseDeliveries() throws Exception {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        List<ICashierService> tills = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ICashierService till = new CashierServiceImp(new Cashier("Till" + i, store.getNextCashierId(),
+                    BigDecimal.valueOf(10), store), new CashierServiceHelper());
+            store.hireCashier(till);
+            tills.add(till);
+        }
+
+        // Commodities
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                BigDecimal.ONE, BigDecimal.valueOf(1000), null);
+        store.addCommodity(soap);
+        int firstTowelId = store.getNextCommodityId();
+
+        // 8 threads try 1600 sales of 2 soaps against 1000 in stock, and all deliver the first of 200 new ids at once
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<Receipt>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            ICashierService till = tills.get(t % tills.size());
+            results.add(executor.submit(() -> {
+                start.await();
+                List<Receipt> receipts = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    store.addCommodity(new Commodity(firstTowelId + i, "Towel", CommodityCategory.NONEATABLE,
+                            BigDecimal.ONE, BigDecimal.ONE, null));
+                    try {
+                        receipts.add(till.sellCommodities(List.of(
+                                new CustomDataType(soap.getId(), "Soap", BigDecimal.valueOf(2), null)), BigDecimal.valueOf(100)));
+                    } catch (InsufficientQuantityRException e) {
+                        // Sold out
+                    }
+                }
+                return receipts;
+            }));
+        }
+        start.countDown();
+
+        List<Receipt> receipts = new ArrayList<>();
+        for (Future<List<Receipt>> result : results) {
+            receipts.addAll(result.get());
+        }
+        executor.shutdown();
+
+        // Test
+        assertEquals(500, receipts.size());
+        assertEquals(0, store.findAvailableCommodity(soap.getId()).getQuantity().signum());
+        assertEquals(0, BigDecimal.valueOf(1000).compareTo(store.getSoldLedger().getQuantity(soap.getId())));
+
+        Set<Integer> ids = new HashSet<>();
+        for (Receipt receipt : receipts) {
+            ids.add(receipt.getId());
+        }
+        assertEquals(500, ids.size());
+        assertEquals(500, store.getReceipts().size());
+        assertEquals(0, new BigDecimal("1100.00").compareTo(store.getRevenue()));
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals(0, BigDecimal.valueOf(threads).compareTo(store.findAvailableCommodity(firstTowelId + i).getQuantity()));
+            assertEquals(0, BigDecimal.valueOf(threads).compareTo(store.findDeliveredCommodity(firstTowelId + i).getQuantity()));
+        }
+        assertEquals(0, new BigDecimal("2600").compareTo(store.calculateTotalDeliveryCost()));
+    }
+
+    @Test
+    public void exportReceiptLinesPartitionedByStore() throws Exception {
+        File receiptDir = Files.createTempDirectory("receipts-export-source").toFile();
+        int[] linesPerStore = new int[3];
+
+        for (int storeId = 1; storeId <= 2; storeId++) {
+            // Store
+            Store storeData = new Store(storeId, "Store" + storeId, BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                    BigDecimal.valueOf(10), 3);
+            IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+            // Cashier
+            ICashierService cashierService = new CashierServiceImp(new Cashier("Bob", store.getNextCashierId(),
+                    BigDecimal.valueOf(10), store), new CashierServiceHelper());
+            store.hireCashier(cashierService);
+
+            // Commodities
+            Commodity soap = new Commodity(store.getNextCommodityId(), "Soap, lavender", CommodityCategory.NONEATABLE,
+                    new BigDecimal("1.10"), BigDecimal.valueOf(100), null);
+            Commodity towel = new Commodity(store.getNextCommodityId(), "Towel", CommodityCategory.NONEATABLE,
+                    new BigDecimal("4.00"), BigDecimal.valueOf(100), null);
+            store.addCommodities(List.of(soap, towel));
+
+            for (int sale = 0; sale < storeId + 1; sale++) {
+                Receipt receipt = cashierService.sellCommodities(List.of(
+                        new CustomDataType(soap.getId(), soap.getName(), BigDecimal.ONE, null),
+                        new CustomDataType(towel.getId(), towel.getName(), BigDecimal.valueOf(2), null)), BigDecimal.valueOf(100));
+                ReceiptFileManager.writeReceipt(receipt, receiptDir, ReceiptSerializationContext.Style.COMPACT);
+                linesPerStore[storeId] += 2;
+            }
+        }
+        Files.writeString(receiptDir.toPath().resolve("receipt_9_9.json"), "{ broken");
+
+        // Test
+        ReceiptExporter csvExporter = new ReceiptExporter(ReceiptExporter.Format.CSV, ReceiptExporter.Partitioning.STORE, true, 2);
+        ReceiptExportResult csv = csvExporter.export(ReceiptExporter.fromJsonDirectory(receiptDir),
+                Files.createTempDirectory("receipts-export-csv"));
+
+        assertEquals(5, csv.getReceipts());
+        assertEquals(10, csv.getLines());
+        assertEquals(Set.of("receipt_9_9.json"), csv.getSkipped().keySet());
+        assertEquals(2, csv.getFiles().size());
+        for (int storeId = 1; storeId <= 2; storeId++) {
+            assertEquals("receipts-store-" + storeId + ".csv.gz", csv.getFiles().get(storeId - 1).getFileName().toString());
+
+            List<String> rows;
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(csv.getFiles().get(storeId - 1)))) {
+                rows = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+            }
+            assertEquals("receipt_id,store_id,cashier_id,issued_at,commodity_id,commodity_name,quantity,price", rows.get(0));
+            assertEquals(linesPerStore[storeId] + 1, rows.size());
+            assertTrue(rows.get(1).contains("," + storeId + ",1,"));
+            assertTrue(rows.stream().anyMatch(row -> row.contains(",\"Soap, lavender\",1,")));
+        }
+
+        // One file per day, a JSON object per line
+        ReceiptExporter jsonExporter = new ReceiptExporter(ReceiptExporter.Format.NDJSON, ReceiptExporter.Partitioning.DAY, false, 2);
+        ReceiptExportResult json = jsonExporter.export(ReceiptExporter.fromJsonDirectory(receiptDir),
+                Files.createTempDirectory("receipts-export-json"));
+
+        long rows = 0;
+        for (Path file : json.getFiles()) {
+            assertTrue(file.getFileName().toString().matches("receipts-\\d{4}-\\d{2}-\\d{2}\\.ndjson"));
+            for (String row : Files.readAllLines(file)) {
+                assertTrue(row.startsWith("{\"receipt_id\":") && row.endsWith("}"));
+                rows++;
+            }
+        }
+        assertEquals(10, rows);
+        assertEquals(10, json.getLines());
+
+        // Seconds are written even when they are zero
+        CustomDataType line = new CustomDataType(1, "Soap", BigDecimal.ONE, new BigDecimal("1.10"));
+        Path onTheMinute = Files.createTempDirectory("receipts-export-minute");
+        new ReceiptExporter(ReceiptExporter.Format.CSV, ReceiptExporter.Partitioning.NONE, false, 1).export(
+                handler -> handler.accept(new ReceiptRecord(1, 1, "Store1", 1, "Bob",
+                        LocalDateTime.of(2024, 3, 1, 9, 30), List.of(line), new BigDecimal("1.10"), BigDecimal.ZERO)),
+                onTheMinute);
+        assertEquals("1,1,1,2024-03-01T09:30:00,1,Soap,1,1.10", Files.readAllLines(onTheMinute.resolve("receipts.csv")).get(1));
+
+        // A record the writer chokes on fails the export instead of leaving the reading thread blocked
+        List<CustomDataType> brokenLines = new ArrayList<>();
+        brokenLines.add(null);
+        ReceiptExporter failing = new ReceiptExporter(ReceiptExporter.Format.CSV, ReceiptExporter.Partitioning.NONE, false, 1);
+        assertThrows(IOException.class, () -> failing.export(handler -> {
+            for (int i = 0; i < 5000; i++) {
+                handler.accept(new ReceiptRecord(i, 1, "Store1", 1, "Bob", null, brokenLines, null, null));
+            }
+        }, Files.createTempDirectory("receipts-export-failing")));
+    }
+
+    @Test
+    public void receiptFilesRoundTripInBothStyles() throws Exception {
+        // Store
+        Store storeData = new Store(4, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        ICashierService cashierService = new CashierServiceImp(new Cashier("Bob", store.getNextCashierId(),
+                BigDecimal.valueOf(10), store), new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodities
+        Commodity soap = new Commodity(store.getNextCommodityId(), "Soap", CommodityCategory.NONEATABLE,
+                new BigDecimal("1.10"), BigDecimal.valueOf(10), null);
+        store.addCommodity(soap);
+        Receipt receipt = cashierService.sellCommodities(
+                List.of(new CustomDataType(soap.getId(), soap.getName(), BigDecimal.valueOf(2), null)), BigDecimal.valueOf(10));
+
+        File prettyDir = Files.createTempDirectory("receipts-pretty").toFile();
+        File compactDir = Files.createTempDirectory("receipts-compact").toFile();
+        File pretty = ReceiptFileManager.writeReceipt(receipt, prettyDir, ReceiptSerializationContext.Style.PRETTY);
+        File compact = ReceiptFileManager.writeReceipt(receipt, compactDir, ReceiptSerializationContext.Style.COMPACT);
+
+        // Test
+        assertEquals("receipt_4_" + receipt.getId() + ".json", compact.getName());
+        assertTrue(Files.readString(pretty.toPath()).contains("\n"));
+        assertFalse(Files.readString(compact.toPath()).contains("\n"));
+
+        // Streamed through a channel, the same bytes as serialized in memory
+        ReceiptSerializationContext context = ReceiptSerializationContext.getDefault();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        context.write(receipt, ReceiptSerializationContext.Style.COMPACT, Channels.newChannel(bytes));
+        assertEquals(Files.readString(compact.toPath()), bytes.toString());
+
+        for (File dir : List.of(prettyDir, compactDir)) {
+            ReceiptLoadResult result = ReceiptFileManager.loadReceipts(dir, Set.of(store));
+            Receipt loaded = result.getReceipts().iterator().next();
+            assertEquals(receipt.getId(), loaded.getId());
+            assertEquals(receipt.getTotalCost(), loaded.getTotalCost());
+            assertEquals(receipt.getChange(), loaded.getChange());
+        }
+    }
+
+    @Test
+    public void loadReceiptsSkipsBrokenFiles() throws Exception {
+        Set<IStoreService> stores = new HashSet<>();
+
+        // Store
+        Store storeData = new Store(1, "MegaStore", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        StoreServiceHelper storeHelper = new StoreServiceHelper();
+        IStoreService store = new StoreServiceImp(storeData, storeHelper);
+        stores.add(store);
+
+        // Cashier
+        Cashier cashier = new Cashier("Bob", 1, BigDecimal.valueOf(1000), store);
+        CashierServiceHelper helper = new CashierServiceHelper();
+        ICashierService cashierService = new CashierServiceImp(cashier, helper);
+        store.hireCashier(cashierService);
+
+        // Files
+        File receiptDir = Files.createTempDirectory("receipts").toFile();
+        Files.writeString(new File(receiptDir, "receipt_1.json").toPath(),
+                "{\"id\":1,\"storeId\":1,\"cashierId\":1,\"issuedDateTime\":\"2025-05-27 01:10:48\"," +
+                        "\"purchasedCommodities\":[{\"id\":1,\"name\":\"Apple\",\"quantity\":1,\"price\":1.10}]," +
+                        "\"totalCost\":1.10,\"change\":8.90}");
+        Files.writeString(new File(receiptDir, "receipt_2.json").toPath(), "{\"id\":2,\"storeId\":");
+        Files.writeString(new File(receiptDir, "receipt_3.json").toPath(),
+                "{\"id\":3,\"storeId\":99,\"cashierId\":1,\"issuedDateTime\":\"2025-05-27 01:10:48\"," +
+                        "\"purchasedCommodities\":[],\"totalCost\":0,\"change\":0}");
+
+        ReceiptLoadResult result = ReceiptFileManager.loadReceipts(receiptDir, stores);
+
+        // Test
+        assertEquals(1, result.getReceipts().size());
+        assertEquals(2, result.getFailures().size());
+
+        Receipt receipt = result.getReceipts().iterator().next();
+        assertEquals(new BigDecimal("1.10"), receipt.getTotalCost());
+        assertEquals(new BigDecimal("1.10"), receipt.getPurchasedCommodities().get(0).getPrice());
+    }
+
+
+    // Simulation
+    @Test
+    public void checkoutSimulatorReportsEveryAttempt() throws Exception {
+        SimulationConfig config = new SimulationConfig();
+        config.setCustomers(200);
+        config.setCheckoutsPerCustomer(10);
+        config.setSkuCount(50);
+        config.setCashierCount(4);
+        config.setUnderpaymentRate(0.2);
+        config.setUnknownSkuRate(0.01);
+
+        CheckoutSimulator simulator = new CheckoutSimulator(config);
+        SimulationReport report = simulator.run();
+
+        // Test
+        assertEquals(2000, report.getAttempted());
+        assertTrue(report.getCompleted() > 0);
+        assertTrue(report.getErrors().get("InsufficientFundsException") > 0);
+        assertEquals(0, report.getRevenue().compareTo(simulator.getStore().getRevenue()));
+        assertEquals(report.getCompleted(), simulator.getStore().getReceipts().size());
+        assertTrue(report.getLatencyPercentileNanos(0.5) <= report.getLatencyPercentileNanos(0.99));
+        assertTrue(report.getLatencyPercentileNanos(0.99) <= report.getMaxLatencyNanos());
+        assertTrue(simulator.getStore().verifyRunningTotals());
+
+        // Zipf: the first rank is the most likely and the odds add up to one
+        ZipfDistribution zipf = new ZipfDistribution(50, 1.0);
+        double total = 0;
+        for (int rank = 0; rank < zipf.size(); rank++) {
+            total += zipf.probability(rank);
+        }
+        assertEquals(1.0, total, 1e-9);
+        assertTrue(zipf.probability(0) > zipf.probability(1));
+        assertThrows(IllegalArgumentException.class, () -> SimulationConfig.fromArgs(new String[]{"--customers=0"}));
+    }
+
+    // Receipt Ids
+    @Test
+    public void receiptIdsAreUniquePerTillAndSurviveRestarts() throws Exception {
+        File markFile = Files.createTempFile("receipt-ids", ".mark").toFile();
+        markFile.deleteOnExit();
+        Files.delete(markFile.toPath());
+
+        // By default ids are gap-free and in issue order, whichever till takes them
+        ReceiptIdAllocator gapFree = new ReceiptIdAllocator(3);
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(i, gapFree.nextId(i % 2));
+        }
+        assertEquals(10, gapFree.seal());
+        assertEquals(11, gapFree.nextId(1));
+        assertEquals(11, gapFree.getLastIssuedId());
+
+        // Ids of sales that never happened are taken again once nothing above them is out
+        assertEquals(12, gapFree.nextId(1));
+        assertEquals(13, gapFree.nextId(2));
+        gapFree.giveBack(12);
+        assertEquals(13, gapFree.getLastIssuedId());
+        gapFree.giveBack(13);
+        assertEquals(11, gapFree.getLastIssuedId());
+        assertEquals(12, gapFree.nextId(1));
+
+        ReceiptIdAllocator allocator = new ReceiptIdAllocator(3, 4);
+        allocator.persistTo(markFile.toPath());
+
+        // Two tills, each numbering from its own block
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ids.add(allocator.nextId(1)));
+            assertTrue(ids.add(allocator.nextId(2)));
+        }
+        assertEquals(20, ids.size());
+        assertEquals(24, allocator.getHighWater());
+        assertEquals(22, allocator.getLastIssuedId());
+
+        // Sealing moves every till past the sealed id
+        int sealed = allocator.seal();
+        assertTrue(allocator.nextId(1) > sealed);
+        assertTrue(allocator.nextId(2) > sealed);
+
+        // A restart continues above everything handed out before it
+        ReceiptIdAllocator restarted = new ReceiptIdAllocator(3, 4);
+        restarted.persistTo(markFile.toPath());
+        int highest = Math.max(allocator.getLastIssuedId(), allocator.getHighWater());
+        assertTrue(restarted.nextId(1) > highest);
+
+        // Chain-wide ids carry the store
+        long globalId = ReceiptIdAllocator.globalId(3, 17);
+        assertEquals(3, ReceiptIdAllocator.storeIdOf(globalId));
+        assertEquals(17, ReceiptIdAllocator.receiptIdOf(globalId));
+        assertTrue(ReceiptIdAllocator.globalId(3, 1) != ReceiptIdAllocator.globalId(4, 1));
+    }
+
+    // Receipt Queries
+    @Test
+    public void queryReceiptsByTimeCashierAndCommodity() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        ICashierService bob = new CashierServiceImp(new Cashier("Bob", store.getNextCashierId(), BigDecimal.valueOf(10), store),
+                new CashierServiceHelper());
+        ICashierService ann = new CashierServiceImp(new Cashier("Ann", store.getNextCashierId(), BigDecimal.valueOf(10), store),
+                new CashierServiceHelper());
+
+        // Receipts, one every ten minutes from 14:00, Bob and Ann taking turns; commodity 2 is on every third one
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 14, 0);
+        for (int i = 0; i < 12; i++) {
+            List<CustomDataType> lines = i % 3 == 0
+                    ? List.of(new CustomDataType(1, "Apple", BigDecimal.ONE, BigDecimal.ONE),
+                              new CustomDataType(2, "Soap", BigDecimal.ONE, BigDecimal.ONE),
+                              new CustomDataType(2, "Soap", BigDecimal.ONE, BigDecimal.ONE))
+                    : List.of(new CustomDataType(1, "Apple", BigDecimal.ONE, BigDecimal.ONE));
+            store.getReceipts().add(new Receipt(i + 1, store, i % 2 == 0 ? bob : ann, start.plusMinutes(i * 10L),
+                    lines, BigDecimal.valueOf(i + 1), BigDecimal.ZERO));
+        }
+
+        // Test
+        LocalDateTime end = start.plusHours(1);
+        assertEquals(6, store.queryReceipts().between(start, end).count());
+        assertEquals(3, store.queryReceipts().between(start, end).byCashier(bob.getId()).count());
+        assertEquals(BigDecimal.valueOf(1 + 3 + 5), store.queryReceipts().between(start, end).byCashier(bob.getId()).totalCost());
+        assertEquals(List.of(1, 4, 7, 10),
+                store.queryReceipts().withCommodity(2).stream().map(Receipt::getId).toList());
+        assertEquals(List.of(4, 10),
+                store.queryReceipts().withCommodity(2).byCashier(ann.getId()).stream().map(Receipt::getId).toList());
+        assertEquals(6, store.queryReceipts().issuedFrom(end).count());
+        assertEquals(0, store.queryReceipts().byCashier(99).count());
+        assertEquals(0, store.queryReceipts().between(end, start).count());
+
+        // Removed receipts leave every list
+        store.getReceipts().removeIf(receipt -> receipt.getId() == 4);
+        assertEquals(List.of(1, 7, 10), store.queryReceipts().withCommodity(2).stream().map(Receipt::getId).toList());
+        assertEquals(11, store.getReceipts().size());
+
+        store.setReceipts(store.getReceipts());
+        assertEquals(11, store.queryReceipts().count());
+        store.setReceipts(new HashSet<>());
+        assertEquals(0, store.queryReceipts().withCommodity(1).count());
+    }
+
+    // Store Registry
+    @Test
+    public void storeRegistryAggregatesAndRoutesReceipts() throws Exception {
+        StoreRegistry registry = new StoreRegistry();
+        BigDecimal expectedRevenue = BigDecimal.ZERO;
+        BigDecimal expectedPureRevenue = BigDecimal.ZERO;
+
+        for (int id = 1; id <= 40; id++) {
+            // Store
+            Store storeData = new Store(id, "Store" + id, BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                    BigDecimal.valueOf(10), 3);
+            IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+            registry.register(store);
+
+            // Cashier
+            Cashier cashier = new Cashier("Bob", 1, BigDecimal.valueOf(id), store);
+            ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+            store.hireCashier(cashierService);
+
+            // Commodity
+            Commodity commodity = new Commodity(store.getNextCommodityId(), "Commodity", CommodityCategory.NONEATABLE,
+                    BigDecimal.valueOf(id), BigDecimal.valueOf(10), null);
+            store.addCommodity(commodity);
+
+            List<CustomDataType> cart = List.of(new CustomDataType(commodity.getId(), commodity.getName(),
+                    BigDecimal.valueOf(2), BigDecimal.ZERO));
+            assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(1000)));
+
+            expectedRevenue = expectedRevenue.add(store.calculateRevenue());
+            expectedPureRevenue = expectedPureRevenue.add(store.calculatePureRevenue());
+        }
+
+        assertEquals(40, registry.size());
+        assertEquals(expectedRevenue, registry.calculateRevenue());
+        assertEquals(expectedPureRevenue, registry.calculatePureRevenue());
+        assertEquals(40, registry.calculateReport().getStoreCount());
+        assertThrows(IllegalArgumentException.class, () -> registry.register(
+                new StoreServiceImp(new Store(1, "Duplicate", BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE, 1), new StoreServiceHelper())));
+
+        // Receipts go back to the store that issued them
+        File receiptDir = Files.createTempDirectory("receipts").toFile();
+        Files.writeString(new File(receiptDir, "receipt_7.json").toPath(),
+                "{\"id\":7,\"storeId\":12,\"cashierId\":1,\"issuedDateTime\":\"2025-05-27 01:10:48\"," +
+                        "\"purchasedCommodities\":[],\"totalCost\":0,\"change\":0}");
+
+        int before = registry.findStore(12).getReceipts().size();
+        ReceiptLoadResult result = registry.loadReceipts(receiptDir);
+
+        assertEquals(1, result.getReceipts().size());
+        assertEquals(before + 1, registry.findStore(12).getReceipts().size());
+    }
+
+    // Metrics
+    @Test
+    public void checkoutMetricsCountSalesAndFailures() {
+        // Store
+        Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        // Cashier
+        Cashier cashier = new Cashier("Bob", store.getNextCashierId(), BigDecimal.valueOf(10), store);
+        ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+        store.hireCashier(cashierService);
+
+        // Commodity
+        Commodity commodity = new Commodity(store.getNextCommodityId(), "Commodity", CommodityCategory.NONEATABLE,
+                BigDecimal.valueOf(1), BigDecimal.valueOf(10), null);
+        store.addCommodity(commodity);
+
+        MetricsSnapshot before = MetricsRegistry.getDefault().snapshot();
+
+        List<CustomDataType> cart = List.of(new CustomDataType(commodity.getId(), commodity.getName(),
+                BigDecimal.valueOf(2), BigDecimal.ZERO));
+        assertDoesNotThrow(() -> cashierService.sellCommodities(cart, BigDecimal.valueOf(100)));
+        assertThrows(InsufficientFundsException.class, () -> cashierService.sellCommodities(cart, BigDecimal.ZERO));
+
+        MetricsSnapshot after = MetricsRegistry.getDefault().snapshot();
+
+        // Test
+        assertEquals(1, after.getCounter("checkout_completed") - before.getCounter("checkout_completed"));
+        assertEquals(1, after.getCounter("checkout_failures_InsufficientFundsException")
+                - before.getCounter("checkout_failures_InsufficientFundsException"));
+        assertTrue(after.getHistograms().get("checkout_latency_nanos").getCount() > 0);
+        assertTrue(after.toText().contains("checkout_lines_total"));
+    }
+
     // Sell sellCommodity Helpers test
     @Test
-    public void sellCommodityHelpersTest() {
+    public void sellCommodityHelpersTest() throws Exception {
         // Store
         Store storeData = new Store(1, "Store", BigDecimal.valueOf(10), BigDecimal.valueOf(10),
                 BigDecimal.valueOf(10), 3);
@@ -728,9 +2264,10 @@ public class UnitTests {
         store.addCommodity(commodity);
 
         // findCommodityById Test
-        Commodity found = storeHelper.findCommodityById(store.getAvailableCommodities(), commodity.getId());
+        Commodity found = cashierHelper.findCommodityById(store, commodity.getId());
         assertEquals(commodity.getId(), found.getId());
         assertEquals("Apple", found.getName());
+        assertThrows(CommodityNotFoundException.class, () -> cashierHelper.findCommodityById(store, 999));
         System.out.println("findCommodityById passed");
 
         // calculateMarkupMultiplier Test
@@ -787,10 +2324,10 @@ public class UnitTests {
         assertEquals(expectedItem.getPrice(), purchasedItem.getPrice());
         System.out.println("createPurchasedItem passed");
 
-        // updateSoldCommodities Test
-        CustomDataType updatedSold = cashierHelper.updateSoldCommodities(store, purchasedItem);
-        assertEquals(quantity, updatedSold.getQuantity());
-        System.out.println("updateSoldCommodities passed");
+        // recordSale Test
+        store.recordSale(purchasedItem, commodity.getCategory());
+        assertEquals(quantity, store.getSoldLedger().find(commodity.getId()).getQuantity());
+        System.out.println("recordSale passed");
 
         // generateReceipt Test
         BigDecimal change = customerFunds.subtract(totalCost);
@@ -802,4 +2339,30 @@ public class UnitTests {
         assertEquals(change, receipt.getChange());
         System.out.println("generateReceipt passed");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void moneyMatchesBigDecimalPricing() {
+        String[] markups = {"10", "12.5", "-12.5", "7.49", "0.5", "33.333", "150"};
+        String[] prices = {"1", "1.10", "0.333", "19.99", "2500"};
+        String[] quantities = {"1", "2.5", "0.125", "3"};
+
+        for (String markup : markups) {
+            BigDecimal percentage = new BigDecimal(markup);
+            BigDecimal expectedMultiplier = BigDecimal.ONE.add(percentage.divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+            Money multiplier = Money.percentMultiplier(percentage);
+            assertEquals(expectedMultiplier, multiplier.toBigDecimal());
+
+            for (String price : prices) {
+                for (String quantity : quantities) {
+                    BigDecimal expected = new BigDecimal(price).multiply(expectedMultiplier).multiply(new BigDecimal(quantity));
+                    Money actual = Money.of(new BigDecimal(price)).multiply(multiplier).multiply(Money.of(new BigDecimal(quantity)));
+                    assertEquals(expected, actual.toBigDecimal());
+                }
+            }
+        }
+
+        assertEquals(new BigDecimal("3.60"), Money.of(new BigDecimal("1.1")).add(Money.of(new BigDecimal("2.50"))).toBigDecimal());
+        assertEquals(new BigDecimal("1.13"), Money.of(new BigDecimal("1.125")).setScale(2).toBigDecimal());
+        assertEquals(new BigDecimal("-1.13"), Money.of(new BigDecimal("-1.125")).setScale(2).toBigDecimal());
+    }
+}
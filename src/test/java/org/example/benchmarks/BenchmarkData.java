@@ -0,0 +1,95 @@
+package org.example.benchmarks;
+
+import Shop.cashiers.Cashier;
+import Shop.cashiers.CashierServiceHelper;
+import Shop.cashiers.CashierServiceImp;
+import Shop.cashiers.ICashierService;
+import Shop.commodities.Commodity;
+import Shop.commodities.CommodityCategory;
+import Shop.commodities.CustomDataType;
+import Shop.exceptions.CommodityNotFoundException;
+import Shop.exceptions.InsufficientFundsException;
+import Shop.receipts.Receipt;
+import Shop.stores.IStoreService;
+import Shop.stores.Store;
+import Shop.stores.StoreServiceHelper;
+import Shop.stores.StoreServiceImp;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Seeded dataset generators shared by the benchmarks, the same parameters always give the same data
+public final class BenchmarkData {
+    public static final BigDecimal UNLIMITED_STOCK = BigDecimal.valueOf(1_000_000_000L);
+    public static final BigDecimal UNLIMITED_FUNDS = BigDecimal.valueOf(1_000_000_000L);
+
+    private BenchmarkData() {
+    }
+
+    // Half of the SKUs are eatable with an expiry date a month to a year out, the rest never expire
+    public static IStoreService createStore(int skuCount, BigDecimal stockPerSku, long seed) {
+        Store storeData = new Store(1, "BenchmarkStore", BigDecimal.valueOf(20), BigDecimal.valueOf(35),
+                BigDecimal.valueOf(10), 3);
+        IStoreService store = new StoreServiceImp(storeData, new StoreServiceHelper());
+
+        Random random = new Random(seed);
+        for (int i = 0; i < skuCount; i++) {
+            store.addCommodity(createCommodity(store.getNextCommodityId(), stockPerSku, random));
+        }
+        return store;
+    }
+
+    public static Commodity createCommodity(int id, BigDecimal quantity, Random random) {
+        BigDecimal deliveryPrice = BigDecimal.valueOf(random.nextInt(10_000) + 1, 2);
+
+        if (random.nextBoolean()) {
+            LocalDate expiryDate = LocalDate.now().plusDays(30 + random.nextInt(335));
+            return new Commodity(id, "Eatable-" + id, CommodityCategory.EATABLE, deliveryPrice, quantity, expiryDate);
+        }
+        return new Commodity(id, "NonEatable-" + id, CommodityCategory.NONEATABLE, deliveryPrice, quantity, null);
+    }
+
+    public static List<ICashierService> hireCashiers(IStoreService store, int count) {
+        List<ICashierService> cashiers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Cashier cashier = new Cashier("Cashier-" + i, store.getNextCashierId(), BigDecimal.valueOf(1500), store);
+            ICashierService cashierService = new CashierServiceImp(cashier, new CashierServiceHelper());
+            store.hireCashier(cashierService);
+            cashiers.add(cashierService);
+        }
+        return cashiers;
+    }
+
+    // Carts of distinct SKUs (as far as the SKU count allows) with one to three units per line
+    public static List<List<CustomDataType>> createCarts(IStoreService store, int cartCount, int cartSize, Random random) {
+        List<Commodity> commodities = store.getAvailableCommodities();
+        List<List<CustomDataType>> carts = new ArrayList<>(cartCount);
+
+        for (int c = 0; c < cartCount; c++) {
+            List<CustomDataType> cart = new ArrayList<>(cartSize);
+            int start = random.nextInt(commodities.size());
+            int stride = 1 + random.nextInt(Math.max(1, commodities.size() / Math.max(1, cartSize)));
+
+            for (int line = 0; line < cartSize; line++) {
+                Commodity commodity = commodities.get((start + line * stride) % commodities.size());
+                BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(3));
+                cart.add(new CustomDataType(commodity.getId(), commodity.getName(), quantity, BigDecimal.ZERO));
+            }
+            carts.add(cart);
+        }
+        return carts;
+    }
+
+    // Real receipts produced by checkout, so the receipt benchmarks serialise what the tills write
+    public static List<Receipt> createReceipts(IStoreService store, ICashierService cashier, int count, int cartSize, Random random)
+            throws CommodityNotFoundException, InsufficientFundsException {
+        List<Receipt> receipts = new ArrayList<>(count);
+        for (List<CustomDataType> cart : createCarts(store, count, cartSize, random)) {
+            receipts.add(cashier.sellCommodities(cart, UNLIMITED_FUNDS));
+        }
+        return receipts;
+    }
+}
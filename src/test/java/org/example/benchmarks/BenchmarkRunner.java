@@ -0,0 +1,31 @@
+package org.example.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks from the test classpath with the GC profiler on, so every result comes
+// with allocation rate and bytes per operation. Without arguments every benchmark in this
+// package runs; otherwise the usual JMH command line applies, e.g. "CheckoutBenchmark -p cartSize=10".
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        OptionsBuilder builder = new OptionsBuilder();
+
+        if (args.length > 0) {
+            builder.parent(new CommandLineOptions(args));
+        } else {
+            builder.include(BenchmarkRunner.class.getPackageName() + ".*");
+        }
+
+        Options options = builder
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true)
+                .build();
+
+        new Runner(options).run();
+    }
+}
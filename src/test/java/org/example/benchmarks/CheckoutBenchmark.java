@@ -0,0 +1,64 @@
+package org.example.benchmarks;
+
+import Shop.cashiers.ICashierService;
+import Shop.commodities.CustomDataType;
+import Shop.exceptions.CommodityNotFoundException;
+import Shop.exceptions.InsufficientFundsException;
+import Shop.receipts.Receipt;
+import Shop.stores.IStoreService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckoutBenchmark {
+    private static final int CART_COUNT = 1024;
+
+    @Param({"1", "10", "50"})
+    public int cartSize;
+
+    @Param({"100", "10000"})
+    public int skuCount;
+
+    private IStoreService store;
+    private ICashierService cashier;
+    private List<List<CustomDataType>> carts;
+    private int nextCart;
+
+    // Fresh store per iteration so the sold list and receipt counter do not carry over
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = BenchmarkData.createStore(skuCount, BenchmarkData.UNLIMITED_STOCK, 42);
+        cashier = BenchmarkData.hireCashiers(store, 1).get(0);
+        carts = BenchmarkData.createCarts(store, CART_COUNT, cartSize, new Random(7));
+        nextCart = 0;
+    }
+
+    @Benchmark
+    public Receipt sellCommodities() throws CommodityNotFoundException, InsufficientFundsException {
+        List<CustomDataType> cart = carts.get(nextCart++ & (CART_COUNT - 1));
+        Receipt receipt = cashier.sellCommodities(cart, BenchmarkData.UNLIMITED_FUNDS);
+
+        // Keep the receipt set from growing across millions of invocations
+        store.getReceipts().remove(receipt);
+        return receipt;
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.benchmarks;
+
+import Shop.commodities.Commodity;
+import Shop.stores.IStoreService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeliveryBenchmark {
+    private static final int RESTOCK_BATCH = 1024;
+
+    @Param({"100", "10000", "100000"})
+    public int skuCount;
+
+    private IStoreService store;
+    private Commodity[] restocks;
+    private List<Commodity> restockManifest;
+    private Random random;
+    private int nextRestock;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = BenchmarkData.createStore(skuCount, BigDecimal.TEN, 42);
+        random = new Random(7);
+
+        // Deliveries of SKUs the store already carries, addCommodity copies them so they can be reused
+        restocks = new Commodity[RESTOCK_BATCH];
+        for (int i = 0; i < RESTOCK_BATCH; i++) {
+            Commodity existing = store.getAvailableCommodities().get(random.nextInt(skuCount));
+            restocks[i] = new Commodity(existing.getId(), existing.getName(), existing.getCategory(),
+                    existing.getDeliveryPrice(), BigDecimal.ONE, existing.getExpiryDate());
+        }
+        restockManifest = Arrays.asList(restocks);
+        nextRestock = 0;
+    }
+
+    @Benchmark
+    public void restockExistingCommodity() {
+        store.addCommodity(restocks[nextRestock++ & (RESTOCK_BATCH - 1)]);
+    }
+
+    // The same restocks as one manifest, per operation is the whole batch
+    @Benchmark
+    public int restockManifest() {
+        return store.addCommodities(restockManifest);
+    }
+
+    @Benchmark
+    public void deliverNewCommodity() {
+        store.addCommodity(BenchmarkData.createCommodity(store.getNextCommodityId(), BigDecimal.TEN, random));
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.benchmarks;
+
+import Shop.commodities.Commodity;
+import Shop.stores.ColumnarCommodityInventory;
+import Shop.stores.CommodityInventory;
+import Shop.stores.ICommodityInventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Object inventory against the columnar one on the same catalogue, run with -prof gc to see the footprint side
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryBenchmark {
+    @Param({"objects", "columnar"})
+    public String backend;
+
+    @Param({"10000", "1000000"})
+    public int skuCount;
+
+    private ICommodityInventory inventory;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        Random data = new Random(42);
+        List<Commodity> catalogue = new ArrayList<>(skuCount);
+        for (int id = 1; id <= skuCount; id++) {
+            catalogue.add(BenchmarkData.createCommodity(id, BigDecimal.valueOf(data.nextInt(1000) + 1), data));
+        }
+
+        inventory = backend.equals("columnar") ? new ColumnarCommodityInventory() : new CommodityInventory();
+        inventory.addAll(catalogue);
+        random = new Random(7);
+    }
+
+    // Full scan, what verifyRunningTotals runs over the delivered inventory
+    @Benchmark
+    public BigDecimal sumDeliveryCost() {
+        return inventory.sumDeliveryCost();
+    }
+
+    @Benchmark
+    public BigDecimal findAndReadQuantity() {
+        return inventory.findById(random.nextInt(skuCount) + 1).getQuantity();
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.benchmarks;
+
+import Shop.cashiers.ICashierService;
+import Shop.exceptions.CommodityNotFoundException;
+import Shop.exceptions.InsufficientFundsException;
+import Shop.exceptions.fileExceptions.NoReceiptFilesFoundException;
+import Shop.helpers.ReceiptFileManager;
+import Shop.helpers.ReceiptLoadResult;
+import Shop.receipts.Receipt;
+import Shop.stores.IStoreService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Works in temporary directories so the real receipts folder is never touched
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiptIoBenchmark {
+    @Param({"100", "1000"})
+    public int receiptCount;
+
+    @Param({"3", "30"})
+    public int cartSize;
+
+    private IStoreService store;
+    private List<Receipt> receipts;
+    private Path writeDirectory;
+    private Path readDirectory;
+    private int nextReceipt;
+
+    @Setup
+    public void setUp() throws IOException, CommodityNotFoundException, InsufficientFundsException {
+        store = BenchmarkData.createStore(1000, BenchmarkData.UNLIMITED_STOCK, 42);
+        ICashierService cashier = BenchmarkData.hireCashiers(store, 1).get(0);
+        receipts = BenchmarkData.createReceipts(store, cashier, receiptCount, cartSize, new Random(7));
+
+        writeDirectory = Files.createTempDirectory("receipt-write-bench");
+        readDirectory = Files.createTempDirectory("receipt-read-bench");
+        for (Receipt receipt : receipts) {
+            ReceiptFileManager.writeReceipt(receipt, readDirectory.toFile());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        deleteDirectory(writeDirectory);
+        deleteDirectory(readDirectory);
+    }
+
+    // Cycles through the receipts, so files are overwritten rather than piling up
+    @Benchmark
+    public File writeReceipt() throws IOException {
+        Receipt receipt = receipts.get(nextReceipt++ % receiptCount);
+        return ReceiptFileManager.writeReceipt(receipt, writeDirectory.toFile());
+    }
+
+    // Reads the whole directory, the same path readReceiptsFromFiles takes
+    @Benchmark
+    public ReceiptLoadResult readReceipts() throws NoReceiptFilesFoundException {
+        return ReceiptFileManager.loadReceipts(readDirectory.toFile(), Set.of(store));
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
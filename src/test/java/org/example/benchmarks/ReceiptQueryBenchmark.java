@@ -0,0 +1,89 @@
+package org.example.benchmarks;
+
+import Shop.cashiers.ICashierService;
+import Shop.commodities.CustomDataType;
+import Shop.receipts.Receipt;
+import Shop.stores.IStoreService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Shift reconciliation, one cashier's receipts in one hour, through the index against a scan of every receipt
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiptQueryBenchmark {
+    private static final LocalDateTime DAY_START = LocalDateTime.of(2024, 1, 1, 8, 0);
+    private static final int CASHIER_COUNT = 50;
+    private static final int SKU_COUNT = 1000;
+
+    @Param({"100000", "500000"})
+    public int receiptCount;
+
+    private IStoreService store;
+    private int cashierId;
+    private int commodityId;
+    private LocalDateTime shiftStart;
+    private LocalDateTime shiftEnd;
+
+    // Receipts spread evenly over twelve hours, three lines each
+    @Setup
+    public void setUp() {
+        store = BenchmarkData.createStore(SKU_COUNT, BenchmarkData.UNLIMITED_STOCK, 42);
+        List<ICashierService> cashiers = BenchmarkData.hireCashiers(store, CASHIER_COUNT);
+
+        Random random = new Random(7);
+        long secondsPerReceipt = Math.max(1, 12 * 3600L / receiptCount);
+        for (int id = 1; id <= receiptCount; id++) {
+            List<CustomDataType> lines = new ArrayList<>(3);
+            for (int line = 0; line < 3; line++) {
+                lines.add(new CustomDataType(random.nextInt(SKU_COUNT) + 1, "Line", BigDecimal.ONE, BigDecimal.TEN));
+            }
+            store.getReceipts().add(new Receipt(id, store, cashiers.get(random.nextInt(CASHIER_COUNT)),
+                    DAY_START.plusSeconds(id * secondsPerReceipt), lines, BigDecimal.valueOf(30), BigDecimal.ZERO));
+        }
+
+        cashierId = cashiers.get(7).getId();
+        commodityId = 13;
+        shiftStart = DAY_START.plusHours(6);
+        shiftEnd = shiftStart.plusHours(1);
+    }
+
+    @Benchmark
+    public BigDecimal shiftTotalIndexed() {
+        return store.queryReceipts().between(shiftStart, shiftEnd).byCashier(cashierId).totalCost();
+    }
+
+    @Benchmark
+    public BigDecimal shiftTotalScan() {
+        return store.getReceipts().stream()
+                .filter(receipt -> receipt.getCashierId() == cashierId)
+                .filter(receipt -> !receipt.getIssuedDateTime().isBefore(shiftStart)
+                        && receipt.getIssuedDateTime().isBefore(shiftEnd))
+                .map(Receipt::getTotalCost)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Benchmark
+    public long commodityReceiptsIndexed() {
+        return store.queryReceipts().withCommodity(commodityId).between(shiftStart, shiftEnd).count();
+    }
+}
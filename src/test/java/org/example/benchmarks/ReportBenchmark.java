@@ -0,0 +1,63 @@
+package org.example.benchmarks;
+
+import Shop.cashiers.ICashierService;
+import Shop.commodities.CustomDataType;
+import Shop.exceptions.CommodityNotFoundException;
+import Shop.exceptions.InsufficientFundsException;
+import Shop.stores.IStoreService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmark {
+    @Param({"100", "10000"})
+    public int skuCount;
+
+    @Param({"5", "500"})
+    public int cashierCount;
+
+    private IStoreService store;
+
+    // Every SKU is sold at least once so the sold list is as long as the catalogue
+    @Setup
+    public void setUp() throws CommodityNotFoundException, InsufficientFundsException {
+        store = BenchmarkData.createStore(skuCount, BigDecimal.valueOf(1000), 42);
+        List<ICashierService> cashiers = BenchmarkData.hireCashiers(store, cashierCount);
+
+        Random random = new Random(7);
+        int line = 0;
+        for (List<CustomDataType> cart : BenchmarkData.createCarts(store, skuCount / 10 + 1, 10, random)) {
+            cashiers.get(line++ % cashierCount).sellCommodities(cart, BenchmarkData.UNLIMITED_FUNDS);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal calculatePureRevenue() {
+        return store.calculatePureRevenue();
+    }
+
+    // Full recomputation of every total, what each report call used to cost
+    @Benchmark
+    public boolean verifyRunningTotals() {
+        return store.verifyRunningTotals();
+    }
+}